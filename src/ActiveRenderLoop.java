@@ -0,0 +1,178 @@
+package src;
+
+import java.awt.Canvas;
+import java.awt.Graphics;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Optional active rendering mode for the game board.
+ *
+ * Instead of waiting for Swing to coalesce repaint requests on the EDT, a dedicated
+ * thread draws the board straight into a Canvas BufferStrategy at a fixed target frame rate.
+ * Frames are paced against System.nanoTime so the loop does not depend on vsync, and when
+ * a frame takes longer than its slot the missed frames are skipped rather than rendered late.
+ *
+ * @author lalatheo
+ */
+public class ActiveRenderLoop implements Runnable {
+
+    /**
+     * Something that can draw one frame onto a graphics context.
+     */
+    public interface FrameSource {
+        void renderFrame(Graphics g);
+    }
+
+    // how far ahead of the deadline we stop parking and start spinning
+    private static final long SPIN_NANOS = 1_000_000L;
+
+    private final Canvas canvas;
+    private final FrameSource source;
+    private final int targetFps;
+    private final long frameNanos;
+    private final int maxFrameSkip;
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    private long framesRendered = 0;
+    private long framesSkipped = 0;
+
+    /**
+     * Constructor, the canvas must already be added to a displayable container before start is called
+     *
+     * @param canvas the canvas to draw on
+     * @param source draws the contents of each frame
+     * @param targetFps how many frames per second to aim for
+     * @param maxFrameSkip how many frames may be dropped in a row before the loop resynchronises
+     */
+    public ActiveRenderLoop(Canvas canvas, FrameSource source, int targetFps, int maxFrameSkip) {
+        if (targetFps <= 0) {
+            throw new IllegalArgumentException("Target FPS must be positive: " + targetFps);
+        }
+        this.canvas = canvas;
+        this.source = source;
+        this.targetFps = targetFps;
+        this.frameNanos = 1_000_000_000L / targetFps;
+        this.maxFrameSkip = Math.max(0, maxFrameSkip);
+
+        canvas.setIgnoreRepaint(true);
+        canvas.setFocusable(false);
+    }
+
+    /**
+     * starts the render thread
+     */
+    public void start() {
+        if (running) {
+            return;
+        }
+        canvas.createBufferStrategy(2);
+        running = true;
+        thread = new Thread(this, "active-render-loop");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("Active rendering started at " + targetFps + " FPS target");
+    }
+
+    /**
+     * stops the render thread and waits for it to finish its current frame
+     */
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    public int getTargetFps() {
+        return targetFps;
+    }
+
+    public long getFramesRendered() {
+        return framesRendered;
+    }
+
+    public long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    /**
+     * the render loop, renders a frame then sleeps until the next frame slot
+     */
+    @Override
+    public void run() {
+        long nextFrame = System.nanoTime();
+
+        while (running) {
+            renderFrame();
+            framesRendered++;
+
+            nextFrame += frameNanos;
+            long now = System.nanoTime();
+
+            if (now - nextFrame > frameNanos * maxFrameSkip) {
+                // too far behind to catch up, start pacing again from now
+                framesSkipped += (now - nextFrame) / frameNanos;
+                nextFrame = now;
+            } else {
+                // drop any frame slots we already missed instead of drawing them back to back
+                while (now - nextFrame >= frameNanos) {
+                    nextFrame += frameNanos;
+                    framesSkipped++;
+                }
+                sleepUntil(nextFrame);
+            }
+        }
+    }
+
+    /**
+     * draws one frame into the back buffer and shows it
+     */
+    private void renderFrame() {
+        BufferStrategy strategy = canvas.getBufferStrategy();
+        if (strategy == null) {
+            return;
+        }
+
+        do {
+            do {
+                Graphics g = strategy.getDrawGraphics();
+                try {
+                    source.renderFrame(g);
+                } catch (RuntimeException e) {
+                    // a bad frame should not kill the loop, the next one will try again
+                    e.printStackTrace();
+                } finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+
+            strategy.show();
+        } while (strategy.contentsLost());
+
+        Toolkit.getDefaultToolkit().sync();
+    }
+
+    /**
+     * parks the thread until shortly before the deadline, then spins for the remainder
+     * so frame pacing is not limited by the OS timer resolution
+     */
+    private void sleepUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0 && running) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
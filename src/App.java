@@ -8,9 +8,12 @@ import java.io.IOException;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
-import javax.swing.filechooser.FileNameExtensionFilter;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import org.json.JSONException;
 
 /**
  * Class that displays the application window for the game
@@ -32,17 +35,37 @@ public class App {
     private int recorderCount;
     private int selectedSpeed;
 
-    private int pixels = 0;
     private String move = "unset";
 
+    //the game advances in fixed 20ms steps however often the timer actually fires, chap takes 320ms to walk a tile
+    public static final int STEP_MILLIS = 20;
+    public static final int MOVE_MILLIS = 320;
+    private static final long STEP_NANOS = STEP_MILLIS * 1_000_000L;
+    private static final long MOVE_NANOS = MOVE_MILLIS * 1_000_000L;
+    // after a stall, at most this many steps are run at once and the rest of the lost time is dropped
+    private static final int MAX_CATCH_UP_STEPS = 5;
+
+    //game time in nanoseconds and the System.nanoTime it is measured from, frames are drawn between steps
+    private long simulationNanos = 0;
+    private long simulationOrigin = 0;
+    private boolean clockStopped = true;
+    private long moveStartNanos = 0;
+    private long enemyMoveNanos = -MOVE_NANOS;
+    //replays time chap's moves against the wall clock instead, see animateReplayMove
+    private boolean replayAnimation = false;
+    private long replayMoveStart = 0;
+    private long replayMoveNanos = MOVE_NANOS;
+
     private ImageIcon backgroundImageIcon;
     private Domain domain;
-    private Renderer renderer;
+    private volatile Renderer renderer;
     private Persistency persistency;
     private Recorder recorder;
+    //moves made since the last checkpoint, so a game that stops without exiting can be resumed
+    private MoveJournal journal;
+    private volatile boolean resumingFromJournal = false;
 
     private boolean animating = false;
-    private boolean updateBackground = false;
     public boolean keyListenersEnabled = true;
 
     //used to diplay keys
@@ -70,37 +93,222 @@ public class App {
 
     private List<JLabel> labelList;
 
+    //active rendering, draws the board from its own thread instead of through Swing repaints
+    private boolean activeRendering = false;
+    private int targetFps = 60;
+    private ActiveRenderLoop renderLoop;
+    //otherwise frames are composed off the EDT by the render worker and the EDT only draws the latest one
+    private RenderWorker renderWorker;
+    // guards the game state while the render thread is drawing it
+    private final Object renderLock = new Object();
+
+    //performance overlay, toggled with F3
+    private final PerformanceHud hud = new PerformanceHud();
+    private long commandFetchNanos;
+
+    //minimap in the corner of the board, toggled with M
+    private boolean minimapVisible = false;
+
+    //zoom and the size of the board view, kept when the renderer is recreated
+    private int tileSize = 32;
+    private int viewportWidth = 288;
+    private int viewportHeight = 288;
+    private Canvas boardCanvas;
+    private Image scaledBackground;
+
+    //the board frame and side panel in background.png, used to lay the window out when it is resized
+    private static final int FRAME_EDGE = 26;
+    private static final int FRAME_BORDER = 6;
+    private static final int FRAME_END = 326;
+    private static final int SIDE_PANEL_X = 339;
+    private static final int SIDE_PANEL_END = 493;
+    private int sidePanelShift = 0;
+
     /**
      * Main method to start the game application.
      *
      * @param args Command-line arguments.
      */
     public static void main(String[] args) {
-        App app = new App();
-        app.setUpGUI();
-        app.repaintGame();
+        App app = new App(false);
+
+        // "--active" or -Dchips.render=active switches to the BufferStrategy render loop, -Dchips.fps sets its target
+        boolean active = Arrays.asList(args).contains("--active") || "active".equals(System.getProperty("chips.render"));
+        app.setActiveRendering(active, Integer.getInteger("chips.fps", 60));
+
+        // the window shows straight away, the game is set up in it once everything has loaded
+        SwingUtilities.invokeLater(app::showLoadingScreen);
+        app.startLoading(true).whenComplete((done, failure) -> SwingUtilities.invokeLater(() -> {
+            if(failure != null){
+                failure.printStackTrace();
+                JOptionPane.showMessageDialog(app.frame, "The game could not be loaded: " + failure.getMessage(),
+                    "Loading failed", JOptionPane.ERROR_MESSAGE);
+                System.exit(1);
+            }
+            app.setUpGUI();
+            app.repaintGame();
+            app.startJournal();
+        }));
     }
 
     /**
      * Constructs an instance of the App class.
-     * Initialises game components.
+     * Initialises game components and waits for the level, replay and assets to load.
+     * Interrupted saves are left as they are and a game the last run stopped in the middle of is not resumed,
+     * only main does that, so what an App starts with does not depend on how the last run stopped.
      */
     public App(){
+        this(true);
+    }
+
+    /**
+     * Constructs an instance of the App class.
+     *
+     * @param load {@code true} to load the level, replay and assets before returning,
+     *             {@code false} to leave that to startLoading.
+     */
+    private App(boolean load){
         domain = new Domain();
         recorder = new Recorder(this);
         persistency = new Persistency(this, domain);
         domain.setPersistency(persistency);
-        renderer = new Renderer(domain);
 
-        var exitState = persistency.loadExitState();
-        Optional<Integer> levelOptional = persistency.loadExitState().level();
-        if (levelOptional.isPresent()) {
-            domain.loadLevel("" + levelOptional.get());
-        } else {
-            domain.loadLevel(exitState.saveName().get());
-            recorder.loadFromString(exitState.saveName().get());
+        if(load){
+            startLoading(false).join();
         }
-        resetGame();
+    }
+
+    /**
+     * Loads everything the game needs to start, with the independent parts loading in parallel.
+     * Sprites, sounds, the window background and the exit state load at the same time. When resuming, the
+     * exit state is loaded after any interrupted save is recovered, and if the last run stopped without
+     * exiting, its checkpoint is loaded in place of the exit state and the moves journaled after it are
+     * replayed. The level loads once the exit state says which one and the sprites are ready, the replay
+     * once the exit state names it, and the renderer is made once the level, sprites and sounds are ready.
+     * Each part logs how long it took.
+     *
+     * @param resume {@code true} to finish interrupted saves and resume a game the last run stopped in the
+     *               middle of, {@code false} to load the exit state without touching any files.
+     * @return Completes once everything has loaded.
+     */
+    public CompletableFuture<Void> startLoading(boolean resume){
+        long currentTime = System.currentTimeMillis();
+
+        CompletableFuture<ExitState> exitState = CompletableFuture.supplyAsync(timed("exit state", () -> {
+            if (!resume) {
+                return persistency.loadExitState();
+            }
+            // a save the last run stopped in the middle of is finished before anything it wrote is read
+            SaveTransaction.recover("levels", "recorderfiles", ".");
+            if (MoveJournal.hasCheckpoint()) {
+                System.out.println("The last game stopped without exiting, resuming it");
+                resumingFromJournal = true;
+                return new ExitState(Optional.empty(), Optional.of(MoveJournal.NAME));
+            }
+            return persistency.loadExitState();
+        }));
+        CompletableFuture<Void> sprites = CompletableFuture.runAsync(timed("sprites", Renderer::preloadImages));
+        CompletableFuture<Void> audio = CompletableFuture.runAsync(timed("audio", Renderer::preloadAudio));
+        CompletableFuture<Void> background = CompletableFuture.runAsync(timed("background", () -> {
+            backgroundImageIcon = loadBackground();
+        }));
+
+        CompletableFuture<Void> levelLoaded = exitState.thenAcceptBothAsync(sprites, (state, ready) -> timed("starting level", () -> {
+            Optional<Integer> levelOptional = state.level();
+            domain.loadLevel(levelOptional.isPresent() ? "" + levelOptional.get() : state.saveName().get());
+        }).run());
+        CompletableFuture<Void> replay = exitState.thenAcceptAsync(state -> {
+            if (state.level().isEmpty()) {
+                timed("replay", () -> {
+                    recorder.loadFromString(state.saveName().get());
+                }).run();
+            }
+        });
+        CompletableFuture<Void> resumed = CompletableFuture.allOf(levelLoaded, replay)
+            .thenRunAsync(timed("journal", this::replayJournal));
+        CompletableFuture<Void> rendererMade = CompletableFuture.allOf(resumed, sprites, audio)
+            .thenRunAsync(this::resetGame);
+
+        return CompletableFuture.allOf(rendererMade, replay, background).thenRun(() ->
+            System.out.println("Finished starting up in " + (System.currentTimeMillis() - currentTime) + "ms"));
+    }
+
+    /**
+     * Wraps a startup task so that it logs how long it took.
+     *
+     * @param phase The name of the task in the log.
+     * @param task The task to time.
+     * @return The timed task, returning whatever the task returns.
+     */
+    private static <T> Supplier<T> timed(String phase, Supplier<T> task){
+        return () -> {
+            long currentTime = System.currentTimeMillis();
+            T result = task.get();
+            System.out.println("Finished loading " + phase + " in " + (System.currentTimeMillis() - currentTime) + "ms");
+            return result;
+        };
+    }
+
+    /**
+     * Wraps a startup task that returns nothing so that it logs how long it took.
+     */
+    private static Runnable timed(String phase, Runnable task){
+        return () -> {
+            long currentTime = System.currentTimeMillis();
+            task.run();
+            System.out.println("Finished loading " + phase + " in " + (System.currentTimeMillis() - currentTime) + "ms");
+        };
+    }
+
+    /**
+     * Builds the window and shows a loading message in it until the game is ready.
+     */
+    private void showLoadingScreen(){
+        createFrame();
+        JLabel loading = new JLabel("Loading...", SwingConstants.CENTER);
+        loading.setFont(new Font("Monospaced", Font.PLAIN, 29));
+        loading.setForeground(Color.GREEN);
+        loading.setBackground(Color.BLACK);
+        loading.setOpaque(true);
+        frame.add(loading);
+        frame.setVisible(true);
+    }
+
+    /**
+     * Creates the game window, empty and hidden.
+     */
+    private void createFrame(){
+        frame = new JFrame("Chips's Challenge: LESSON 1");
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setSize(530, 410);
+        frame.setMinimumSize(new Dimension(530, 410));
+    }
+
+    /**
+     * Reads the image behind the board and side panel.
+     *
+     * @return The background, or null if it could not be read.
+     */
+    private static ImageIcon loadBackground(){
+        try {
+            String currentDirectory = System.getProperty("user.dir");
+            String filePath = currentDirectory.replace(File.separator + "src", "") + File.separator + "images" + File.separator + "background.png";
+            return new ImageIcon(ImageIO.read(new File(filePath)));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Chooses between Swing repaints and the active render loop. Must be called before setUpGUI.
+     *
+     * @param active {@code true} to draw the board from a dedicated render thread.
+     * @param fps The frame rate the render thread aims for.
+     */
+    public void setActiveRendering(boolean active, int fps){
+        this.activeRendering = active;
+        this.targetFps = fps;
     }
 
     /**
@@ -117,8 +325,15 @@ public class App {
      * Initialises a new renderer.
      */
     public void resetGame(){
+        long currentTime = System.currentTimeMillis();
         recorder.setCurrentLevel(level);
-        renderer = new Renderer(domain);
+        Renderer newRenderer = new Renderer(domain);
+        newRenderer.setHud(hud);
+        newRenderer.setMinimapVisible(minimapVisible);
+        newRenderer.setViewportSize(viewportWidth, viewportHeight);
+        newRenderer.setTileSize(tileSize);
+        renderer = newRenderer;
+        System.out.println("Finished resetting renderer in " + (System.currentTimeMillis() - currentTime) + "ms");
     }
 
     /**
@@ -130,8 +345,11 @@ public class App {
         level = 1;
         recorder.setCurrentLevel(level);
         setElapsed(0);
-        domain.loadLevel("1");
-        resetGame();
+        synchronized (renderLock) {
+            domain.loadLevel("1");
+            resetGame();
+        }
+        checkpoint();
         repaintGame();
     }
 
@@ -143,9 +361,12 @@ public class App {
         isPaused = true;
         level = 2;
         recorder.setCurrentLevel(level);
-        domain.loadLevel("2");
+        synchronized (renderLock) {
+            domain.loadLevel("2");
+            resetGame();
+        }
         setElapsed(0);
-        resetGame();
+        checkpoint();
         repaintGame();
     }
 
@@ -155,7 +376,7 @@ public class App {
      *
      */
     private void repaintGame(){
-        backgroundPanel.repaint();
+        repaintBoard();
         gameStarted = false;
         repaintKeyInventory();
         chipsLeftLabel.setText(Integer.toString(domain.getChap().getTreasureTotal()));
@@ -204,6 +425,7 @@ public class App {
      * Used to turn various timers off. Used during replay related events.
      */
     public void turnClocksOff(){
+        clockStopped = true;
         timer.stop();
         clock.stop();
         recorderTimer.stop();
@@ -225,15 +447,71 @@ public class App {
      *
      * @param animating A check regarding whether an animation is in progress.
      * @param move The specified move (up, down, etc.)
-     * @param pixels The number of pixels moved.
-     * @param updateBackground A flag indicating whether to update the background.
-     */
-    public void updateBackgroundPanel(boolean animating, String move, int pixels, boolean updateBackground){
-        this.animating = animating;
-        this.move = move;
-        this.pixels = pixels;
-        this.updateBackground = updateBackground;
-        backgroundPanel.repaint();
+     */
+    public void updateBackgroundPanel(boolean animating, String move){
+        synchronized (renderLock) {
+            this.animating = animating;
+            this.move = move;
+            this.replayAnimation = false;
+        }
+        repaintBoard();
+    }
+
+    /**
+     * Starts drawing chap walking a tile during a replay. Recorder makes the move in domain once the time is up.
+     * Where chap is drawn is worked out from the wall clock when each frame is drawn, so it does not depend on how often Recorder wakes up.
+     *
+     * @param move The direction chap walks.
+     * @param millis How long the walk takes.
+     */
+    public void animateReplayMove(String move, long millis){
+        synchronized (renderLock) {
+            this.animating = true;
+            this.move = move;
+            this.replayAnimation = true;
+            this.replayMoveStart = System.nanoTime();
+            this.replayMoveNanos = Math.max(1, millis) * 1_000_000L;
+        }
+        repaintBoard();
+    }
+
+    /**
+     * Asks for the board to be drawn again, the active render loop draws it anyway.
+     * The render worker draws the frame on its own thread and repaints the board area once it is ready.
+     */
+    public void repaintBoard(){
+        if(renderWorker != null){
+            renderWorker.requestFrame();
+        }
+    }
+
+    /**
+     * Returns the game time a frame drawn now shows, between the last step and the next one.
+     */
+    private long frameTime(){
+        if(isPaused || clockStopped){
+            return simulationNanos;
+        }
+        return Math.min(System.nanoTime() - simulationOrigin, simulationNanos + STEP_NANOS);
+    }
+
+    /**
+     * Returns how far through walking to the next tile chap is, from 0 to 1.
+     */
+    private float moveProgress(){
+        if(!animating){
+            return 0;
+        }
+        long elapsed = replayAnimation ? System.nanoTime() - replayMoveStart : frameTime() - moveStartNanos;
+        long duration = replayAnimation ? replayMoveNanos : MOVE_NANOS;
+        return Math.max(0, Math.min(1, elapsed / (float) duration));
+    }
+
+    /**
+     * Returns how far through their last step the enemies are, from 0 to 1. Enemies walk a tile as fast as chap does.
+     */
+    private float enemyProgress(){
+        return Math.max(0, Math.min(1, (frameTime() - enemyMoveNanos) / (float) MOVE_NANOS));
     }
 
     /**
@@ -313,40 +591,185 @@ public class App {
      * Calls methods to set up buttons and labels as well as a method to check the game status.
      */
     public void setUpGUI(){
-        frame = new JFrame("Chips's Challenge: LESSON 1");
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.setSize(530, 410);
+        // the window may already be up showing the loading screen
+        if(frame == null){
+            createFrame();
+        }
+        frame.getContentPane().removeAll();
 
-        // load the background image
-        try {
-            String currentDirectory = System.getProperty("user.dir");
-            String filePath = currentDirectory.replace(File.separator + "src", "") + File.separator + "images" + File.separator + "background.png";
-            ImageIO.read(new File(filePath));
-            backgroundImageIcon = new ImageIcon(ImageIO.read(new File(filePath)));
-        } catch (IOException e) {
-            e.printStackTrace();
+        // load the background image, unless it was loaded at startup
+        if(backgroundImageIcon == null){
+            backgroundImageIcon = loadBackground();
         }
 
         backgroundPanel = new JPanel() {
             public void paintComponent(Graphics g) {
                 super.paintComponent(g);
                 graphics = g;
-                backgroundImageIcon.paintIcon(this, g, 0, 0);
-                renderer.repaint(graphics, animating, move, pixels, updateBackground);
+                if(sidePanelShift == 0 && viewportHeight == 288){
+                    backgroundImageIcon.paintIcon(this, g, 0, 0);
+                }else{
+                    g.drawImage(scaledBackground, 0, 0, null);
+                }
+                if(renderWorker != null){
+                    int origin = renderer.getViewportOrigin();
+                    renderWorker.drawLatest(g, origin, origin);
+                }
             }
         };
 
         backgroundPanel.setLayout(null);
 
+        if(activeRendering){
+            int origin = renderer.getViewportOrigin();
+            boardCanvas = new Canvas();
+            boardCanvas.setBounds(origin, origin, viewportWidth, viewportHeight);
+            boardCanvas.addMouseWheelListener(this::zoomWithWheel);
+            backgroundPanel.add(boardCanvas);
+            renderLoop = new ActiveRenderLoop(boardCanvas, this::renderActiveFrame, targetFps, 5);
+        }else{
+            renderWorker = new RenderWorker(renderLock, this::captureFrame, () -> {
+                    int origin = renderer.getViewportOrigin();
+                    backgroundPanel.repaint(origin, origin, viewportWidth, viewportHeight);
+                });
+        }
+
         setUpLabels();
         checkGameStatus();
         setUpMenu();
 
+        backgroundPanel.addMouseWheelListener(this::zoomWithWheel);
+        backgroundPanel.addComponentListener(new ComponentAdapter() {
+                public void componentResized(ComponentEvent e) {
+                    layOutForSize(backgroundPanel.getWidth(), backgroundPanel.getHeight());
+                }
+            });
+
         // add the backgroundPanel to the JFrame
         frame.add(backgroundPanel);
+        frame.revalidate();
 
         setKeyFunctions();
         frame.setVisible(true);
+
+        if(renderLoop != null){
+            renderLoop.start();
+        }
+        if(renderWorker != null){
+            renderWorker.start();
+            renderWorker.requestFrame();
+        }
+    }
+
+    /**
+     * Grows the board view with the window and moves the side panel along with its right edge.
+     * The background is stretched around the board frame once per size rather than on every repaint.
+     *
+     * @param width The width of the game panel.
+     * @param height The height of the game panel.
+     */
+    private void layOutForSize(int width, int height){
+        Image background = backgroundImageIcon.getImage();
+        int extraWidth = Math.max(0, width - backgroundImageIcon.getIconWidth());
+        int extraHeight = Math.max(0, height - backgroundImageIcon.getIconHeight());
+
+        synchronized (renderLock) {
+            viewportWidth = 288 + extraWidth;
+            viewportHeight = 288 + extraHeight;
+            renderer.setViewportSize(viewportWidth, viewportHeight);
+        }
+        if(boardCanvas != null){
+            boardCanvas.setSize(viewportWidth, viewportHeight);
+        }
+
+        int shift = extraWidth - sidePanelShift;
+        for(Component c : backgroundPanel.getComponents()){
+            if(c != boardCanvas){
+                c.setLocation(c.getX() + shift, c.getY());
+            }
+        }
+        sidePanelShift = extraWidth;
+
+        BufferedImage scaled = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_RGB);
+        Graphics g = scaled.getGraphics();
+        // fill with the circuit board strip along the bottom of the background
+        // the last column of the image is white, so it is left out
+        int stripWidth = backgroundImageIcon.getIconWidth() - 1;
+        int stripHeight = backgroundImageIcon.getIconHeight() - FRAME_END;
+        for(int y = 0; y < height; y += stripHeight){
+            for(int x = 0; x < width; x += stripWidth){
+                g.drawImage(background, x, y, x + stripWidth, y + stripHeight,
+                    0, FRAME_END, stripWidth, backgroundImageIcon.getIconHeight(), null);
+            }
+        }
+        // the board frame, corners kept as they are and the edges stretched
+        int[] source = {FRAME_EDGE, FRAME_EDGE + FRAME_BORDER, FRAME_END - FRAME_BORDER, FRAME_END};
+        int[] targetX = {FRAME_EDGE, FRAME_EDGE + FRAME_BORDER, FRAME_END - FRAME_BORDER + extraWidth, FRAME_END + extraWidth};
+        int[] targetY = {FRAME_EDGE, FRAME_EDGE + FRAME_BORDER, FRAME_END - FRAME_BORDER + extraHeight, FRAME_END + extraHeight};
+        for(int i = 0; i < 3; i++){
+            for(int j = 0; j < 3; j++){
+                g.drawImage(background, targetX[i], targetY[j], targetX[i + 1], targetY[j + 1],
+                    source[i], source[j], source[i + 1], source[j + 1], null);
+            }
+        }
+        // the side panel is not stretched, it just moves right
+        g.drawImage(background, SIDE_PANEL_X + extraWidth, FRAME_EDGE, SIDE_PANEL_END + extraWidth, FRAME_END,
+            SIDE_PANEL_X, FRAME_EDGE, SIDE_PANEL_END, FRAME_END, null);
+        g.dispose();
+        scaledBackground = scaled;
+
+        backgroundPanel.repaint();
+        repaintBoard();
+    }
+
+    /**
+     * Zooms the board view in or out one level.
+     *
+     * @param in {@code true} to zoom in, {@code false} to zoom out.
+     */
+    private void zoom(boolean in){
+        synchronized (renderLock) {
+            if(in){
+                renderer.zoomIn();
+            }else{
+                renderer.zoomOut();
+            }
+            tileSize = renderer.getTileSize();
+        }
+        repaintBoard();
+    }
+
+    /**
+     * Zooms with the mouse wheel, rolling forward zooms in.
+     *
+     * @param e The wheel event.
+     */
+    private void zoomWithWheel(MouseWheelEvent e){
+        if(e.getWheelRotation() != 0){
+            zoom(e.getWheelRotation() < 0);
+        }
+    }
+
+    /**
+     * Takes what the next frame of the board shows for the render worker, called with the render lock held.
+     */
+    private Renderer.FrameState captureFrame(){
+        return renderer.capture(animating, move, moveProgress(), enemyProgress());
+    }
+
+    /**
+     * Draws one frame of the board for the active render loop.
+     * The canvas sits on top of the board area, so the graphics are shifted back to panel coordinates.
+     *
+     * @param g The graphics of the canvas back buffer.
+     */
+    private void renderActiveFrame(Graphics g){
+        synchronized (renderLock) {
+            Renderer current = renderer;
+            int origin = current.getViewportOrigin();
+            g.translate(-origin, -origin);
+            current.repaint(g, animating, move, moveProgress(), enemyProgress());
+        }
     }
 
     /**
@@ -361,58 +784,41 @@ public class App {
         timerCount = 0;
         timer = new Timer(rate, new ActionListener() {
                 public void actionPerformed(ActionEvent e) {
-                    if(!isPaused){
-                        timerCount+= 20;
-                        if(timerCount % 100 == 0){
-                            updateBackground = true;
-                        }else{
-                            updateBackground = false;
-                        }
-                        if(level == 2){
-                            if (timerCount % 400 == 0){
-                                domain.updateEnemies();
+                    if(isPaused){
+                        clockStopped = true;
+                    }else{
+                        List<Domain.Command> commands = new ArrayList<>();
+                        long tickStart = System.nanoTime();
+                        commandFetchNanos = 0;
+                        synchronized (renderLock) {
+                            if(clockStopped){
+                                // carry on from where the game was paused
+                                simulationOrigin = tickStart - simulationNanos;
+                                clockStopped = false;
                             }
-                        }
-                        // if move selected and not currently animating
-                        if(!move.equals("unset") && !animating){
-                            // if the move is even possible
-                            if(executeMove(move, false)){
-                                // if move is possible start animating
-                                animating = true;
+                            // run as many steps as real time has passed, the timer firing late does not slow the game down
+                            long steps = (tickStart - simulationOrigin - simulationNanos) / STEP_NANOS;
+                            if(steps > MAX_CATCH_UP_STEPS){
+                                simulationOrigin += (steps - MAX_CATCH_UP_STEPS) * STEP_NANOS;
+                                steps = MAX_CATCH_UP_STEPS;
                             }
-                        }
-
-                        if(animating){
-                            // if pixels moved in the animation is less than the full 32 pixels needed for a full animation
-                            if( pixels != 30){
-                                // add 1 pixel so next clock loop it moves a extra pixel
-                                pixels+=2;
-                            }else{ // when reached the end of the animation and chap has moved 32 pixels
-                                // activate the logic that assigns chap's position to the next tile
-
-                                executeMove(move, true);
-                                for(Domain.Command c : domain.getCommands()){
-                                    switch (c.type()){
-                                        case "playSound": renderer.playSound(c.argument());
-                                            break;
-                                        case "printInfo":
-                                            JOptionPane.showMessageDialog(frame, c.argument(), "Help", JOptionPane.INFORMATION_MESSAGE);
-                                            break;
-                                        case "move" :
-                                            recorder.storeMovesMade(c.argument(), elapsedTime, level);
-                                            break;
-                                    }
-                                }
-                                // reset values
-                                pixels = 0;
-                                move = "unset";
-                                animating = false;
+                            for(int i = 0; i < steps; i++){
+                                commands.addAll(tick());
                             }
                         }
+                        long tickEnd = System.nanoTime();
+                        dispatchCommands(commands);
+                        if(journal != null && journal.checkpointDue()){
+                            checkpoint();
+                        }
+                        long dispatchEnd = System.nanoTime();
+
+                        hud.recordTick(tickEnd - tickStart - commandFetchNanos);
+                        hud.recordDispatch(commandFetchNanos + dispatchEnd - tickEnd);
 
                         repaintKeyInventory();
 
-                        backgroundPanel.repaint();
+                        repaintBoard();
                         int chipsLeft = domain.getChap().getTreasureTotal();
 
                         chipsLeftLabel.setText(Integer.toString(chipsLeft));
@@ -423,6 +829,72 @@ public class App {
         timer.start();
     }
 
+    /**
+     * Advances the game by one 20ms step: enemies, the background animation and chap's move.
+     * Called with the render lock held so the render thread never sees a half updated board.
+     *
+     * @return The commands domain produced during this step, to be handled once the lock is released.
+     */
+    private List<Domain.Command> tick(){
+        List<Domain.Command> commands = List.of();
+
+        simulationNanos += STEP_NANOS;
+        timerCount+= STEP_MILLIS;
+        // animated tiles keep their own timers, only the ones that change are redrawn
+        domain.updateAnimations(STEP_MILLIS);
+        if(level == 2){
+            if (timerCount % 400 == 0){
+                domain.updateEnemies();
+                enemyMoveNanos = simulationNanos;
+            }
+        }
+        // if move selected and not currently animating
+        if(!move.equals("unset") && !animating){
+            // if the move is even possible
+            if(executeMove(move, false)){
+                // if move is possible start animating, frames work out where chap is from the time since now
+                animating = true;
+                replayAnimation = false;
+                moveStartNanos = simulationNanos;
+            }
+        }
+
+        // when chap has been walking for the whole move, assign his position to the next tile
+        if(animating && simulationNanos - moveStartNanos >= MOVE_NANOS){
+            executeMove(move, true);
+            long fetchStart = System.nanoTime();
+            commands = domain.getCommands();
+            commandFetchNanos += System.nanoTime() - fetchStart;
+            // reset values
+            move = "unset";
+            animating = false;
+        }
+        return commands;
+    }
+
+    /**
+     * Executes the commands that domain has produced, such as sounds, info messages and recorded moves.
+     *
+     * @param commands The commands to execute.
+     */
+    private void dispatchCommands(List<Domain.Command> commands){
+        for(Domain.Command c : commands){
+            switch (c.type()){
+                case "playSound": renderer.playSound(c.argument());
+                    break;
+                case "printInfo":
+                    JOptionPane.showMessageDialog(frame, c.argument(), "Help", JOptionPane.INFORMATION_MESSAGE);
+                    break;
+                case "move" :
+                    recorder.storeMovesMade(c.argument(), elapsedTime, level);
+                    if(journal != null){
+                        journal.append(c.argument(), elapsedTime, level);
+                    }
+                    break;
+            }
+        }
+    }
+
     /**
      * This changes the keys displayed on the GUI to be accurate to the keys in the inventory in the game.
      *
@@ -500,7 +972,8 @@ public class App {
      *
      */
     public void checkGameStatus(){
-        makeTimer(true,20);
+        // the game runs in 20ms steps either way, in passive mode the timer also paces the repaints
+        makeTimer(true, activeRendering ? STEP_MILLIS : Math.max(1, 1000 / targetFps));
 
         count = 0;
         clock = new Timer(100, new ActionListener() {
@@ -560,6 +1033,7 @@ public class App {
                             //exits the game, game will start from level 1 when reopened
                             if (choice == JOptionPane.NO_OPTION) {
                                 persistency.saveExitState(1);
+                                discardJournal();
                                 System.exit(0);
                             }
                         }
@@ -707,11 +1181,7 @@ public class App {
         saveMenuItem.addActionListener(new ActionListener() {
                 public void actionPerformed(ActionEvent e) {
                     recorder.shutdownOps();
-                    isPaused = true;
-                    String filename = recorder.saveToFile(frame);
-                    persistency.saveLevel(filename, domain.getBoard());
-                    persistency.saveExitState(filename);
-                    System.exit(0);
+                    saveAndExit();
                 }
             });
 
@@ -794,7 +1264,9 @@ public class App {
      */
 
     public boolean executeMove(String move, boolean entering) {
-        return domain.getChap().move(move, entering);
+        synchronized (renderLock) {
+            return domain.getChap().move(move, entering);
+        }
     }
 
     /**
@@ -810,6 +1282,33 @@ public class App {
                         recorder.stepToNextMove();
                     }
 
+                    if (keyCode == KeyEvent.VK_F3){
+                        hud.toggle();
+                        repaintBoard();
+                    }
+
+                    if (keyCode == KeyEvent.VK_EQUALS || keyCode == KeyEvent.VK_PLUS || keyCode == KeyEvent.VK_ADD){
+                        zoom(true);
+                    }
+
+                    if (keyCode == KeyEvent.VK_MINUS || keyCode == KeyEvent.VK_SUBTRACT){
+                        zoom(false);
+                    }
+
+                    if (keyCode == KeyEvent.VK_0 && !e.isControlDown()){
+                        synchronized (renderLock) {
+                            tileSize = 32;
+                            renderer.setTileSize(tileSize);
+                        }
+                        repaintBoard();
+                    }
+
+                    if (keyCode == KeyEvent.VK_M){
+                        minimapVisible = !minimapVisible;
+                        renderer.setMinimapVisible(minimapVisible);
+                        repaintBoard();
+                    }
+
                     if(keyListenersEnabled){
                         if (keyCode == KeyEvent.VK_UP) {
                             if(!animating){
@@ -862,42 +1361,25 @@ public class App {
                             //the next time the game is started,
                             //it will resume from the last unfinished level
                         } else if (e.isControlDown() && keyCode == KeyEvent.VK_S){
-                            isPaused = true;
-                            String filename = recorder.saveToFile(frame);
-                            persistency.saveLevel(filename, domain.getBoard());
-                            persistency.saveExitState(filename);
-                            System.exit(0);
+                            saveAndExit();
                             //exit the game,
                             //saves the game state,
                             //game will resume next time the application will be started
                         } else if (e.isControlDown() && keyCode == KeyEvent.VK_R){
 
-                            String gameDirectory = System.getProperty("user.dir");
-                            File recorderFilesDir = new File(gameDirectory, "recorderfiles");
-
-                            JFileChooser fileChooser = new JFileChooser(recorderFilesDir);
-                            fileChooser.setDialogTitle("Load Recorded Moves"); // Set the dialog title
-
-                            // Filter to allow only JSON files
-                            FileNameExtensionFilter jsonFilter = new FileNameExtensionFilter("JSON Files (*.json)", "json");
-                            fileChooser.setFileFilter(jsonFilter);
-
-                            int userChoice = fileChooser.showOpenDialog(frame);
-
-                            if (userChoice == JFileChooser.APPROVE_OPTION) {
-                                File selectedFile = fileChooser.getSelectedFile();
-                                if (selectedFile != null) {
-                                    String filenameWithExtension = selectedFile.getName(); // Get the file name with extension
-                                    String filename = filenameWithExtension.substring(0, filenameWithExtension.lastIndexOf('.'));
+                            String filename = SaveChooser.choose(frame, "Load Saved Game");
 
+                            if (filename != null) {
+                                synchronized (renderLock) {
                                     domain.loadLevel(filename);
-                                    recorder.loadFromString(filename);
                                     resetGame();
-                                    repaintGame();
                                 }
+                                recorder.loadFromString(filename);
+                                checkpoint();
+                                repaintGame();
                             }
                             //resume a saved game
-                            //this will pop up a file selector 
+                            //this will pop up a list of the saves
                             //to select a saved game to be loaded
                         } else if (e.isControlDown() && keyCode == KeyEvent.VK_1){
                             setLevel1();
@@ -910,6 +1392,40 @@ public class App {
 
     }
 
+    /**
+     * Saves the replay, the board and a thumbnail of it under a name chosen by the player, then exits.
+     * The next time the game is started it resumes from this save.
+     * The game is serialised and written on a background thread, so the window keeps drawing while the
+     * save is forced to disk. If the save fails the game stays open.
+     */
+    private void saveAndExit(){
+        isPaused = true;
+        String filename = recorder.chooseSaveName(frame);
+        if(filename == null){
+            return;
+        }
+        CompletableFuture.supplyAsync(() -> {
+            SavedGame save;
+            // the game is paused, the lock keeps anything else from changing the board while it is serialised
+            synchronized (renderLock) {
+                ArrayList<ArrayList<Domain.Tile>> board = domain.getBoard();
+                save = new SavedGame(filename, level, domain.getChap().getTreasureTotal(), getElapsedTime(), recorder.toJSON(),
+                    persistency.saveLevelJSON(filename, board), Renderer.renderThumbnail(board));
+            }
+            return persistency.saveGame(save);
+        }).whenComplete((saved, failure) -> {
+            if(Boolean.TRUE.equals(saved)){
+                discardJournal();
+                System.exit(0);
+            }
+            if(failure != null){
+                failure.printStackTrace();
+            }
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(frame,
+                "The game could not be saved, your previous save is unchanged.", "Save failed", JOptionPane.ERROR_MESSAGE));
+        });
+    }
+
     /**
      * Saves the level we are on prior to exit to persistency.
      * Exits the game.
@@ -917,9 +1433,110 @@ public class App {
      */
     public void doExit(){
         persistency.saveExitState(level);
+        discardJournal();
         System.exit(0);
     }
 
+    /**
+     * Starts journaling moves, beginning with a checkpoint of the game as it is now.
+     */
+    private void startJournal(){
+        try {
+            journal = MoveJournal.open(persistency);
+        } catch (IOException e) {
+            System.out.println("Could not open the move journal, the game will not be resumed if it stops");
+            e.printStackTrace();
+            return;
+        }
+        checkpoint();
+    }
+
+    /**
+     * Hands the journal the game as it is after the last move, to be written in the background.
+     * Called after every level load, so the moves in the journal always follow on from the board in the checkpoint.
+     * Only a copy of the moves and the board's tile Strings are taken here, the JSON is built on the journal's thread.
+     */
+    private void checkpoint(){
+        if(journal == null){
+            return;
+        }
+        int checkpointLevel = level;
+        int chipsLeft;
+        long elapsed;
+        List<Recorder.Move> moves;
+        Supplier<String> levelJSON;
+        synchronized (renderLock) {
+            chipsLeft = domain.getChap().getTreasureTotal();
+            elapsed = getElapsedTime();
+            moves = recorder.copyMoves();
+            levelJSON = persistency.snapshotLevelJSON(MoveJournal.NAME, domain.getBoard());
+        }
+        journal.checkpoint(() -> new SavedGame(MoveJournal.NAME, checkpointLevel, chipsLeft, elapsed, Recorder.toJSON(moves),
+            levelJSON.get(), null));
+    }
+
+    /**
+     * Replays the moves journaled after the checkpoint the game resumed from, when it resumed from one.
+     * Chap makes each move straight away. On level 2 the enemies step every 400ms of the time between the
+     * moves, as ReplayExporter steps them, since the game did not journal when in the step each move was made.
+     * If a move cannot be made on the resumed board the replay stops there, the rest would be of another game.
+     */
+    private void replayJournal(){
+        if(!resumingFromJournal){
+            return;
+        }
+        List<MoveJournal.Entry> entries;
+        long checkpointSeq;
+        try {
+            entries = MoveJournal.readEntries(MoveJournal.JOURNAL);
+            checkpointSeq = MoveJournal.checkpointSeq();
+        } catch (IOException | JSONException e) {
+            e.printStackTrace();
+            return;
+        }
+        int replayed = 0;
+        long elapsed = elapsedTime;
+        synchronized (renderLock) {
+            for(MoveJournal.Entry entry : entries){
+                if(entry.seq() <= checkpointSeq){
+                    continue;
+                }
+                // moves on another level belong to a board the checkpoint does not have
+                if(entry.level() != level){
+                    break;
+                }
+                if(level == 2){
+                    for(long step = elapsed / 400; step < entry.timestamp() / 400; step++){
+                        domain.updateEnemies();
+                    }
+                }
+                if(!domain.getChap().move(entry.direction(), false)){
+                    System.out.println("Stopped replaying the journal at move " + entry.seq() + " (" + entry.direction()
+                        + "), it cannot be made on the resumed board");
+                    break;
+                }
+                domain.getChap().move(entry.direction(), true);
+                recorder.storeMovesMade(entry.direction(), entry.timestamp(), entry.level());
+                elapsed = entry.timestamp();
+                replayed++;
+            }
+            // the sounds and moves of the replayed steps have already happened
+            domain.getCommands();
+        }
+        setElapsed(elapsed);
+        System.out.println("Replayed " + replayed + " moves from the journal");
+    }
+
+    /**
+     * Stops journaling and deletes the journal and checkpoint, for exits that record where to start again.
+     */
+    private void discardJournal(){
+        if(journal != null){
+            journal.discard();
+            journal = null;
+        }
+    }
+
     /**
      * Displays a dialog when the game is paused.
      * The user is prompted to press the ESC key to unpause the game.
@@ -0,0 +1,115 @@
+package src;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Images and sounds read from disk once per run and shared by every Domain and Renderer.
+ *
+ * The spritesheet is read the first time it is asked for. Each sound effect is decoded to PCM and
+ * converted for the AudioMixer the first time it is asked for, so resetting a level no longer
+ * decodes sounds or opens audio lines. Music is not kept here, MusicPlayer streams it from disk.
+ * A sound that cannot be read is reported once and is silent from then on.
+ *
+ * @author lalatheo
+ */
+final class Assets {
+
+    /**
+     * a sound decoded to signed PCM
+     */
+    record Sound(AudioFormat format, byte[] data) {
+    }
+
+    // images and sounds have locks of their own so they can be loaded at the same time
+    private static final Object SPRITESHEET_LOCK = new Object();
+    private static BufferedImage spritesheet;
+    private static final Map<String, Sound> sounds = new HashMap<>();
+    private static final Map<String, AudioMixer.Samples> samples = new HashMap<>();
+
+    private Assets() {
+    }
+
+    /**
+     * returns the folder next to src that holds a kind of asset, such as images or audio
+     */
+    static String folder(String name) {
+        String currentDirectory = System.getProperty("user.dir");
+        return currentDirectory.replace(File.separator + "src", "") + File.separator + name + File.separator;
+    }
+
+    /**
+     * returns the spritesheet every tile and chap image is cut from, reading it the first time
+     *
+     * @throws IllegalArgumentException if it is not in the images folder
+     */
+    static BufferedImage spritesheet() {
+        synchronized (SPRITESHEET_LOCK) {
+            if (spritesheet == null) {
+                try {
+                    spritesheet = ImageIO.read(new File(folder("images") + "spritesheet.png"));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                if (spritesheet == null) {
+                    throw new IllegalArgumentException("Could not find 'spritesheet' in 'images' folder in the target directory");
+                }
+            }
+            return spritesheet;
+        }
+    }
+
+    /**
+     * returns a sound from the audio folder decoded to PCM, decoding it the first time
+     *
+     * @param fileName the name of the wav file
+     * @return the sound, or null if it could not be read
+     */
+    static synchronized Sound sound(String fileName) {
+        if (sounds.containsKey(fileName)) {
+            return sounds.get(fileName);
+        }
+        Sound sound = null;
+        try (AudioInputStream stream = openSound(fileName)) {
+            sound = new Sound(stream.getFormat(), stream.readAllBytes());
+        } catch (IOException | UnsupportedAudioFileException | IllegalArgumentException e) {
+            System.out.println("Sound " + fileName + " not loaded: " + e.getMessage());
+        }
+        sounds.put(fileName, sound);
+        return sound;
+    }
+
+    /**
+     * opens a sound from the audio folder as a stream of 16 bit little endian PCM, decoded as it is read
+     *
+     * @param fileName the name of the wav file
+     */
+    static AudioInputStream openSound(String fileName) throws IOException, UnsupportedAudioFileException {
+        AudioInputStream source = AudioSystem.getAudioInputStream(new File(folder("audio") + fileName));
+        AudioFormat format = source.getFormat();
+        AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(),
+            16, format.getChannels(), format.getChannels() * 2, format.getSampleRate(), false);
+        return format.matches(pcm) ? source : AudioSystem.getAudioInputStream(pcm, source);
+    }
+
+    /**
+     * returns a sound converted for the mixer, converting it the first time
+     *
+     * @param fileName the name of the wav file
+     * @return the sound, or null if it could not be read
+     */
+    static synchronized AudioMixer.Samples samples(String fileName) {
+        if (!samples.containsKey(fileName)) {
+            samples.put(fileName, AudioMixer.prepare(sound(fileName)));
+        }
+        return samples.get(fileName);
+    }
+}
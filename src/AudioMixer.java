@@ -0,0 +1,295 @@
+package src;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Plays sound effects by mixing them in software into a single output line.
+ *
+ * Sounds are kept in memory as 16 bit stereo samples at the mixer's rate. A dedicated audio thread
+ * mixes every playing voice into one block at a time and writes it to a SourceDataLine, writing
+ * silence when nothing is playing so a new sound starts within one block. Play and stop requests
+ * are handed to the audio thread through a lock-free queue, so the game never waits on audio.
+ * The same sound can play several times at once, each play takes a voice from a fixed pool and
+ * when every voice is busy the one that has played longest is reused.
+ *
+ * The block size sets the latency, it can be changed with -Dchips.audio.buffer=frames.
+ *
+ * @author lalatheo
+ */
+public class AudioMixer implements Runnable {
+    public static final float SAMPLE_RATE = 44100f;
+    public static final int DEFAULT_BLOCK_FRAMES = 512;
+    public static final int VOICES = 32;
+    // the line holds this many blocks, one being played while the next is written
+    private static final int LINE_BLOCKS = 2;
+
+    private static AudioMixer shared;
+
+    /**
+     * a sound ready to be mixed, left and right samples interleaved
+     */
+    public static final class Samples {
+        private final short[] data;
+
+        private Samples(short[] data) {
+            this.data = data;
+        }
+
+        /**
+         * returns how long the sound plays for, in frames
+         */
+        public int frames() {
+            return data.length / 2;
+        }
+    }
+
+    /**
+     * asks the audio thread to start a sound, or to stop every voice playing it
+     */
+    private record Request(Samples sound, boolean stop) {
+    }
+
+    /**
+     * one sound being played, only touched by the audio thread
+     */
+    private static final class Voice {
+        Samples sound;
+        int position;
+        long started;
+    }
+
+    private final AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 2, true, false);
+    private final int blockFrames;
+    private final Queue<Request> requests = new ConcurrentLinkedQueue<>();
+    private final Voice[] voices = new Voice[VOICES];
+    private final int[] mix;
+    private final byte[] block;
+    private long blocksMixed = 0;
+
+    private SourceDataLine line;
+    private volatile boolean running = false;
+    private Thread thread;
+
+    /**
+     * Constructor for a mixer that is not yet playing
+     *
+     * @param blockFrames how many frames are mixed at a time, fewer means less latency but more wakeups
+     */
+    public AudioMixer(int blockFrames) {
+        if (blockFrames <= 0) {
+            throw new IllegalArgumentException("Audio block must be at least one frame: " + blockFrames);
+        }
+        this.blockFrames = blockFrames;
+        this.mix = new int[blockFrames * 2];
+        this.block = new byte[blockFrames * 4];
+        for (int i = 0; i < VOICES; i++) {
+            voices[i] = new Voice();
+        }
+    }
+
+    /**
+     * returns the mixer the game plays its sound effects through, started the first time it is asked for
+     */
+    public static synchronized AudioMixer shared() {
+        if (shared == null) {
+            shared = new AudioMixer(Integer.getInteger("chips.audio.buffer", DEFAULT_BLOCK_FRAMES));
+            shared.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(shared::stop, "close-mixer"));
+        }
+        return shared;
+    }
+
+    /**
+     * converts a decoded sound to the mixer's format, mono is played on both sides and other rates are resampled
+     *
+     * @return the sound, or null if there is no sound to convert
+     */
+    public static Samples prepare(Assets.Sound sound) {
+        if (sound == null) {
+            return null;
+        }
+        AudioFormat source = sound.format();
+        int channels = source.getChannels();
+        byte[] bytes = sound.data();
+        int sourceFrames = bytes.length / (2 * channels);
+        double step = source.getSampleRate() / SAMPLE_RATE;
+        int frames = (int) (sourceFrames / step);
+
+        short[] data = new short[frames * 2];
+        for (int i = 0; i < frames; i++) {
+            double at = i * step;
+            int first = (int) at;
+            int second = Math.min(first + 1, sourceFrames - 1);
+            double weight = at - first;
+            for (int side = 0; side < 2; side++) {
+                int channel = Math.min(side, channels - 1);
+                int a = sample(bytes, (first * channels + channel) * 2);
+                int b = sample(bytes, (second * channels + channel) * 2);
+                data[i * 2 + side] = (short) Math.round(a + (b - a) * weight);
+            }
+        }
+        return new Samples(data);
+    }
+
+    private static int sample(byte[] bytes, int offset) {
+        return (short) ((bytes[offset] & 0xFF) | bytes[offset + 1] << 8);
+    }
+
+    /**
+     * opens the output line and starts the audio thread, without a line the mixer stays silent and ignores requests
+     */
+    public void start() {
+        if (running) {
+            return;
+        }
+        try {
+            line = AudioSystem.getSourceDataLine(format);
+            line.open(format, block.length * LINE_BLOCKS);
+            line.start();
+            System.out.printf("Audio mixer started: %d frame blocks, %.1fms latency, %d voices%n",
+                blockFrames, getLatencyMillis(), VOICES);
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            System.out.println("Audio mixer has no output line: " + e.getMessage());
+            line = null;
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "audio-mixer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * stops the audio thread and closes the output line
+     */
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (line != null) {
+            line.stop();
+            line.close();
+        }
+    }
+
+    /**
+     * returns how long a sound waits at most between being played and being heard, in milliseconds
+     */
+    public double getLatencyMillis() {
+        int bufferBytes = line != null ? line.getBufferSize() : block.length * LINE_BLOCKS;
+        return (bufferBytes + block.length) / 4 * 1000.0 / SAMPLE_RATE;
+    }
+
+    /**
+     * starts playing a sound on a free voice, returns straight away
+     */
+    public void play(Samples sound) {
+        if (sound != null && running) {
+            requests.offer(new Request(sound, false));
+        }
+    }
+
+    /**
+     * stops every voice that is playing a sound
+     */
+    public void stop(Samples sound) {
+        if (sound != null && running) {
+            requests.offer(new Request(sound, true));
+        }
+    }
+
+    /**
+     * returns how many voices are playing, as of the last block mixed
+     */
+    public int activeVoices() {
+        int active = 0;
+        for (Voice voice : voices) {
+            if (voice.sound != null) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            mixBlock(block);
+            // blocks until the line has room, which paces the thread to the sound card
+            line.write(block, 0, block.length);
+        }
+    }
+
+    /**
+     * handles the waiting requests and mixes the next block of every playing voice into 16 bit little endian stereo
+     *
+     * @param out at least blockFrames * 4 bytes
+     */
+    void mixBlock(byte[] out) {
+        Request request;
+        while ((request = requests.poll()) != null) {
+            if (request.stop()) {
+                for (Voice voice : voices) {
+                    if (voice.sound == request.sound()) {
+                        voice.sound = null;
+                    }
+                }
+            } else {
+                Voice voice = freeVoice();
+                voice.sound = request.sound();
+                voice.position = 0;
+                voice.started = blocksMixed;
+            }
+        }
+
+        Arrays.fill(mix, 0);
+        for (Voice voice : voices) {
+            if (voice.sound == null) {
+                continue;
+            }
+            short[] data = voice.sound.data;
+            int count = Math.min(mix.length, data.length - voice.position);
+            for (int i = 0; i < count; i++) {
+                mix[i] += data[voice.position + i];
+            }
+            voice.position += count;
+            if (voice.position >= data.length) {
+                voice.sound = null;
+            }
+        }
+
+        for (int i = 0; i < mix.length; i++) {
+            int value = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mix[i]));
+            out[i * 2] = (byte) value;
+            out[i * 2 + 1] = (byte) (value >> 8);
+        }
+        blocksMixed++;
+    }
+
+    /**
+     * returns a voice that is not playing, or the one that has been playing longest when all are busy
+     */
+    private Voice freeVoice() {
+        Voice oldest = voices[0];
+        for (Voice voice : voices) {
+            if (voice.sound == null) {
+                return voice;
+            }
+            if (voice.started < oldest.started) {
+                oldest = voice;
+            }
+        }
+        return oldest;
+    }
+}
@@ -0,0 +1,87 @@
+package src;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Draws the rows of cells of a large board in parallel.
+ *
+ * The rows are split into horizontal bands that are painted on a fork/join pool, each band writing
+ * only the pixel rows of its own cells in the shared frame buffer, so no locking is needed.
+ * Jobs under PARALLEL_THRESHOLD cells are painted on the calling thread, splitting them costs more
+ * than it saves.
+ *
+ * @author lalatheo
+ */
+final class BandCompositor {
+    // below this many cells everything is painted on the calling thread
+    static final int PARALLEL_THRESHOLD = 10_000;
+    // bands are split until they hold about this many cells
+    private static final int BAND_CELLS = 2048;
+
+    private static volatile ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    /**
+     * paints one row of cells
+     */
+    interface RowPainter {
+        void paintRow(int row);
+    }
+
+    private BandCompositor() {
+    }
+
+    /**
+     * sets how many threads paint bands, 1 paints everything on the calling thread
+     */
+    static void setThreads(int threads) {
+        pool = threads <= 1 ? null : new ForkJoinPool(threads);
+    }
+
+    /**
+     * paints the rows from first up to but not including last, in parallel when there are enough cells
+     *
+     * @param cellsPerRow how many cells each row paints
+     */
+    static void paintRows(int first, int last, int cellsPerRow, RowPainter painter) {
+        ForkJoinPool current = pool;
+        if (current == null || (long) (last - first) * cellsPerRow < PARALLEL_THRESHOLD) {
+            for (int row = first; row < last; row++) {
+                painter.paintRow(row);
+            }
+            return;
+        }
+        current.invoke(new Band(first, last, cellsPerRow, painter));
+    }
+
+    /**
+     * a band of rows, split in half until it is small enough to paint
+     */
+    private static final class Band extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int first;
+        private final int last;
+        private final int cellsPerRow;
+        private final RowPainter painter;
+
+        Band(int first, int last, int cellsPerRow, RowPainter painter) {
+            this.first = first;
+            this.last = last;
+            this.cellsPerRow = cellsPerRow;
+            this.painter = painter;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first == 1 || (long) (last - first) * cellsPerRow <= BAND_CELLS) {
+                for (int row = first; row < last; row++) {
+                    painter.paintRow(row);
+                }
+                return;
+            }
+            int middle = (first + last) >>> 1;
+            invokeAll(new Band(first, middle, cellsPerRow, painter), new Band(middle, last, cellsPerRow, painter));
+        }
+    }
+}
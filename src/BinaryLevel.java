@@ -0,0 +1,385 @@
+package src;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes levels in a compact binary format, LevelConverter converts JSON levels to it.
+ *
+ * The file starts with a header holding the format version, the size of the board, the level
+ * number and the times. After it every cell takes one byte, its tile type, stored in the same
+ * order as the JSON tileArray, with the tile chap is standing on as one extra cell at the end.
+ * What a tile needs besides its type is kept in side tables after the cells, in cell order:
+ * key and door colours, an index into a table of info strings, chap's treasure total and the
+ * path of each enemy. The inventory is stored last as a list of key colours.
+ *
+ * Files are read through a MappedByteBuffer so the cells are decoded straight from the file
+ * without copying it into memory first. Everything is big endian.
+ *
+ * @author Jake Domb
+ */
+final class BinaryLevel {
+    static final byte[] MAGIC = { 'C', 'H', 'L', 'V' };
+    static final int VERSION = 1;
+
+    // tile types, the same numbers Persistency gives the JSON tile names
+    private static final byte WALL = 0;
+    private static final byte FREE = 1;
+    private static final byte KEY = 2;
+    private static final byte LOCKED_DOOR = 3;
+    private static final byte INFO = 4;
+    private static final byte TREASURE = 5;
+    private static final byte EXIT_LOCK = 6;
+    private static final byte EXIT = 7;
+    private static final byte CHAP = 8;
+    private static final byte ENEMY = 9;
+    // an empty cell, such as an empty string in a JSON level
+    private static final byte NONE = -1;
+
+    /**
+     * A level read from a file, with the chap's state that is stored alongside the board.
+     */
+    record Level(LevelHeader header, ArrayList<ArrayList<Domain.Tile>> tiles, Domain.Tile standingOn, List<Integer> inventory) {
+    }
+
+    private BinaryLevel() {
+    }
+
+    /**
+     * returns true if the buffer starts with the binary level magic, the buffer's position is not changed
+     */
+    static boolean isBinary(ByteBuffer buffer) {
+        if (buffer.remaining() < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(buffer.position() + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * returns true if a file starts with the binary level magic
+     */
+    static boolean isBinary(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer start = ByteBuffer.allocate(MAGIC.length);
+            while (start.hasRemaining() && channel.read(start) != -1) {
+            }
+            return isBinary(start.flip());
+        }
+    }
+
+    /**
+     * maps a whole file into memory read only, the mapping stays valid after the channel is closed
+     */
+    static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Reads a level, building its tiles in the given domain.
+     *
+     * @param buffer the level file, from its start
+     * @param domain the domain the tiles belong to
+     *
+     * @return the level
+     *
+     * @throws IllegalArgumentException if the buffer is not a binary level this version can read
+     */
+    static Level read(ByteBuffer buffer, Domain domain) {
+        ByteBuffer in = buffer.duplicate();
+        LevelHeader header = readHeader(in);
+        int wid = header.width();
+        int hit = header.height();
+
+        int cellStart = in.position();
+        int cellCount = wid * hit + 1;
+        in.position(cellStart + cellCount);
+
+        // the side tables are small, they are read first so the cells can be built in one pass
+        byte[] colours = new byte[in.getInt()];
+        in.get(colours);
+        String[] strings = new String[in.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = getString(in);
+        }
+        int[] infos = new int[in.getInt()];
+        for (int i = 0; i < infos.length; i++) {
+            infos[i] = in.getShort() & 0xFFFF;
+        }
+        int[] treasures = new int[in.getInt()];
+        for (int i = 0; i < treasures.length; i++) {
+            treasures[i] = in.getInt();
+        }
+        int pathCount = in.getInt();
+        List<List<Domain.Coordinates>> paths = new ArrayList<>(pathCount);
+        for (int i = 0; i < pathCount; i++) {
+            int points = in.getShort() & 0xFFFF;
+            List<Domain.Coordinates> path = new ArrayList<>(points);
+            for (int p = 0; p < points; p++) {
+                path.add(new Domain.Coordinates(in.getInt(), in.getInt()));
+            }
+            paths.add(List.copyOf(path));
+        }
+        int inventoryCount = in.getInt();
+        List<Integer> inventory = new ArrayList<>(inventoryCount);
+        for (int i = 0; i < inventoryCount; i++) {
+            inventory.add((int) in.get());
+        }
+
+        ArrayList<ArrayList<Domain.Tile>> tiles = new ArrayList<ArrayList<Domain.Tile>>(wid);
+        for (int i = 0; i < wid; i++) {
+            tiles.add(new ArrayList<Domain.Tile>(hit));
+        }
+
+        int[] next = new int[4];
+        for (int j = 0; j < hit; j++) {
+            for (int i = 0; i < wid; i++) {
+                tiles.get(i).add(buildTile(domain, in.get(cellStart + i + j * wid), colours, strings, infos, treasures, paths, next));
+            }
+        }
+        Domain.Tile standingOn = buildTile(domain, in.get(cellStart + wid * hit), colours, strings, infos, treasures, paths, next);
+
+        return new Level(header, tiles, standingOn, inventory);
+    }
+
+    /**
+     * reads the header, leaving the buffer positioned at the first cell
+     *
+     * @throws IllegalArgumentException if the buffer is not a binary level this version can read
+     */
+    static LevelHeader readHeader(ByteBuffer in) {
+        if (!isBinary(in)) {
+            throw new IllegalArgumentException("Not a binary level");
+        }
+        in.position(in.position() + MAGIC.length);
+        int version = in.getShort() & 0xFFFF;
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary level version: " + version);
+        }
+        return new LevelHeader(in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getLong());
+    }
+
+    /**
+     * Reads the size, level number, time limit and treasure count of a level without building its tiles.
+     * The cells are stepped over, only the header and the side tables before chap's treasure total are read.
+     *
+     * @param buffer the level, from its first byte
+     *
+     * @return what a menu needs to know about the level
+     *
+     * @throws IllegalArgumentException if the buffer is not a binary level this version can read
+     */
+    static LevelInfo readInfo(ByteBuffer buffer) {
+        ByteBuffer in = buffer.duplicate();
+        LevelHeader header = readHeader(in);
+        in.position(in.position() + header.width() * header.height() + 1);
+
+        int colours = in.getInt();
+        in.position(in.position() + colours);
+        int strings = in.getInt();
+        for (int i = 0; i < strings; i++) {
+            int length = in.getShort() & 0xFFFF;
+            in.position(in.position() + length);
+        }
+        int infos = in.getInt();
+        in.position(in.position() + 2 * infos);
+        int treasures = in.getInt() == 0 ? 0 : in.getInt();
+
+        return new LevelInfo(header.width(), header.height(), header.levelNumber(), header.totalTime(), treasures);
+    }
+
+    /**
+     * builds the tile for one cell, taking what it needs from the side tables
+     *
+     * @param next how far through the colour, info, treasure and path tables the cells read so far have got
+     */
+    private static Domain.Tile buildTile(Domain domain, byte type, byte[] colours, String[] strings, int[] infos,
+            int[] treasures, List<List<Domain.Coordinates>> paths, int[] next) {
+        switch (type) {
+            case WALL:
+                return domain.new WallTile();
+            case FREE:
+                return domain.new FreeTile();
+            case KEY:
+                return domain.new KeyTile(colours[next[0]++]);
+            case LOCKED_DOOR:
+                return domain.new LockedDoorTile(colours[next[0]++]);
+            case INFO:
+                return domain.new InfoFeildTile(strings[infos[next[1]++]]);
+            case TREASURE:
+                return domain.new TreasureTile();
+            case EXIT_LOCK:
+                return domain.new ExitLockTile();
+            case EXIT:
+                return domain.new ExitTile();
+            case CHAP:
+                return domain.new ChapTile(treasures[next[2]++]);
+            case ENEMY:
+                return domain.new EnemyTile(paths.get(next[3]++));
+            case NONE:
+                return null;
+            default:
+                throw new IllegalArgumentException("Unknown tile type: " + type);
+        }
+    }
+
+    /**
+     * Writes a level.
+     *
+     * @param file where to write it, replaced if it exists
+     * @param header the level number and times, the size is taken from the tiles
+     * @param tiles the board
+     * @param standingOn the tile chap is standing on
+     * @param inventory the keys chap is holding
+     */
+    static void write(Path file, LevelHeader header, ArrayList<ArrayList<Domain.Tile>> tiles, Domain.Tile standingOn,
+            List<Domain.Tile> inventory) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            write(out, header, tiles, standingOn, inventory);
+        }
+    }
+
+    /**
+     * Writes a level to a stream, for example to put it in a LevelPack.
+     *
+     * @param stream where to write it, closed once the level is written
+     * @param header the level number and times, the size is taken from the tiles
+     * @param tiles the board
+     * @param standingOn the tile chap is standing on
+     * @param inventory the keys chap is holding
+     */
+    static void write(OutputStream stream, LevelHeader header, ArrayList<ArrayList<Domain.Tile>> tiles,
+            Domain.Tile standingOn, List<Domain.Tile> inventory) throws IOException {
+        int wid = tiles.size();
+        int hit = tiles.get(0).size();
+
+        byte[] cells = new byte[wid * hit + 1];
+        SideTables tables = new SideTables();
+        for (int j = 0; j < hit; j++) {
+            for (int i = 0; i < wid; i++) {
+                cells[i + j * wid] = tables.add(tiles.get(i).get(j));
+            }
+        }
+        cells[wid * hit] = tables.add(standingOn);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.write(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(wid);
+            out.writeInt(hit);
+            out.writeInt(header.levelNumber());
+            out.writeInt(header.totalTime());
+            out.writeLong(header.elapsedTime());
+            out.write(cells);
+
+            out.writeInt(tables.colours.size());
+            for (int colour : tables.colours) {
+                out.writeByte(colour);
+            }
+            out.writeInt(tables.strings.size());
+            for (String string : tables.strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(bytes.length);
+                out.write(bytes);
+            }
+            out.writeInt(tables.infos.size());
+            for (int info : tables.infos) {
+                out.writeShort(info);
+            }
+            out.writeInt(tables.treasures.size());
+            for (int treasure : tables.treasures) {
+                out.writeInt(treasure);
+            }
+            out.writeInt(tables.paths.size());
+            for (List<Domain.Coordinates> path : tables.paths) {
+                out.writeShort(path.size());
+                for (Domain.Coordinates c : path) {
+                    out.writeInt(c.x());
+                    out.writeInt(c.y());
+                }
+            }
+            out.writeInt(inventory.size());
+            for (Domain.Tile key : inventory) {
+                out.writeByte(key.iconIndex);
+            }
+        }
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * the side tables of a level being written, filled in cell order
+     */
+    private static final class SideTables {
+        final List<Integer> colours = new ArrayList<>();
+        final List<String> strings = new ArrayList<>();
+        final Map<String, Integer> stringIndices = new HashMap<>();
+        final List<Integer> infos = new ArrayList<>();
+        final List<Integer> treasures = new ArrayList<>();
+        final List<List<Domain.Coordinates>> paths = new ArrayList<>();
+
+        /**
+         * records what a tile needs in the tables and returns its type
+         */
+        byte add(Domain.Tile tile) {
+            if (tile == null)
+                return NONE;
+            else if (tile instanceof Domain.WallTile)
+                return WALL;
+            else if (tile instanceof Domain.FreeTile)
+                return FREE;
+            else if (tile instanceof Domain.KeyTile) {
+                colours.add(tile.iconIndex);
+                return KEY;
+            } else if (tile instanceof Domain.LockedDoorTile) {
+                colours.add(tile.iconIndex);
+                return LOCKED_DOOR;
+            } else if (tile instanceof Domain.InfoFeildTile) {
+                String info = ((Domain.InfoFeildTile) tile).info;
+                Integer index = stringIndices.get(info);
+                if (index == null) {
+                    index = strings.size();
+                    strings.add(info);
+                    stringIndices.put(info, index);
+                }
+                infos.add(index);
+                return INFO;
+            } else if (tile instanceof Domain.TreasureTile)
+                return TREASURE;
+            else if (tile instanceof Domain.ExitLockTile)
+                return EXIT_LOCK;
+            else if (tile instanceof Domain.ExitTile)
+                return EXIT;
+            else if (tile instanceof Domain.ChapTile) {
+                treasures.add(((Domain.ChapTile) tile).treasureTotal);
+                return CHAP;
+            } else if (tile instanceof Domain.EnemyTile) {
+                paths.add(((Domain.EnemyTile) tile).path);
+                return ENEMY;
+            } else
+                throw new RuntimeException("Unknown tile type: " + tile.getClass().getName());
+        }
+    }
+}
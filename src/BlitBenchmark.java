@@ -0,0 +1,112 @@
+package src;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compares drawing a full board view tile by tile with Graphics.drawImage against copying the
+ * tiles out of a packed SpriteAtlas with System.arraycopy.
+ *
+ * Each path is warmed up before it is timed, then timed over several rounds and the median
+ * round reported, so the JIT has compiled both loops before they are compared.
+ *
+ * Usage: java src.BlitBenchmark [level] [tilesAcross]
+ *
+ * @author lalatheo
+ */
+public class BlitBenchmark {
+    private static final int TILE_SIZE = 32;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    // tiles drawn per round, split into as many frames as that makes
+    private static final int TILES_PER_ROUND = 160_000;
+
+    // sink so the JIT cannot drop the frames nobody looks at
+    private static int checksum;
+
+    /**
+     * Command line entry point.
+     *
+     * @param args Optionally the level to draw and how many tiles across the view is, 9 by default.
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        String level = args.length > 0 ? args[0] : "2";
+        int across = args.length > 1 ? Integer.parseInt(args[1]) : 9;
+
+        Domain domain = new Domain();
+        domain.setPersistency(new Persistency(null, domain));
+        domain.loadLevel(level);
+        ArrayList<ArrayList<Domain.Tile>> board = domain.getBoard();
+
+        // the view, wrapped around the board when the board is smaller
+        Domain.Tile[] visible = new Domain.Tile[across * across];
+        for (int i = 0; i < across; i++) {
+            for (int j = 0; j < across; j++) {
+                visible[i * across + j] = board.get(i % board.size()).get(j % board.get(0).size());
+            }
+        }
+
+        int size = across * TILE_SIZE;
+        BufferedImage frame = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+        Graphics2D g = frame.createGraphics();
+
+        SpriteAtlas atlas = new SpriteAtlas(TILE_SIZE);
+        int[] indices = new int[visible.length];
+        for (int i = 0; i < visible.length; i++) {
+            Domain.Tile tile = visible[i];
+            indices[i] = atlas.indexOf(tile.getClass().getName() + tile.iconIndex, tile::getIcon);
+        }
+
+        int frames = Math.max(1, TILES_PER_ROUND / visible.length);
+        System.out.println("Drawing a " + across + "x" + across + " tile view (" + size + "x" + size + " pixels), "
+                + frames + " frames per round");
+
+        double drawImage = time(frames, () -> {
+            for (int i = 0; i < across; i++) {
+                for (int j = 0; j < across; j++) {
+                    g.drawImage(visible[i * across + j].getIcon(), i * TILE_SIZE, j * TILE_SIZE, null);
+                }
+            }
+            checksum += pixels[size * size / 2];
+        });
+        System.out.println(String.format("drawImage per tile: %8.1f us/frame", drawImage / 1000));
+
+        double arraycopy = time(frames, () -> {
+            for (int i = 0; i < across; i++) {
+                for (int j = 0; j < across; j++) {
+                    atlas.draw(indices[i * across + j], pixels, size, size, i * TILE_SIZE, j * TILE_SIZE);
+                }
+            }
+            checksum += pixels[size * size / 2];
+        });
+        System.out.println(String.format("atlas arraycopy:    %8.1f us/frame", arraycopy / 1000));
+        System.out.println(String.format("speedup %.1fx (checksum %d)", drawImage / arraycopy, checksum));
+        g.dispose();
+    }
+
+    /**
+     * returns the median nanoseconds per frame over the timed rounds
+     */
+    private static double time(int frames, Runnable drawFrame) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (int i = 0; i < frames; i++) {
+                drawFrame.run();
+            }
+        }
+        double[] rounds = new double[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < frames; i++) {
+                drawFrame.run();
+            }
+            rounds[round] = (System.nanoTime() - start) / (double) frames;
+        }
+        Arrays.sort(rounds);
+        return rounds[ROUNDS / 2];
+    }
+}
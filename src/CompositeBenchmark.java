@@ -0,0 +1,100 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures how full board compositing scales with the number of threads painting bands.
+ *
+ * A board of the given size is tiled from the cells of a real level, then drawn whole at
+ * overview zoom the way Renderer redraws its cached board, and downsampled the way Minimap
+ * regenerates, once for every thread count from 1 up to the number of cores.
+ *
+ * Usage: java src.CompositeBenchmark [tilesAcross] [tileSize] [maxThreads]
+ *
+ * @author lalatheo
+ */
+public class CompositeBenchmark {
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 7;
+
+    /**
+     * Command line entry point.
+     *
+     * @param args Optionally how many tiles across the board is, 1000 by default, the tile size in pixels, 2 by default,
+     *             and the most threads to try, the number of cores by default.
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int across = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int tileSize = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+
+        Domain domain = new Domain();
+        domain.setPersistency(new Persistency(null, domain));
+        domain.loadLevel("2");
+        List<List<Domain.Tile>> cells = tileBoard(domain.getBoard(), across);
+
+        Renderer renderer = new Renderer(domain, false);
+        renderer.setTileSize(tileSize);
+        int size = across * tileSize;
+        int[] frame = new int[size * size];
+
+        int cores = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        System.out.println(across + "x" + across + " board (" + across * across + " cells) at " + tileSize
+                + "px per tile, up to " + cores + " threads, bands painted in parallel from "
+                + BandCompositor.PARALLEL_THRESHOLD + " cells");
+
+        double boardBase = 0;
+        double minimapBase = 0;
+        int expected = 0;
+        for (int threads = 1; threads <= cores; threads = threads < cores ? Math.min(cores, threads * 2) : cores + 1) {
+            BandCompositor.setThreads(threads);
+            double board = time(() -> renderer.composeCells(cells, frame, size, size));
+            double minimap = time(() -> Minimap.render(cells, 1));
+            int checksum = Arrays.hashCode(frame);
+            if (threads == 1) {
+                boardBase = board;
+                minimapBase = minimap;
+                expected = checksum;
+            }
+            System.out.println(String.format("%2d threads: board %7.2f ms (%.2fx), minimap %7.2f ms (%.2fx)%s",
+                    threads, board / 1e6, boardBase / board, minimap / 1e6, minimapBase / minimap,
+                    checksum == expected ? "" : ", frame differs from 1 thread"));
+        }
+        System.exit(0);
+    }
+
+    /**
+     * repeats the level's cells across a board of the given size, chap is left out so there is only one of him
+     */
+    private static List<List<Domain.Tile>> tileBoard(ArrayList<ArrayList<Domain.Tile>> level, int across) {
+        List<List<Domain.Tile>> cells = new ArrayList<>();
+        for (int i = 0; i < across; i++) {
+            List<Domain.Tile> column = new ArrayList<>();
+            for (int j = 0; j < across; j++) {
+                Domain.Tile tile = level.get(i % level.size()).get(j % level.get(0).size());
+                column.add(tile instanceof Domain.ChapTile chap ? chap.getStandingOn() : tile);
+            }
+            cells.add(column);
+        }
+        return cells;
+    }
+
+    /**
+     * returns the median nanoseconds one run takes
+     */
+    private static double time(Runnable run) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            run.run();
+        }
+        double[] rounds = new double[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            run.run();
+            rounds[round] = System.nanoTime() - start;
+        }
+        Arrays.sort(rounds);
+        return rounds[ROUNDS / 2];
+    }
+}
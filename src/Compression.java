@@ -0,0 +1,152 @@
+package src;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Writes saves and replays compressed, and reads files that may or may not be, telling which from their first bytes.
+ *
+ * Files are written gzip compressed at the level set with -Dchips.save.compression, from 1 for the fastest
+ * to 9 for the smallest, 6 by default. 0 writes plain JSON. Compressed files keep their .json names.
+ * When a file is read, a gzip stream is recognised by its 1f 8b magic and a zlib (deflate) stream by
+ * the 78 it starts with and the check in its second byte. Anything else, such as plain JSON, is read as it is.
+ * Files are inflated as they are parsed, so the uncompressed text is never held in memory.
+ *
+ * @author Jake Domb
+ */
+final class Compression {
+    static final int LEVEL = Integer.getInteger("chips.save.compression", 6);
+    private static final int BUFFER_SIZE = 65536;
+
+    private Compression() {
+    }
+
+    /**
+     * compresses text at the configured level, or returns it as UTF-8 if that is 0
+     */
+    static byte[] compress(String text) throws IOException {
+        return compress(text, LEVEL);
+    }
+
+    /**
+     * Streams text through a gzip DeflaterOutputStream.
+     *
+     * @param text The text to compress.
+     * @param level The deflate level, 1 to 9, or 0 to not compress.
+     *
+     * @return The compressed bytes, or the text as UTF-8 if level is 0.
+     */
+    static byte[] compress(String text, int level) throws IOException {
+        if (level == 0) {
+            return text.getBytes(StandardCharsets.UTF_8);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length() / 4 + 64);
+        try (Writer out = new OutputStreamWriter(gzip(bytes, level), StandardCharsets.UTF_8)) {
+            out.write(text);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Streams bytes through a gzip DeflaterOutputStream.
+     *
+     * @param bytes The bytes to compress.
+     * @param level The deflate level, 1 to 9, or 0 to not compress.
+     *
+     * @return The compressed bytes, or the bytes themselves if level is 0.
+     */
+    static byte[] compress(byte[] bytes, int level) throws IOException {
+        if (level == 0) {
+            return bytes;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (OutputStream out = gzip(compressed, level)) {
+            out.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Opens a file that may be compressed.
+     *
+     * @param file The file.
+     *
+     * @return Its contents, inflated as they are read if the file is compressed.
+     */
+    static InputStream open(Path file) throws IOException {
+        return open(Files.newInputStream(file));
+    }
+
+    /**
+     * Opens bytes that may be compressed, for example a save read from the SaveStore.
+     *
+     * @param stream The bytes, closed with the stream returned.
+     *
+     * @return The bytes, inflated as they are read if they are compressed.
+     */
+    static InputStream open(InputStream stream) throws IOException {
+        InputStream in = new BufferedInputStream(stream, BUFFER_SIZE);
+        try {
+            in.mark(2);
+            int first = in.read();
+            int second = in.read();
+            in.reset();
+            if (first == 0x1f && second == 0x8b) {
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            }
+            if (first == 0x78 && second >= 0 && ((first << 8) | second) % 31 == 0) {
+                return new InflaterInputStream(in, new Inflater(), BUFFER_SIZE);
+            }
+            return in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * opens a UTF-8 text file that may be compressed
+     */
+    static Reader reader(Path file) throws IOException {
+        return new InputStreamReader(open(file), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * reads UTF-8 text from bytes that may be compressed
+     */
+    static Reader reader(byte[] bytes) throws IOException {
+        return new InputStreamReader(open(new ByteArrayInputStream(bytes)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * returns true if a file starts like a gzip or zlib stream
+     */
+    static boolean isCompressed(Path file) throws IOException {
+        try (InputStream in = open(file)) {
+            return in instanceof InflaterInputStream;
+        }
+    }
+
+    private static OutputStream gzip(OutputStream out, int level) throws IOException {
+        return new GZIPOutputStream(out, BUFFER_SIZE) {
+            {
+                def.setLevel(level);
+            }
+        };
+    }
+}
@@ -1,6 +1,5 @@
 package src;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.util.*;
@@ -21,11 +20,24 @@ public class Domain
 
     private ArrayList<ArrayList<Tile>> board = new ArrayList<>();
     private static ArrayList<Command> commands = new ArrayList<>();
-    private static ArrayList<EnemyTile> enemies = new ArrayList<>();
+    private ArrayList<EnemyTile> enemies = new ArrayList<>();
     private PrivateOperation privateOperation;
     private Persistency persistency = null;
     private static ChapTile theChap = null;
     private static final int BUFFER = 8; // the extra space needed to display outofbounds areas
+    private static final int DIRTY_LOG_SIZE = 4096; // how many changed cells are remembered for the renderer
+    static final int LEVEL_OFFSET = BUFFER/2; // where cell 0,0 of the level is on the board
+
+    private ArrayList<AnimatedTile> animatedTiles = new ArrayList<>();
+
+    // ring buffer of changed cells, read by DirtyCursors
+    private final int[] dirtyX = new int[DIRTY_LOG_SIZE];
+    private final int[] dirtyY = new int[DIRTY_LOG_SIZE];
+    private long dirtyCount = 0;
+    private int boardVersion = 0;
+
+    // every cell replaced since the board was loaded, in level coordinates, so a save only has to look at these
+    private final Set<Coordinates> changedSinceLoad = new HashSet<>();
 
     /**
      * constructor 
@@ -113,6 +125,136 @@ public class Domain
         }
     }
 
+    /**
+     *  returns the enemies on the current board, so the renderer can draw them between cells while they move
+     */
+
+    public java.util.List<EnemyTile> getEnemies(){
+        return enemies;
+    }
+
+    /**
+     *  advances every animated tile by the given amount of time, only the cells whose icon changed are marked dirty
+     *  costs O(animated tiles) rather than a scan of the board
+     */
+
+    public void updateAnimations( int elapsedMillis ){
+        for(AnimatedTile a : animatedTiles){
+            a.advance(elapsedMillis);
+        }
+    }
+
+    /**
+     *  returns the number of tiles in the animation registry
+     */
+
+    public int getAnimatedTileCount(){
+        return animatedTiles.size();
+    }
+
+    /**
+     *  returns the cells whose tile was replaced since the board was loaded, in level coordinates ( without the buffer )
+     */
+
+    public Set<Coordinates> getChangedCells(){
+        return Collections.unmodifiableSet(changedSinceLoad);
+    }
+
+    /**
+     *  returns a new cursor over the cells that change from now on, the first drain will ask for a full redraw
+     */
+
+    public DirtyCursor newDirtyCursor(){
+        return new DirtyCursor();
+    }
+
+    /**
+     * Visits a changed cell, x and y are indexes into the board
+     **/
+    public interface CellVisitor
+    {
+        void visit( int x, int y );
+    }
+
+    /**
+     * Reads the cells of the board that changed since it was last drained
+     * 
+     * each reader (the renderer, the minimap ...) keeps its own cursor so they do not steal changes from each other
+     **/
+    public class DirtyCursor
+    {
+        private long read = 0;
+        private int version = -1;
+
+        private DirtyCursor(){}
+
+        /**
+         *  visits every cell changed since the last drain
+         *  returns false without visiting anything when the whole board has to be redrawn instead
+         *  ( a new board was loaded or more cells changed than the log remembers )
+         */
+        public boolean drain( CellVisitor visitor ){
+            if( version != boardVersion || dirtyCount - read > DIRTY_LOG_SIZE ){
+                version = boardVersion;
+                read = dirtyCount;
+                return false;
+            }
+            for( ; read < dirtyCount; read++ ){
+                int index = (int)( read % DIRTY_LOG_SIZE );
+                visitor.visit( dirtyX[index], dirtyY[index] );
+            }
+            return true;
+        }
+    }
+
+    /**
+     * An entry in the animation registry, a tile that cycles through its icons on its own timer
+     **/
+    private class AnimatedTile
+    {
+        final Tile tile;
+        final int x;
+        final int y;
+        final int frames;
+        final int period;
+        int elapsed = 0;
+
+        AnimatedTile( Tile tile, int x, int y ){
+            this.tile = tile;
+            this.x = x;
+            this.y = y;
+            this.frames = tile.animationFrames();
+            this.period = tile.animationPeriod();
+        }
+
+        void advance( int elapsedMillis ){
+            elapsed += elapsedMillis;
+            if( elapsed < period ){
+                return;
+            }
+            int steps = elapsed / period;
+            elapsed -= steps * period;
+
+            tile.setIcon( ( tile.iconIndex + steps ) % frames );
+
+            // the tile may be covered, for example by chap standing on it
+            if( board.get(x).get(y) == tile ){
+                markDirty( x, y );
+            }
+        }
+    }
+
+    /**
+     *  records that the cell at x, y changed and needs to be redrawn
+     */
+
+    private void markDirty( int x, int y ){
+        int index = (int)( dirtyCount % DIRTY_LOG_SIZE );
+        dirtyX[index] = x;
+        dirtyY[index] = y;
+        dirtyCount++;
+    }
+
     /**
      * 
      * Responsible for representing any Tile
@@ -204,6 +346,15 @@ public class Domain
             return iconIndex;
         }
 
+        // how many icons the tile cycles through on its own, 0 for tiles that do not animate
+        public int animationFrames(){
+            return 0;
+        }
+        // how many milliseconds each animation frame is shown for
+        public int animationPeriod(){
+            return 0;
+        }
+
         // overridden subclass methods
 
         // as of the current version only chap can move, but this may chanage in the future so this will remain a parent method
@@ -349,6 +500,16 @@ public class Domain
             super( privateOperation.getImage( ExitTile.class ) , true, 0 );
         }
 
+        @Override
+        public int animationFrames(){
+            return 3;
+        }
+
+        @Override
+        public int animationPeriod(){
+            return 100;
+        }
+
         @Override
         public boolean interactOntop(){    
             commands.add(new Command("playSound","win"));
@@ -369,7 +530,6 @@ public class Domain
 
         public EnemyTile( java.util.List<Coordinates> path ) {
             super( privateOperation.getImage( EnemyTile.class ) , true, 0 );
-            enemies.add(this);
             this.path = path;
             lastCount = path.size()-1;
         }
@@ -395,11 +555,25 @@ public class Domain
                 next.interactInfront();
             }
 
-            board.get(path.get(lastCount).x()+HALFBUFFER).set(path.get(lastCount).y()+HALFBUFFER, new FreeTile()); 
-            board.get(path.get(count).x()+HALFBUFFER).set(path.get(count).y()+HALFBUFFER, this); 
+            privateOperation.setTile(path.get(lastCount).x()+HALFBUFFER, path.get(lastCount).y()+HALFBUFFER, new FreeTile()); 
+            privateOperation.setTile(path.get(count).x()+HALFBUFFER, path.get(count).y()+HALFBUFFER, this); 
 
         }
 
+        /**
+         *  returns the cell the enemy is in, in board coordinates
+         */
+        public Coordinates getPosition(){
+            return new Coordinates(path.get(count).x()+BUFFER/2, path.get(count).y()+BUFFER/2);
+        }
+
+        /**
+         *  returns the cell the enemy was in before its last move, in board coordinates
+         */
+        public Coordinates getPreviousPosition(){
+            return new Coordinates(path.get(lastCount).x()+BUFFER/2, path.get(lastCount).y()+BUFFER/2);
+        }
+
         @Override
         public boolean interactInfront(){ 
             commands.add(new Command("playSound","loss"));
@@ -536,7 +710,7 @@ public class Domain
          */
         private void updateStatus(){
             if(hasLost){
-                board.get(coordinates.x()).set(coordinates.y(),new FreeTile());
+                privateOperation.setTile(coordinates.x(), coordinates.y(), new FreeTile());
             } 
         }
 
@@ -606,7 +780,7 @@ public class Domain
             if ( moving ){
                 privateOperation.enter(next);
             }else{
-                board.get(coordinates.x()).set( coordinates.y() , standingOn ); 
+                privateOperation.setTile( coordinates.x(), coordinates.y() , standingOn ); 
 
             }
 
@@ -629,6 +803,7 @@ public class Domain
 
     private class PrivateOperation
     {
+        private final Map<Class<?>, java.util.List<BufferedImage>> images = new HashMap<>();
 
         /**
          * Theo's code, used due to the lack of connection from Board to Renderer 
@@ -708,24 +883,54 @@ public class Domain
             }
 
             board = gBoard;
+            boardVersion++;
+            changedSinceLoad.clear();
 
             theChap.setCoordinates(privateOperation.findXY(theChap));
+            registerAnimatedTiles();
         }
 
-        private java.util.List<BufferedImage> getImage( Class<?> wildTileType ){  
-            BufferedImage spritesheet = null;
-
-            try{
-                String currentDirectory = System.getProperty("user.dir");
-                String fileName = "spritesheet.png";
-                String filePath = currentDirectory.replace(File.separator+"src", "") + File.separator +"images"+ File.separator + fileName;
-                spritesheet = ImageIO.read(new File(filePath));
-            } catch (IOException e) {
-                e.printStackTrace();
+        /**
+         *  finds the tiles that animate on their own and the enemies, done once per load so updates never scan the board
+         */
+        private void registerAnimatedTiles() {
+            animatedTiles = new ArrayList<>();
+            // enemies of a previously loaded board must not keep moving on this one
+            enemies = new ArrayList<>();
+            for (int i = 0; i < board.size(); i++) {
+                for (int j = 0; j < board.get(i).size(); j++) {
+                    Tile tile = board.get(i).get(j);
+                    if (tile.animationFrames() > 1 && tile.animationPeriod() > 0) {
+                        animatedTiles.add(new AnimatedTile(tile, i, j));
+                    }
+                    if (tile instanceof EnemyTile enemy) {
+                        enemies.add(enemy);
+                    }
+                }
             }
+        }
+
+        /**
+         *  places a tile on the board and marks its cell dirty
+         */
+        private void setTile( int x, int y, Tile tile ){
+            board.get(x).set(y, tile);
+            markDirty(x, y);
+            changedSinceLoad.add(new Coordinates(x - LEVEL_OFFSET, y - LEVEL_OFFSET));
+        }
+
+        /**
+         *  returns the icons of a tile type, every tile of a type shares the same icons
+         */
+        private java.util.List<BufferedImage> getImage( Class<?> wildTileType ){  
+            return images.computeIfAbsent( wildTileType, this::cutImages );
+        }
+
+        private java.util.List<BufferedImage> cutImages( Class<?> wildTileType ){  
+            // read once per run and shared, the icons are cut out of it once per tile type
+            BufferedImage spritesheet = Assets.spritesheet();
 
-            if( spritesheet == null ){ throw new IllegalArgumentException("Could not find 'spritesheet' in 'images' folder in the target directory");}
-            else if (wildTileType == WallTile.class) {
+            if (wildTileType == WallTile.class) {
                 return  java.util.List.of(spritesheet.getSubimage(0, 32, 32, 32)); 
             } else if (wildTileType == FreeTile.class) {
                 return java.util.List.of(spritesheet.getSubimage(0, 0, 32, 32));  
@@ -769,7 +974,7 @@ public class Domain
             for( int i = 0; i < board.size(); i ++ ){
                 for( int j = 0; j < board.get(0).size(); j++ ){
                     if( board.get(i).get(j).equals(replacing)){
-                        board.get(i).set(j,replacement);
+                        setTile(i,j,replacement);
                     }
                 }
             }   
@@ -824,14 +1029,14 @@ public class Domain
                 entering = replacement;
             }
 
-            board.get(x).set( y , theChap.getStandingOn() );
+            setTile( x, y , theChap.getStandingOn() );
             theChap.setStandingOn(entering);
 
             theChap.setCoordinates(new Coordinates(xE,yE)) ;
 
             // add player
             if ( !theChap.getHasWon() && !theChap.getHasLost()){
-                board.get(xE).set( yE , theChap );  
+                setTile( xE, yE , theChap );  
                 //System.out.println("chap is at :"+xE+" "+yE);
             }
         }
@@ -255,4 +255,67 @@ class DomainTest {
         assertEquals(Domain.FreeTile.class, domain.getBoard().get(2+4).get(1+4).getClass());      
     }
     
+    /**
+     * test that exit tiles are registered as animated tiles at load and that advancing them
+     * only marks their own cell dirty
+     */
+    @Test
+    public void test_AnimatedTiles(){
+        Domain domain = new Domain();
+
+        Persistency persistency = new Persistency(new App(), domain);
+
+        String lvlString = """
+            {
+                "chapStandingOn": "freeTile",
+                "inventoryArray": [],
+                "totalTime": 1,
+                "width": 4,
+                "levelNumber": 1,
+                "height": 4,
+                "elapsedTime": 0,
+                "tileArray": [
+                    "freeTile",
+                    "freeTile",
+                    "freeTile",
+                    "freeTile",
+                    "freeTile",
+                    "exitTile",
+                    "chapTile 1",
+                    "freeTile",
+                    "freeTile",
+                    "freeTile",
+                    "freeTile",
+                    "freeTile",
+                    "freeTile",
+                    "freeTile",
+                    "freeTile",
+                    "exitTile",
+                ]
+            }""";
+        domain.loadNonJsonLevel(persistency.getLevelFromJSON(lvlString));
+
+        assertEquals(2, domain.getAnimatedTileCount());
+
+        Domain.DirtyCursor cursor = domain.newDirtyCursor();
+        assertFalse(cursor.drain((x, y) -> fail("a new cursor should ask for a full redraw")));
+
+        domain.updateAnimations(50);
+        assertTrue(cursor.drain((x, y) -> fail("no frame has finished yet")));
+
+        domain.updateAnimations(50);
+        assertEquals(1, domain.getBoard().get(1+4).get(1+4).getIconIndex());
+        assertEquals(1, domain.getBoard().get(3+4).get(3+4).getIconIndex());
+
+        ArrayList<Domain.Coordinates> dirty = new ArrayList<>();
+        assertTrue(cursor.drain((x, y) -> dirty.add(new Domain.Coordinates(x, y))));
+        assertEquals(2, dirty.size());
+        assertTrue(dirty.contains(new Domain.Coordinates(1+4, 1+4)));
+        assertTrue(dirty.contains(new Domain.Coordinates(3+4, 3+4)));
+
+        // three frames, so after two more steps the icon wraps back around
+        domain.updateAnimations(200);
+        assertEquals(0, domain.getBoard().get(1+4).get(1+4).getIconIndex());
+    }
+    
 }
@@ -0,0 +1,11 @@
+package src;
+
+import java.util.Optional;
+
+/**
+ * Where the game was when it last exited: the level to start at, or the save to load.
+ *
+ * @author Jake Domb
+ */
+record ExitState(Optional<Integer> level, Optional<String> saveName) {
+}
@@ -0,0 +1,250 @@
+package src;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.json.JSONException;
+
+/**
+ * Reads a JSON document a token at a time, so a large level never has to be in memory all at once.
+ *
+ * The caller pulls what it expects next: the start or end of an object or array, a member name,
+ * a string or a number, and can skip any value it is not interested in. Strings can be read into
+ * a StringBuilder the caller reuses, so reading a long array of short strings allocates nothing
+ * per element. Like org.json a trailing comma before a closing bracket is allowed.
+ *
+ * @author Jake Domb
+ */
+final class JsonPullReader implements Closeable {
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int pos = 0;
+    private int limit = 0;
+    // how many characters were read before the ones in the buffer, for error messages
+    private long offset = 0;
+    private final StringBuilder scratch = new StringBuilder();
+
+    /**
+     * Constructor
+     *
+     * @param in the document, it is buffered here so it does not need to be
+     */
+    JsonPullReader(Reader in) {
+        this.in = in;
+    }
+
+    void beginObject() throws IOException {
+        expect('{');
+    }
+
+    void endObject() throws IOException {
+        expect('}');
+    }
+
+    void beginArray() throws IOException {
+        expect('[');
+    }
+
+    void endArray() throws IOException {
+        expect(']');
+    }
+
+    /**
+     * returns true if the object or array being read has another member, skipping the comma before it
+     */
+    boolean hasNext() throws IOException {
+        int c = peek();
+        if (c == ',') {
+            pos++;
+            c = peek();
+        }
+        return c != '}' && c != ']' && c != -1;
+    }
+
+    /**
+     * returns true if the next value is a string
+     */
+    boolean peekString() throws IOException {
+        return peek() == '"';
+    }
+
+    /**
+     * reads the name of the next member of an object, and the colon after it
+     */
+    String nextName() throws IOException {
+        String name = nextString();
+        expect(':');
+        return name;
+    }
+
+    String nextString() throws IOException {
+        nextString(scratch);
+        return scratch.toString();
+    }
+
+    /**
+     * reads a string into a builder, replacing what was in it
+     */
+    void nextString(StringBuilder into) throws IOException {
+        into.setLength(0);
+        expect('"');
+        while (true) {
+            int start = pos;
+            while (pos < limit && buffer[pos] != '"' && buffer[pos] != '\\') {
+                pos++;
+            }
+            into.append(buffer, start, pos - start);
+            if (pos == limit) {
+                if (!fill()) {
+                    throw error("Unterminated string");
+                }
+                continue;
+            }
+            char c = buffer[pos++];
+            if (c == '"') {
+                return;
+            }
+            into.append(escaped());
+        }
+    }
+
+    long nextLong() throws IOException {
+        String literal = nextLiteral();
+        try {
+            return Long.parseLong(literal);
+        } catch (NumberFormatException e) {
+            try {
+                return (long) Double.parseDouble(literal);
+            } catch (NumberFormatException notANumber) {
+                throw error("Expected a number but found " + literal);
+            }
+        }
+    }
+
+    int nextInt() throws IOException {
+        return (int) nextLong();
+    }
+
+    /**
+     * skips the next value, whatever it is
+     */
+    void skipValue() throws IOException {
+        switch (peek()) {
+            case '"':
+                nextString(scratch);
+                break;
+            case '{':
+                beginObject();
+                while (hasNext()) {
+                    nextName();
+                    skipValue();
+                }
+                endObject();
+                break;
+            case '[':
+                beginArray();
+                while (hasNext()) {
+                    skipValue();
+                }
+                endArray();
+                break;
+            default:
+                nextLiteral();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * reads a number, true, false or null as written
+     */
+    private String nextLiteral() throws IOException {
+        peek();
+        scratch.setLength(0);
+        while (pos < limit || fill()) {
+            char c = buffer[pos];
+            if (c == ',' || c == ':' || c == ']' || c == '}' || Character.isWhitespace(c)) {
+                break;
+            }
+            scratch.append(c);
+            pos++;
+        }
+        if (scratch.length() == 0) {
+            throw error("Expected a value");
+        }
+        return scratch.toString();
+    }
+
+    /**
+     * reads what follows a backslash in a string
+     */
+    private char escaped() throws IOException {
+        if (pos == limit && !fill()) {
+            throw error("Unterminated escape");
+        }
+        char c = buffer[pos++];
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    if (pos == limit && !fill()) {
+                        throw error("Unterminated escape");
+                    }
+                    int digit = Character.digit(buffer[pos++], 16);
+                    if (digit < 0) {
+                        throw error("Bad unicode escape");
+                    }
+                    code = code * 16 + digit;
+                }
+                return (char) code;
+            default:
+                return c;
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        if (peek() != expected) {
+            throw error("Expected '" + expected + "'");
+        }
+        pos++;
+    }
+
+    /**
+     * skips whitespace and returns the next character without reading it, or -1 at the end
+     */
+    private int peek() throws IOException {
+        while (pos < limit || fill()) {
+            char c = buffer[pos];
+            if (!Character.isWhitespace(c)) {
+                return c;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    private boolean fill() throws IOException {
+        offset += limit;
+        pos = 0;
+        limit = Math.max(0, in.read(buffer));
+        return limit > 0;
+    }
+
+    private JSONException error(String message) {
+        return new JSONException(message + " at character " + (offset + pos));
+    }
+}
@@ -0,0 +1,134 @@
+package src;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts levels in the levels folder between the formats Persistency can read: JSON version 1
+ * with a tile String per cell, JSON version 2 with a palette and run length encoded rows, and binary.
+ *
+ * A level is read in whichever format it is in and written to levels/id.json, or levels/id.bin
+ * for binary. With --pack the levels are instead written, in the format chosen, into one LevelPack
+ * file, which the game reads levels from when they have no file of their own. With no levels given
+ * every level in the folder is converted.
+ *
+ * Usage: java src.LevelConverter [--json1 | --json2 | --binary] [--pack file.pack] [level ...]
+ *
+ * @author Jake Domb
+ */
+public class LevelConverter {
+
+    /**
+     * Command line entry point.
+     *
+     * @param args The format to write, JSON version 2 by default, the pack to write them to if any, and the
+     *             IDs of the levels to convert.
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        int version = Persistency.LATEST_VERSION;
+        boolean binary = false;
+        Path pack = null;
+        List<String> levels = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--json1":
+                    version = 1;
+                    break;
+                case "--json2":
+                    version = 2;
+                    break;
+                case "--binary":
+                    binary = true;
+                    break;
+                case "--pack":
+                    pack = Path.of(args[++i]);
+                    break;
+                default:
+                    levels.add(arg);
+            }
+        }
+        if (levels.isEmpty()) {
+            File[] files = new File("levels").listFiles((dir, name) -> name.endsWith(".json") || name.endsWith(".bin"));
+            if (files != null) {
+                for (File file : files) {
+                    String level = file.getName().substring(0, file.getName().lastIndexOf('.'));
+                    if (!levels.contains(level)) {
+                        levels.add(level);
+                    }
+                }
+            }
+        }
+
+        long packTime = System.currentTimeMillis();
+        List<LevelPack.Level> packed = new ArrayList<>();
+        for (String level : levels) {
+            long currentTime = System.currentTimeMillis();
+
+            Domain domain = new Domain();
+            Persistency persistency = new Persistency(null, domain);
+            ArrayList<ArrayList<Domain.Tile>> tiles = persistency.getLevel(level);
+            if (tiles == null) {
+                System.out.println("Could not read level " + level);
+                continue;
+            }
+
+            if (pack != null) {
+                byte[] bytes;
+                if (binary) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    BinaryLevel.write(out, persistency.getLoadedHeader(), tiles, domain.getChap().getStandingOn(),
+                            domain.getChap().inventory);
+                    bytes = out.toByteArray();
+                } else {
+                    bytes = persistency.levelToJSON(tiles, persistency.getLoadedHeader(), version)
+                            .getBytes(StandardCharsets.UTF_8);
+                }
+                packed.add(new LevelPack.Level(level, bytes, persistency.getLoadedHeader(), treasures(tiles)));
+                continue;
+            }
+
+            Path from = Persistency.levelFile(level);
+            long fromSize = Files.isRegularFile(from) ? Files.size(from) : 0;
+            Path to;
+            if (binary) {
+                to = Path.of("levels", level + ".bin");
+                BinaryLevel.write(to, persistency.getLoadedHeader(), tiles, domain.getChap().getStandingOn(),
+                        domain.getChap().inventory);
+            } else {
+                to = Path.of("levels", level + ".json");
+                Files.writeString(to, persistency.levelToJSON(tiles, persistency.getLoadedHeader(), version));
+            }
+            System.out.println("Converted " + from + " (" + fromSize + " bytes) to " + to + " (" + Files.size(to)
+                    + " bytes) in " + (System.currentTimeMillis() - currentTime) + "ms");
+        }
+
+        if (pack != null) {
+            long size = LevelPack.write(pack, packed);
+            System.out.println("Packed " + packed.size() + " levels into " + pack + " (" + size + " bytes) in "
+                    + (System.currentTimeMillis() - packTime) + "ms");
+        }
+    }
+
+    /**
+     * returns how many treasures there are on a board
+     */
+    private static int treasures(ArrayList<ArrayList<Domain.Tile>> tiles) {
+        int treasures = 0;
+        for (ArrayList<Domain.Tile> column : tiles) {
+            for (Domain.Tile tile : column) {
+                if (tile instanceof Domain.TreasureTile) {
+                    treasures++;
+                }
+            }
+        }
+        return treasures;
+    }
+}
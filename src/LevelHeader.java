@@ -0,0 +1,9 @@
+package src;
+
+/**
+ * The fields of a level file besides its tiles.
+ *
+ * @author Jake Domb
+ */
+record LevelHeader(int width, int height, int levelNumber, int totalTime, long elapsedTime) {
+}
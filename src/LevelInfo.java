@@ -0,0 +1,10 @@
+package src;
+
+/**
+ * What a level select menu shows about a level: its size, the level number it is played as, its time limit in
+ * seconds and how many treasures chap has to collect. See Persistency.getLevelInfo.
+ *
+ * @author Jake Domb
+ */
+record LevelInfo(int width, int height, int levelNumber, int totalTime, int treasures) {
+}
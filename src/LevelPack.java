@@ -0,0 +1,266 @@
+package src;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A single file holding many levels, so a campaign of thousands of levels ships as one file and any of
+ * them loads without reading the others. LevelConverter writes them, Persistency reads levels from the
+ * packs in the levels folder.
+ *
+ * The file starts with a header holding the format version, the number of levels and the length of
+ * the table of contents that follows it. For each level the table holds its ID, where its bytes are and
+ * how many there are, a CRC32 of them, whether they are gzip compressed, and the level's size, number,
+ * time limit and treasure count. The levels' bytes come after the table, each one a level file as
+ * Persistency reads it, JSON or binary, compressed on its own when that makes it smaller.
+ *
+ * Opening a pack reads the header and the table. Loading a level is then one read of its bytes through
+ * the pack's FileChannel, which is kept open. Everything is big endian.
+ *
+ * @author Jake Domb
+ */
+final class LevelPack {
+    static final String EXTENSION = ".pack";
+    static final byte[] MAGIC = { 'C', 'H', 'P', 'K' };
+    static final int VERSION = 1;
+    // the magic, version, number of levels and length of the table of contents
+    private static final int HEADER_SIZE = MAGIC.length + 2 + 4 + 4;
+    // how the bytes of a level are stored
+    private static final byte STORED = 0;
+    private static final byte GZIP = 1;
+
+    /**
+     * What the table of contents holds about a level.
+     *
+     * @param id The level's ID, what it is loaded by.
+     * @param offset Where its bytes start, from the end of the table of contents.
+     * @param length How many bytes it takes in the pack.
+     * @param checksum The CRC32 of those bytes.
+     * @param compression STORED or GZIP.
+     * @param width The width of the level.
+     * @param height The height of the level.
+     * @param levelNumber The level number it is played as.
+     * @param totalTime The time limit in seconds.
+     * @param treasures How many treasures there are to collect.
+     */
+    record Entry(String id, long offset, int length, int checksum, byte compression, int width, int height,
+            int levelNumber, int totalTime, int treasures) {
+
+        /**
+         * returns what the table of contents holds about the level as a LevelInfo
+         */
+        LevelInfo info() {
+            return new LevelInfo(width, height, levelNumber, totalTime, treasures);
+        }
+    }
+
+    /**
+     * A level to write to a pack: its ID, its file as Persistency reads it, and what goes in the table of contents.
+     */
+    record Level(String id, byte[] bytes, LevelHeader header, int treasures) {
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Map<String, Entry> entries;
+    // where the levels' bytes start
+    private final long dataStart;
+    private final long modified;
+
+    private LevelPack(Path file, FileChannel channel, Map<String, Entry> entries, long dataStart, long modified) {
+        this.file = file;
+        this.channel = channel;
+        this.entries = entries;
+        this.dataStart = dataStart;
+        this.modified = modified;
+    }
+
+    /**
+     * Opens a pack, reading its table of contents. The pack stays open until close is called.
+     *
+     * @param file The pack.
+     */
+    static LevelPack open(Path file) throws IOException {
+        long currentTime = System.currentTimeMillis();
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            read(channel, 0, header);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (header.hasRemaining() || header.get(i) != MAGIC[i]) {
+                    throw new IOException(file + " is not a level pack");
+                }
+            }
+            if ((header.getShort(MAGIC.length) & 0xFFFF) != VERSION) {
+                throw new IOException(file + " is a level pack version this game cannot read");
+            }
+            int count = header.getInt(MAGIC.length + 2);
+            int tocLength = header.getInt(MAGIC.length + 2 + 4);
+
+            ByteBuffer toc = ByteBuffer.allocate(tocLength);
+            read(channel, HEADER_SIZE, toc);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(toc.array()));
+            Map<String, Entry> entries = new LinkedHashMap<>(count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readLong(), in.readInt(), in.readInt(), in.readByte(),
+                        in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                entries.put(entry.id(), entry);
+            }
+
+            LevelPack pack = new LevelPack(file, channel, entries, HEADER_SIZE + tocLength,
+                    Files.getLastModifiedTime(file).toMillis());
+            System.out.println("Finished opening " + file + " in " + (System.currentTimeMillis() - currentTime) + "ms ("
+                    + count + " levels, " + tocLength + " bytes of contents)");
+            return pack;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * returns every level in the pack, in the order they were written
+     */
+    List<Entry> entries() {
+        return List.copyOf(entries.values());
+    }
+
+    /**
+     * returns what the table of contents holds about a level, or null if the pack does not have it
+     */
+    Entry entry(String id) {
+        return entries.get(id);
+    }
+
+    /**
+     * returns when the pack was last changed, as it was when it was opened
+     */
+    long modified() {
+        return modified;
+    }
+
+    /**
+     * Reads a level, checking it against its checksum and inflating it if it is compressed.
+     *
+     * @param id The level's ID.
+     *
+     * @return The level's file as Persistency reads it, or null if the pack does not have the level.
+     */
+    byte[] read(String id) throws IOException {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            return null;
+        }
+        ByteBuffer stored = ByteBuffer.allocate(entry.length());
+        read(channel, dataStart + entry.offset(), stored);
+        CRC32 crc = new CRC32();
+        crc.update(stored.array());
+        if (stored.hasRemaining() || (int) crc.getValue() != entry.checksum()) {
+            throw new IOException("Level " + id + " in " + file + " is damaged, it fails its check");
+        }
+        if (entry.compression() == STORED) {
+            return stored.array();
+        }
+        try (InputStream in = Compression.open(new ByteArrayInputStream(stored.array()))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * stops reading from the pack
+     */
+    void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Writes a pack, replacing it in one step if it exists. Each level is compressed at the level set
+     * with -Dchips.save.compression, and stored as it is if that does not make it smaller.
+     *
+     * @param file Where to write the pack.
+     * @param levels The levels, in the order they are written. Each ID may only appear once.
+     *
+     * @return How many bytes the pack takes.
+     */
+    static long write(Path file, List<Level> levels) throws IOException {
+        ByteArrayOutputStream tocBytes = new ByteArrayOutputStream(levels.size() * 48);
+        DataOutputStream toc = new DataOutputStream(tocBytes);
+        List<byte[]> stored = new ArrayList<>(levels.size());
+        Map<String, Level> ids = new LinkedHashMap<>();
+        long offset = 0;
+        for (Level level : levels) {
+            if (ids.put(level.id(), level) != null) {
+                throw new IllegalArgumentException("Level " + level.id() + " is in the pack twice");
+            }
+            byte[] compressed = Compression.compress(level.bytes(), Compression.LEVEL);
+            boolean gzip = compressed.length < level.bytes().length;
+            byte[] bytes = gzip ? compressed : level.bytes();
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+
+            LevelHeader header = level.header();
+            toc.writeUTF(level.id());
+            toc.writeLong(offset);
+            toc.writeInt(bytes.length);
+            toc.writeInt((int) crc.getValue());
+            toc.writeByte(gzip ? GZIP : STORED);
+            toc.writeInt(header.width());
+            toc.writeInt(header.height());
+            toc.writeInt(header.levelNumber());
+            toc.writeInt(header.totalTime());
+            toc.writeInt(level.treasures());
+            stored.add(bytes);
+            offset += bytes.length;
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + SaveTransaction.TEMP_SUFFIX);
+        long position;
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).put(MAGIC).putShort((short) VERSION)
+                    .putInt(levels.size()).putInt(tocBytes.size()).flip();
+            position = write(out, 0, header);
+            position = write(out, position, ByteBuffer.wrap(tocBytes.toByteArray()));
+            for (byte[] bytes : stored) {
+                position = write(out, position, ByteBuffer.wrap(bytes));
+            }
+            out.force(true);
+        }
+        SaveTransaction.move(temp, file);
+        return position;
+    }
+
+    /**
+     * reads from position until the buffer is full or the file ends
+     */
+    private static void read(FileChannel channel, long position, ByteBuffer into) throws IOException {
+        while (into.hasRemaining()) {
+            int read = channel.read(into, position);
+            if (read < 0) {
+                return;
+            }
+            position += read;
+        }
+    }
+
+    private static long write(FileChannel out, long position, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            position += out.write(bytes, position);
+        }
+        return position;
+    }
+}
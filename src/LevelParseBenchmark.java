@@ -0,0 +1,200 @@
+package src;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares loading a large JSON level with getLevelFromJSON, which reads the whole file into a
+ * String and parses it into an org.json tree, against getLevelFromJSONFile, which reads it a
+ * token at a time straight into the board, and against the same level saved as JSON version 2.
+ *
+ * A square level of the given size is generated into a temporary file laid out like the files in
+ * the levels folder. Each reader is warmed up on a small level, then timed once on the large one
+ * while a sampler thread records the most heap that was in use. The boards are compared
+ * tile by tile through a fingerprint so they never have to be in memory at the same time.
+ *
+ * Usage: java -Xmx4g src.LevelParseBenchmark [tilesAcross]
+ *
+ * @author Jake Domb
+ */
+public class LevelParseBenchmark {
+    private static final int WARMUP_SIZE = 200;
+    private static final int WARMUP_ROUNDS = 5;
+
+    /**
+     * Command line entry point.
+     *
+     * @param args Optionally how many tiles across the generated level is, 4000 by default.
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        int across = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+
+        Path warmup = Files.createTempFile("warmup", ".json");
+        Path level = Files.createTempFile("level", ".json");
+        Path version2 = Files.createTempFile("level", ".json");
+        try {
+            writeLevel(warmup, WARMUP_SIZE);
+            writeLevel(level, across);
+            writeVersion2(level, version2);
+            System.out.println("Generated a " + across + "x" + across + " level, " + Files.size(level) / 1024
+                    + "KB of JSON, " + Files.size(version2) / 1024 + "KB as version 2");
+
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                readTree(warmup);
+                readStreaming(warmup);
+            }
+
+            long treeFingerprint = measure("org.json tree ", () -> readTree(level));
+            long streamFingerprint = measure("streaming     ", () -> readStreaming(level));
+            long version2Fingerprint = measure("streaming v2  ", () -> readStreaming(version2));
+            System.out.println(treeFingerprint == streamFingerprint && streamFingerprint == version2Fingerprint
+                    ? "All boards are identical" : "The boards are different!");
+        } finally {
+            Files.deleteIfExists(warmup);
+            Files.deleteIfExists(level);
+            Files.deleteIfExists(version2);
+        }
+    }
+
+    private interface Reader {
+        ArrayList<ArrayList<Domain.Tile>> read() throws IOException;
+    }
+
+    private static ArrayList<ArrayList<Domain.Tile>> readTree(Path file) throws IOException {
+        Domain domain = new Domain();
+        return new Persistency(null, domain).getLevelFromJSON(Files.readString(file));
+    }
+
+    private static ArrayList<ArrayList<Domain.Tile>> readStreaming(Path file) throws IOException {
+        Domain domain = new Domain();
+        return new Persistency(null, domain).getLevelFromJSONFile(file);
+    }
+
+    private static void writeVersion2(Path from, Path to) throws IOException {
+        Domain domain = new Domain();
+        Persistency persistency = new Persistency(null, domain);
+        ArrayList<ArrayList<Domain.Tile>> board = persistency.getLevelFromJSONFile(from);
+        Files.writeString(to, persistency.levelToJSON(board, persistency.getLoadedHeader(), 2));
+    }
+
+    /**
+     * times one read, reports it with the peak heap used while it ran, and returns the board's fingerprint
+     */
+    private static long measure(String name, Reader reader) throws IOException {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+
+        AtomicLong peak = new AtomicLong(before);
+        AtomicBoolean sampling = new AtomicBoolean(true);
+        Thread sampler = new Thread(() -> {
+            while (sampling.get()) {
+                peak.accumulateAndGet(runtime.totalMemory() - runtime.freeMemory(), Math::max);
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.setDaemon(true);
+        sampler.start();
+
+        long start = System.nanoTime();
+        ArrayList<ArrayList<Domain.Tile>> board = reader.read();
+        long nanos = System.nanoTime() - start;
+
+        sampling.set(false);
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.gc();
+        long retained = runtime.totalMemory() - runtime.freeMemory() - before;
+        long cells = (long) board.size() * board.get(0).size();
+
+        System.out.println(String.format("%s %7d ms, %6.2f M cells/s, peak heap %5d MB, board %5d MB", name,
+                nanos / 1_000_000, cells * 1000.0 / nanos, (peak.get() - before) / (1024 * 1024),
+                retained / (1024 * 1024)));
+        return fingerprint(board);
+    }
+
+    private static long fingerprint(ArrayList<ArrayList<Domain.Tile>> board) {
+        long hash = board.size();
+        for (ArrayList<Domain.Tile> column : board) {
+            for (Domain.Tile tile : column) {
+                hash = hash * 31 + describe(tile).hashCode();
+            }
+        }
+        return hash;
+    }
+
+    private static String describe(Domain.Tile tile) {
+        if (tile == null) {
+            return "";
+        }
+        String description = tile.getClass().getSimpleName() + " " + tile.iconIndex;
+        if (tile instanceof Domain.InfoFeildTile) {
+            description += " " + ((Domain.InfoFeildTile) tile).info;
+        } else if (tile instanceof Domain.ChapTile) {
+            description += " " + ((Domain.ChapTile) tile).treasureTotal;
+        } else if (tile instanceof Domain.EnemyTile) {
+            description += " " + ((Domain.EnemyTile) tile).path;
+        }
+        return description;
+    }
+
+    /**
+     * writes a level with walls round the edge, chap in the corner and rooms holding every other tile inside,
+     * with its members in the same order as the files in the levels folder
+     */
+    private static void writeLevel(Path file, int across) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            out.write("{\n    \"chapStandingOn\": \"freeTile\",\n    \"inventoryArray\": [\"1\"],\n");
+            out.write("    \"totalTime\": 60,\n    \"width\": " + across + ",\n    \"levelNumber\": 1,\n");
+            out.write("    \"tileArray\": [");
+            for (int j = 0; j < across; j++) {
+                for (int i = 0; i < across; i++) {
+                    out.write(i + j == 0 ? "\n" : ",\n");
+                    out.write("        \"");
+                    out.write(tile(i, j, across));
+                    out.write('"');
+                }
+            }
+            out.write("\n    ],\n    \"height\": " + across + ",\n    \"elapsedTime\": 0\n}");
+        }
+    }
+
+    private static String tile(int i, int j, int across) {
+        if (i == 0 || j == 0 || i == across - 1 || j == across - 1) {
+            return "wallTile";
+        }
+        if (i == 1 && j == 1) {
+            return "chapTile " + (across * across / 97);
+        }
+        switch ((i * 7 + j * 13) % 197) {
+            case 0:
+                return "treasureTile";
+            case 1:
+                return "keyTile " + (i + j) % 4;
+            case 2:
+                return "lockedDoorTile " + (i + j) % 4;
+            case 3:
+                return "infoFeildTile Collect_the_chips_to_open_the_exit";
+            case 4:
+                return "enemyTile " + i + ":" + j + "," + i + ":" + (j + 1);
+            case 5:
+                return j % 2 == 0 ? "exitLockTile" : "exitTile";
+            default:
+                // rooms ten tiles across with a doorway in each wall
+                return (i % 10 == 0 || j % 10 == 0) && (i + j) % 10 != 5 ? "wallTile" : "freeTile";
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package src;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Downsampled view of a board, drawn with 1 to 4 pixels per tile.
+ *
+ * Each tile icon from the sprite atlas is reduced once to a small block of colours for every
+ * scale and kept in a palette shared by all minimaps, so drawing a cell is a copy of a few ints.
+ * A minimap attached to a Domain keeps its image between updates and only redraws the cells
+ * Domain reports as changed.
+ *
+ * @author lalatheo
+ */
+class Minimap {
+    public static final int MAX_SCALE = 4;
+
+    private static final Map<PaletteKey, int[][]> PALETTE = new ConcurrentHashMap<>();
+
+    /**
+     * identifies one icon of one kind of tile
+     */
+    private record PaletteKey(Class<?> type, int icon) {
+    }
+
+    private final Domain domain;
+    private final int maxSize;
+    private Domain.DirtyCursor dirtyCursor;
+
+    private Grid board;
+    private BufferedImage image;
+    private int[] pixels;
+    private int scale;
+
+    /**
+     * Constructor for an in game minimap that follows the board of a domain
+     *
+     * @param maxSize the largest width or height in pixels the minimap should be, the scale is picked to fit
+     */
+    Minimap(Domain domain, int maxSize) {
+        this.domain = domain;
+        this.maxSize = maxSize;
+        this.dirtyCursor = domain.newDirtyCursor();
+    }
+
+    /**
+     * brings the minimap up to date with the board and returns it
+     * only changed cells are redrawn, unless a new board was loaded
+     */
+    BufferedImage update() {
+        if (!dirtyCursor.drain(this::drawCell)) {
+            board = new Grid(domain.getBoard());
+            scale = scaleFor(board.width(), board.height(), maxSize);
+            image = createImage(board.width(), board.height(), scale);
+            pixels = pixelsOf(image);
+            drawAll(board, pixels, image.getWidth(), scale);
+        }
+        return image;
+    }
+
+    private void drawCell(int x, int y) {
+        drawTile(pixels, image.getWidth(), board.get(x, y), x, y, scale);
+    }
+
+    /**
+     * renders a whole board in one go, used for save thumbnails
+     *
+     * @param scale pixels per tile, 1 to 4
+     */
+    static BufferedImage render(List<? extends List<Domain.Tile>> tiles, int scale) {
+        Grid grid = new Grid(tiles);
+        BufferedImage result = createImage(grid.width(), grid.height(), scale);
+        drawAll(grid, pixelsOf(result), result.getWidth(), scale);
+        return result;
+    }
+
+    /**
+     * draws every cell of a board, in bands of rows on several threads for large boards
+     */
+    private static void drawAll(Grid grid, int[] data, int stride, int scale) {
+        BandCompositor.paintRows(0, grid.height(), grid.width(), row -> {
+            for (int i = 0; i < grid.width(); i++) {
+                drawTile(data, stride, grid.get(i, row), i, row, scale);
+            }
+        });
+    }
+
+    /**
+     * returns the largest scale, up to 4 pixels per tile, at which the board fits in maxSize pixels
+     */
+    static int scaleFor(int width, int height, int maxSize) {
+        int largest = Math.max(width, height);
+        return Math.max(1, Math.min(MAX_SCALE, maxSize / Math.max(1, largest)));
+    }
+
+    private static BufferedImage createImage(int width, int height, int scale) {
+        return new BufferedImage(width * scale, height * scale, BufferedImage.TYPE_INT_RGB);
+    }
+
+    private static int[] pixelsOf(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * copies the palette block for a tile into the image at cell x, y
+     */
+    private static void drawTile(int[] data, int stride, Domain.Tile tile, int x, int y, int scale) {
+        int[] block = paletteEntry(tile, scale);
+        int offset = y * scale * stride + x * scale;
+        for (int row = 0; row < scale; row++) {
+            System.arraycopy(block, row * scale, data, offset + row * stride, scale);
+        }
+    }
+
+    /**
+     * returns the scale x scale block of colours for the tile's current icon, computing it the first time
+     */
+    private static int[] paletteEntry(Domain.Tile tile, int scale) {
+        int icon = tile.iconIndex;
+        int[][] scales = PALETTE.computeIfAbsent(new PaletteKey(tile.getClass(), icon),
+                key -> downsampleAll(tile.getIcons().get(icon)));
+        return scales[scale - 1];
+    }
+
+    /**
+     * reduces an icon to 1x1, 2x2, 3x3 and 4x4 blocks by averaging the pixels each block covers
+     */
+    private static int[][] downsampleAll(BufferedImage icon) {
+        int[][] scales = new int[MAX_SCALE][];
+        for (int s = 1; s <= MAX_SCALE; s++) {
+            scales[s - 1] = downsample(icon, s);
+        }
+        return scales;
+    }
+
+    private static int[] downsample(BufferedImage icon, int scale) {
+        int width = icon.getWidth();
+        int height = icon.getHeight();
+        int[] block = new int[scale * scale];
+
+        for (int by = 0; by < scale; by++) {
+            for (int bx = 0; bx < scale; bx++) {
+                long r = 0, g = 0, b = 0, n = 0;
+                for (int y = by * height / scale; y < (by + 1) * height / scale; y++) {
+                    for (int x = bx * width / scale; x < (bx + 1) * width / scale; x++) {
+                        int rgb = icon.getRGB(x, y);
+                        r += (rgb >> 16) & 0xFF;
+                        g += (rgb >> 8) & 0xFF;
+                        b += rgb & 0xFF;
+                        n++;
+                    }
+                }
+                block[by * scale + bx] = (int) ((r / n) << 16 | (g / n) << 8 | (b / n));
+            }
+        }
+        return block;
+    }
+
+    /**
+     * the board indexed by x then y, as Domain stores it
+     */
+    private record Grid(List<? extends List<Domain.Tile>> cells) {
+        int width() {
+            return cells.size();
+        }
+
+        int height() {
+            return cells.get(0).size();
+        }
+
+        Domain.Tile get(int x, int y) {
+            return cells.get(x).get(y);
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package src;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import org.json.JSONObject;
+
+/**
+ * An append only journal of the moves made since the last checkpoint, so a game that stops without
+ * going through one of the game's exits can be resumed where it was.
+ *
+ * A move is appended to a buffer in memory, which takes a few microseconds. A background thread writes
+ * the buffer to the journal and forces it to disk every FLUSH_MILLIS, so one fsync covers every move made
+ * in that time. Every CHECKPOINT_MOVES moves, or CHECKPOINT_MILLIS after the first move since the last
+ * checkpoint, App checkpoints the game: the level and its replay are saved beside the journal under the name
+ * autosave, the level as a delta when it can be, together with the number of the last move they include. Once the
+ * checkpoint is on disk the journal is rewritten with only the moves made after it, so it never holds
+ * more than a checkpoint's worth of moves.
+ *
+ * The checkpoint file only exists while a game is running. If it is there when the game starts, the
+ * last run stopped without exiting, and App resumes from the checkpoint and replays the moves after it.
+ *
+ * After a header, each move is a record holding its number, the elapsed time, the level, the direction
+ * and a CRC32 of them. A record cut short by a crash fails its check, it and anything after it is ignored.
+ *
+ * @author Jake Domb
+ */
+final class MoveJournal {
+    // the name checkpoints are saved under, in the recorderfiles folder rather than the SaveStore
+    static final String NAME = "autosave";
+    static final Path JOURNAL = Path.of("recorderfiles", NAME + ".journal");
+    static final Path CHECKPOINT = Path.of("recorderfiles", NAME + ".checkpoint");
+    // the checkpoint's level, kept out of the levels folder so nothing takes it for one of the game's levels
+    static final Path LEVEL = Path.of("recorderfiles", NAME + ".level");
+    static final int CHECKPOINT_MOVES = 50;
+    static final long CHECKPOINT_MILLIS = 15_000;
+    private static final long FLUSH_MILLIS = 100;
+    private static final byte[] MAGIC = { 'C', 'H', 'J', 'L' };
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 2;
+    // the number, time, level and direction length before the direction, and the CRC after it
+    private static final int RECORD_OVERHEAD = 8 + 8 + 4 + 1 + 4;
+
+    /**
+     * A move read back from the journal.
+     */
+    record Entry(long seq, String direction, long timestamp, int level) {
+    }
+
+    private final Persistency persistency;
+    private final Path file;
+    private final ScheduledExecutorService writer;
+    // only used by the writer thread
+    private FileChannel channel;
+    private long syncs = 0;
+    private long syncNanos = 0;
+
+    // moves appended and not written yet, and the buffer being written, swapped while holding this
+    private ByteBuffer pending = ByteBuffer.allocate(4096);
+    private ByteBuffer writing = ByteBuffer.allocate(4096);
+    private final CRC32 crc = new CRC32();
+    private long lastSeq;
+
+    // only used by the thread the game runs on
+    private int movesSinceCheckpoint = 0;
+    private long firstMoveSinceCheckpoint = 0;
+    private long appendNanos = 0;
+
+    /**
+     * Opens the journal, keeping the moves already in it until the first checkpoint makes them unnecessary.
+     * Anything after the last whole record is cut off so new moves follow on from it.
+     *
+     * @param persistency Writes the levels and replays of checkpoints.
+     */
+    static MoveJournal open(Persistency persistency) throws IOException {
+        return open(persistency, JOURNAL);
+    }
+
+    /**
+     * Opens a journal kept in another file, see open(Persistency).
+     *
+     * @param persistency Writes the levels and replays of checkpoints.
+     * @param file The journal.
+     */
+    static MoveJournal open(Persistency persistency, Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        List<Entry> entries = new ArrayList<>();
+        long valid = scan(file, entries);
+        long lastSeq = entries.isEmpty() ? 0 : entries.get(entries.size() - 1).seq();
+
+        FileChannel channel;
+        if (valid < HEADER_SIZE) {
+            SaveTransaction.writeFile(file, header());
+            channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } else {
+            channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            channel.truncate(valid);
+        }
+        return new MoveJournal(persistency, file, channel, lastSeq);
+    }
+
+    private MoveJournal(Persistency persistency, Path file, FileChannel channel, long lastSeq) {
+        this.persistency = persistency;
+        this.file = file;
+        this.channel = channel;
+        this.lastSeq = lastSeq;
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "move-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::sync, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records a move, it is on disk within FLUSH_MILLIS.
+     *
+     * @param direction The direction chap moved.
+     * @param timestamp The elapsed time when the move was made.
+     * @param level The level it was made on.
+     */
+    void append(String direction, long timestamp, int level) {
+        long start = System.nanoTime();
+        byte[] directionBytes = direction.getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            if (pending.remaining() < RECORD_OVERHEAD + directionBytes.length) {
+                ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2 + directionBytes.length);
+                pending = larger.put(pending.flip());
+            }
+            encode(pending, crc, ++lastSeq, directionBytes, timestamp, level);
+        }
+        if (movesSinceCheckpoint++ == 0) {
+            firstMoveSinceCheckpoint = System.currentTimeMillis();
+        }
+        appendNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * returns true once enough moves have been made, or enough time has passed since the first of them, to checkpoint
+     */
+    boolean checkpointDue() {
+        return movesSinceCheckpoint >= CHECKPOINT_MOVES
+                || (movesSinceCheckpoint > 0 && System.currentTimeMillis() - firstMoveSinceCheckpoint >= CHECKPOINT_MILLIS);
+    }
+
+    /**
+     * Writes a checkpoint in the background, then drops the moves it includes from the journal.
+     * The save is built on the writer thread too, so the thread the game runs on only has to take a copy
+     * of what the save is made from.
+     *
+     * @param save Builds the game as it was after the last move appended, its name is ignored and NAME used.
+     */
+    void checkpoint(Supplier<SavedGame> save) {
+        long seq;
+        synchronized (this) {
+            seq = lastSeq;
+        }
+        String appendReport = movesSinceCheckpoint == 0 ? "no moves"
+                : movesSinceCheckpoint + " moves averaging "
+                        + String.format("%.1f", appendNanos / 1000.0 / movesSinceCheckpoint) + "us to append";
+        movesSinceCheckpoint = 0;
+        appendNanos = 0;
+        writer.execute(() -> writeCheckpoint(save, seq, appendReport));
+    }
+
+    /**
+     * Stops journaling once everything appended is on disk, leaving the journal and checkpoint to resume from.
+     */
+    void close() {
+        writer.execute(this::sync);
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops journaling and deletes the journal and the checkpoint, for when the game exits in a way it can
+     * be started again from without them.
+     */
+    void discard() {
+        close();
+        try {
+            // without the checkpoint file nothing is resumed, so it goes first
+            Files.deleteIfExists(CHECKPOINT);
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(LEVEL);
+            Files.deleteIfExists(Path.of("recorderfiles", NAME + ".json"));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * returns true if a game was running when the game last stopped, and can be resumed
+     */
+    static boolean hasCheckpoint() {
+        return Files.isRegularFile(CHECKPOINT);
+    }
+
+    /**
+     * returns the number of the last move the checkpoint includes
+     */
+    static long checkpointSeq() throws IOException {
+        return new JSONObject(Files.readString(CHECKPOINT)).getLong("seq");
+    }
+
+    /**
+     * Reads the moves in a journal, stopping at the first record that is not whole.
+     *
+     * @param file The journal.
+     *
+     * @return The moves, oldest first, none if there is no journal.
+     */
+    static List<Entry> readEntries(Path file) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        scan(file, entries);
+        return entries;
+    }
+
+    /**
+     * reads the whole records in a journal into entries and returns how many bytes they and the header take
+     */
+    private static long scan(Path file, List<Entry> entries) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return 0;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (in.remaining() < HEADER_SIZE || !hasMagic(in)) {
+            return 0;
+        }
+        in.position(MAGIC.length);
+        if ((in.getShort() & 0xFFFF) != VERSION) {
+            return 0;
+        }
+
+        CRC32 check = new CRC32();
+        while (in.remaining() >= RECORD_OVERHEAD) {
+            int start = in.position();
+            long seq = in.getLong();
+            long timestamp = in.getLong();
+            int level = in.getInt();
+            int length = in.get() & 0xFF;
+            if (in.remaining() < length + 4) {
+                in.position(start);
+                break;
+            }
+            byte[] direction = new byte[length];
+            in.get(direction);
+            check.reset();
+            check.update(in.array(), start, in.position() - start);
+            if (in.getInt() != (int) check.getValue()) {
+                in.position(start);
+                break;
+            }
+            entries.add(new Entry(seq, new String(direction, StandardCharsets.UTF_8), timestamp, level));
+        }
+        return in.position();
+    }
+
+    private static boolean hasMagic(ByteBuffer in) {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (in.get(i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] header() {
+        return ByteBuffer.allocate(HEADER_SIZE).put(MAGIC).putShort((short) VERSION).array();
+    }
+
+    private static void encode(ByteBuffer out, CRC32 crc, long seq, byte[] direction, long timestamp, int level) {
+        int start = out.position();
+        out.putLong(seq).putLong(timestamp).putInt(level).put((byte) direction.length).put(direction);
+        crc.reset();
+        crc.update(out.array(), start, out.position() - start);
+        out.putInt((int) crc.getValue());
+    }
+
+    /**
+     * writes the moves appended since the last sync and forces them to disk, run on the writer thread
+     */
+    private void sync() {
+        synchronized (this) {
+            ByteBuffer full = pending;
+            pending = writing;
+            writing = full;
+        }
+        writing.flip();
+        if (!writing.hasRemaining()) {
+            writing.clear();
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            while (writing.hasRemaining()) {
+                channel.write(writing);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        writing.clear();
+        syncs++;
+        syncNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * saves a checkpoint and compacts the journal, run on the writer thread
+     */
+    private void writeCheckpoint(Supplier<SavedGame> snapshot, long seq, String appendReport) {
+        long currentTime = System.currentTimeMillis();
+        SaveTransaction transaction = new SaveTransaction();
+        try {
+            SavedGame save = snapshot.get();
+            persistency.stageSave(transaction, new SavedGame(NAME, save.level(), save.chipsLeft(), save.playTime(),
+                    save.replayJSON(), save.levelJSON(), save.thumbnail()));
+            transaction.write(CHECKPOINT, new JSONObject().put("seq", seq).toString());
+            transaction.commit();
+        } catch (IOException | RuntimeException e) {
+            // the journal keeps every move, the next checkpoint tries again
+            System.out.println("Checkpoint fail");
+            e.printStackTrace();
+            transaction.abort();
+            return;
+        }
+
+        int kept;
+        try {
+            sync();
+            channel.close();
+            try {
+                kept = compact(file, seq);
+            } finally {
+                // moves go on being appended to whichever journal is there
+                channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        System.out.println("Finished checkpoint in " + (System.currentTimeMillis() - currentTime) + "ms ("
+                + transaction.getBytes() + " bytes, " + appendReport + ", "
+                + (syncs == 0 ? "no syncs" : syncs + " syncs averaging " + String.format("%.2f", syncNanos / 1e6 / syncs) + "ms")
+                + ", " + kept + " moves kept in the journal)");
+        syncs = 0;
+        syncNanos = 0;
+    }
+
+    /**
+     * Rewrites a journal without the moves up to seq, which a checkpoint now includes.
+     * The journal is replaced in one step, so a crash part way leaves it as it was.
+     *
+     * @param file The journal, which must not be open for writing.
+     * @param seq The number of the last move the checkpoint includes.
+     *
+     * @return How many moves are left in the journal.
+     */
+    static int compact(Path file, long seq) throws IOException {
+        List<Entry> entries = readEntries(file);
+        ByteBuffer kept = ByteBuffer.allocate(HEADER_SIZE + entries.stream()
+                .mapToInt(e -> RECORD_OVERHEAD + e.direction().getBytes(StandardCharsets.UTF_8).length).sum());
+        kept.put(header());
+        CRC32 check = new CRC32();
+        int count = 0;
+        for (Entry entry : entries) {
+            if (entry.seq() > seq) {
+                encode(kept, check, entry.seq(), entry.direction().getBytes(StandardCharsets.UTF_8), entry.timestamp(),
+                        entry.level());
+                count++;
+            }
+        }
+        SaveTransaction.writeFile(file, Arrays.copyOf(kept.array(), kept.position()));
+        return count;
+    }
+}
@@ -0,0 +1,220 @@
+package src;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Streams background music from disk, looping the current track until it is stopped or changed.
+ *
+ * Only a small chunk of the track is in memory at a time. A background thread decodes the file a
+ * chunk at a time into a SourceDataLine whose buffer holds about half a second of sound, so the
+ * thread always keeps the line ahead of what is being heard. When the track ends the file is
+ * opened again and written straight after the last chunk without draining the line, so the loop
+ * has no gap. Changing track closes the old file, only the track that is playing is ever open.
+ *
+ * @author lalatheo
+ */
+public class MusicPlayer implements Runnable {
+    // how much sound the line holds, and how much is decoded at a time
+    private static final int LINE_MILLIS = 500;
+    private static final int CHUNK_BYTES = 8192;
+
+    private static MusicPlayer shared;
+
+    private final byte[] chunk = new byte[CHUNK_BYTES];
+
+    // the track that should be playing, null for none, changed by any thread and picked up by the music thread
+    private volatile String track;
+    private volatile boolean running = false;
+    private Thread thread;
+
+    // only touched by the music thread
+    private String playing;
+    private boolean emptyLoop;
+    private AudioInputStream stream;
+    private SourceDataLine line;
+
+    private MusicPlayer() {
+    }
+
+    /**
+     * returns the player the game's background music is streamed through
+     */
+    public static synchronized MusicPlayer shared() {
+        if (shared == null) {
+            shared = new MusicPlayer();
+            Runtime.getRuntime().addShutdownHook(new Thread(shared::close, "close-music"));
+        }
+        return shared;
+    }
+
+    /**
+     * starts looping a track from the audio folder, replacing the one playing, returns straight away
+     * asking for the track that is already playing carries on playing it
+     *
+     * @param fileName the name of the wav file
+     */
+    public synchronized void play(String fileName) {
+        track = fileName;
+        if (thread == null) {
+            running = true;
+            thread = new Thread(this, "music-player");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * stops the music, returns straight away
+     */
+    public synchronized void stop() {
+        track = null;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * returns the track that should be playing, or null when the music is stopped
+     */
+    public String getTrack() {
+        return track;
+    }
+
+    /**
+     * stops the music thread and closes the file and the line
+     */
+    public void close() {
+        running = false;
+        Thread current;
+        synchronized (this) {
+            current = thread;
+        }
+        if (current != null) {
+            LockSupport.unpark(current);
+            try {
+                current.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                String wanted = track;
+                if (wanted == null) {
+                    silence();
+                    LockSupport.park(this);
+                    continue;
+                }
+                if (!wanted.equals(playing) && !open(wanted)) {
+                    giveUp(wanted);
+                    continue;
+                }
+                streamChunk();
+            }
+        } finally {
+            silence();
+            if (line != null) {
+                line.close();
+            }
+        }
+    }
+
+    /**
+     * decodes the next chunk of the track into the line, opening the file again at the end to loop it
+     */
+    private void streamChunk() {
+        try {
+            int read = stream.read(chunk, 0, chunk.length - chunk.length % stream.getFormat().getFrameSize());
+            if (read <= 0) {
+                if (emptyLoop) {
+                    throw new IOException("track is empty");
+                }
+                closeStream();
+                stream = Assets.openSound(playing);
+                emptyLoop = true;
+                return;
+            }
+            emptyLoop = false;
+            // blocks until the line has room, which paces the thread to the sound card
+            line.write(chunk, 0, read);
+        } catch (IOException | UnsupportedAudioFileException e) {
+            System.out.println("Music " + playing + " stopped: " + e.getMessage());
+            String failed = playing;
+            silence();
+            giveUp(failed);
+        }
+    }
+
+    /**
+     * a track that cannot be played is given up on until another one is asked for
+     */
+    private synchronized void giveUp(String fileName) {
+        if (fileName.equals(track)) {
+            track = null;
+        }
+    }
+
+    /**
+     * opens a track and a line that can play it, the line is kept when the format is the same
+     *
+     * @return false if the track could not be opened
+     */
+    private boolean open(String fileName) {
+        silence();
+        try {
+            stream = Assets.openSound(fileName);
+            AudioFormat format = stream.getFormat();
+            if (line == null || !line.getFormat().matches(format)) {
+                if (line != null) {
+                    line.close();
+                }
+                line = AudioSystem.getSourceDataLine(format);
+                int frames = (int) (format.getFrameRate() * LINE_MILLIS / 1000);
+                line.open(format, frames * format.getFrameSize());
+            }
+            line.start();
+            playing = fileName;
+            emptyLoop = true;
+            return true;
+        } catch (IOException | UnsupportedAudioFileException | LineUnavailableException | IllegalArgumentException e) {
+            System.out.println("Music " + fileName + " not played: " + e.getMessage());
+            closeStream();
+            return false;
+        }
+    }
+
+    /**
+     * stops what is being heard and closes the track
+     */
+    private void silence() {
+        if (line != null) {
+            line.stop();
+            line.flush();
+        }
+        closeStream();
+        playing = null;
+    }
+
+    private void closeStream() {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            stream = null;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package src;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Toggleable performance overlay, drawn by Renderer on top of the board.
+ *
+ * Shows FPS, p50/p99 frame time, the time domain spent on its last tick, the time spent
+ * handling domain commands and the bytes allocated while rendering each frame, along with
+ * a rolling graph of the last few seconds of frame times.
+ *
+ * All buffers and text glyphs are created up front. Each frame the overlay is written
+ * straight into the pixels of one image which is then drawn in a single call, so recording
+ * and drawing the overlay does not allocate anything per frame.
+ *
+ * @author lalatheo
+ */
+public class PerformanceHud {
+    // number of frames kept, about 4 seconds at 60 FPS
+    private static final int HISTORY = 240;
+    // frame time histogram used for the percentiles, 0.25 ms per bucket
+    private static final long BUCKET_NANOS = 250_000L;
+    private static final int BUCKETS = 256;
+
+    private static final String GLYPHS = "0123456789.-";
+    private static final String[] LABELS = { "FPS", "FRAME p50", "p99", "ms", "TICK", "CMD", "ALLOC", "B/frame" };
+    private static final int LABEL_FPS = 0;
+    private static final int LABEL_FRAME = 1;
+    private static final int LABEL_P99 = 2;
+    private static final int LABEL_MS = 3;
+    private static final int LABEL_TICK = 4;
+    private static final int LABEL_CMD = 5;
+    private static final int LABEL_ALLOC = 6;
+    private static final int LABEL_BYTES = 7;
+
+    private static final int PADDING = 4;
+    private static final int GRAPH_HEIGHT = 40;
+    // the graph is scaled so this frame time reaches the top
+    private static final long GRAPH_MAX_NANOS = 33_333_333L;
+    private static final long BUDGET_NANOS = 16_666_667L;
+
+    // ARGB colours, written straight into the overlay pixels
+    private static final int BACKGROUND = 0xAA000000;
+    private static final int TEXT = 0xFF00FF00;
+    private static final int BAR = 0xFF50C850;
+    private static final int SLOW_BAR = 0xFFE64632;
+    private static final int BUDGET_LINE = 0x78FFFFFF;
+
+    private volatile boolean visible = false;
+
+    // per frame history, written only by the thread that renders
+    private final long[] frameTimes = new long[HISTORY];
+    private final long[] frameIntervals = new long[HISTORY];
+    private final int[] histogram = new int[BUCKETS];
+    private int head = 0;
+    private int count = 0;
+    private long intervalSum = 0;
+
+    private long frameStart = 0;
+    private long lastFrameStart = 0;
+    private long allocStart = 0;
+    private long lastAllocated = 0;
+
+    // written by the game timer, read when drawing
+    private volatile long lastTickNanos = 0;
+    private volatile long lastDispatchNanos = 0;
+
+    private final com.sun.management.ThreadMXBean threadBean;
+
+    // the overlay is composed into this image's pixels, then drawn with a single drawImage
+    private final BufferedImage overlay;
+    private final int[] pixels;
+    private final int overlayWidth;
+    private final int overlayHeight;
+
+    // pre rendered text, one int per pixel, non zero where the glyph is set
+    private final int[] glyphPixels;
+    private final int[][] labelPixels;
+    private final int charWidth;
+    private final int lineHeight;
+    private final int ascent;
+    private final char[] numberBuffer = new char[24];
+
+    /**
+     * Constructor, renders the glyphs and labels the overlay uses and enables allocation tracking if available
+     */
+    public PerformanceHud() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean sunBean && sunBean.isThreadAllocatedMemorySupported()) {
+            sunBean.setThreadAllocatedMemoryEnabled(true);
+            threadBean = sunBean;
+        } else {
+            threadBean = null;
+        }
+
+        Font font = new Font("Monospaced", Font.PLAIN, 11);
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D scratchGraphics = scratch.createGraphics();
+        FontMetrics metrics = scratchGraphics.getFontMetrics(font);
+        scratchGraphics.dispose();
+
+        charWidth = metrics.charWidth('0');
+        lineHeight = metrics.getHeight();
+        ascent = metrics.getAscent();
+
+        glyphPixels = renderText(GLYPHS, font);
+        labelPixels = new int[LABELS.length][];
+        for (int i = 0; i < LABELS.length; i++) {
+            labelPixels[i] = renderText(LABELS[i], font);
+        }
+
+        overlayWidth = HISTORY + PADDING * 2;
+        overlayHeight = lineHeight * 4 + GRAPH_HEIGHT + PADDING * 3;
+        overlay = new BufferedImage(overlayWidth, overlayHeight, BufferedImage.TYPE_INT_ARGB);
+        pixels = ((DataBufferInt) overlay.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * shows or hides the overlay
+     */
+    public void toggle() {
+        visible = !visible;
+    }
+
+    public boolean isVisible() {
+        return visible;
+    }
+
+    /**
+     * call at the start of rendering a frame, on the thread that renders it
+     */
+    public void beginFrame() {
+        frameStart = System.nanoTime();
+        if (threadBean != null) {
+            allocStart = threadBean.getCurrentThreadAllocatedBytes();
+        }
+    }
+
+    /**
+     * call once the frame is rendered, on the same thread as beginFrame
+     */
+    public void endFrame() {
+        long now = System.nanoTime();
+        if (threadBean != null) {
+            lastAllocated = threadBean.getCurrentThreadAllocatedBytes() - allocStart;
+        }
+
+        long frameTime = now - frameStart;
+        long interval = lastFrameStart == 0 ? 0 : frameStart - lastFrameStart;
+        lastFrameStart = frameStart;
+
+        if (count == HISTORY) {
+            // forget the oldest frame
+            histogram[bucketOf(frameTimes[head])]--;
+            intervalSum -= frameIntervals[head];
+        } else {
+            count++;
+        }
+        frameTimes[head] = frameTime;
+        frameIntervals[head] = interval;
+        histogram[bucketOf(frameTime)]++;
+        intervalSum += interval;
+        head = (head + 1) % HISTORY;
+    }
+
+    /**
+     * records how long the last game tick took in domain
+     */
+    public void recordTick(long nanos) {
+        lastTickNanos = nanos;
+    }
+
+    /**
+     * records how long fetching and handling domain commands took
+     */
+    public void recordDispatch(long nanos) {
+        lastDispatchNanos = nanos;
+    }
+
+    /**
+     * draws the overlay with its top left corner at x, y
+     */
+    public void draw(Graphics g, int x, int y) {
+        if (!visible) {
+            return;
+        }
+
+        Arrays.fill(pixels, BACKGROUND);
+
+        int textX = PADDING;
+        int lineY = PADDING;
+
+        // FPS 59.9
+        int cx = drawLabel(LABEL_FPS, textX, lineY);
+        long fpsTenths = intervalSum == 0 ? 0 : (count * 10_000_000_000L) / intervalSum;
+        drawNumber(fpsTenths, 1, cx + charWidth, lineY);
+        lineY += lineHeight;
+
+        // FRAME p50 1.25 p99 3.50 ms
+        cx = drawLabel(LABEL_FRAME, textX, lineY);
+        cx = drawNumber(percentile(50) / 10_000L, 2, cx + charWidth, lineY);
+        cx = drawLabel(LABEL_P99, cx + charWidth, lineY);
+        cx = drawNumber(percentile(99) / 10_000L, 2, cx + charWidth, lineY);
+        drawLabel(LABEL_MS, cx + charWidth, lineY);
+        lineY += lineHeight;
+
+        // TICK 0.05 CMD 0.01 ms
+        cx = drawLabel(LABEL_TICK, textX, lineY);
+        cx = drawNumber(lastTickNanos / 10_000L, 2, cx + charWidth, lineY);
+        cx = drawLabel(LABEL_CMD, cx + charWidth, lineY);
+        cx = drawNumber(lastDispatchNanos / 10_000L, 2, cx + charWidth, lineY);
+        drawLabel(LABEL_MS, cx + charWidth, lineY);
+        lineY += lineHeight;
+
+        // ALLOC 1234 B/frame
+        cx = drawLabel(LABEL_ALLOC, textX, lineY);
+        cx = drawNumber(threadBean == null ? -1 : lastAllocated, 0, cx + charWidth, lineY);
+        drawLabel(LABEL_BYTES, cx + charWidth, lineY);
+        lineY += lineHeight + PADDING;
+
+        drawGraph(textX, lineY);
+
+        g.drawImage(overlay, x, y, null);
+    }
+
+    /**
+     * draws the frame times of the last few seconds as one bar per frame, oldest on the left
+     */
+    private void drawGraph(int x, int y) {
+        int bottom = y + GRAPH_HEIGHT;
+        int start = count == HISTORY ? head : 0;
+
+        for (int i = 0; i < count; i++) {
+            long frameTime = frameTimes[(start + i) % HISTORY];
+            int barHeight = (int) Math.min(GRAPH_HEIGHT, frameTime * GRAPH_HEIGHT / GRAPH_MAX_NANOS);
+            int colour = frameTime > BUDGET_NANOS ? SLOW_BAR : BAR;
+            for (int row = bottom - barHeight; row < bottom; row++) {
+                pixels[row * overlayWidth + x + i] = colour;
+            }
+        }
+
+        int budgetRow = bottom - (int) (BUDGET_NANOS * GRAPH_HEIGHT / GRAPH_MAX_NANOS);
+        Arrays.fill(pixels, budgetRow * overlayWidth + x, budgetRow * overlayWidth + x + HISTORY, BUDGET_LINE);
+    }
+
+    /**
+     * returns the frame time, in nanoseconds, that the given percentage of recent frames were at or under
+     */
+    private long percentile(int percent) {
+        if (count == 0) {
+            return 0;
+        }
+        int target = (count * percent + 99) / 100;
+        int seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += histogram[i];
+            if (seen >= target) {
+                return (i + 1) * BUCKET_NANOS;
+            }
+        }
+        return BUCKETS * BUCKET_NANOS;
+    }
+
+    private int bucketOf(long nanos) {
+        return (int) Math.min(BUCKETS - 1, nanos / BUCKET_NANOS);
+    }
+
+    /**
+     * copies a pre rendered label into the overlay and returns the x position just after it
+     */
+    private int drawLabel(int label, int x, int y) {
+        int[] glyphs = labelPixels[label];
+        int width = glyphs.length / lineHeight;
+        copyText(glyphs, width, 0, width, x, y);
+        return x + width;
+    }
+
+    /**
+     * copies a fixed point number into the overlay from the glyph sheet and returns the x position just after it
+     *
+     * @param value the number scaled by 10^decimals, for example 125 with 2 decimals draws 1.25
+     */
+    private int drawNumber(long value, int decimals, int x, int y) {
+        int length = formatFixed(value, decimals, numberBuffer);
+        int sheetWidth = glyphPixels.length / lineHeight;
+
+        for (int i = 0; i < length; i++) {
+            int glyph = GLYPHS.indexOf(numberBuffer[i]);
+            copyText(glyphPixels, sheetWidth, glyph * charWidth, charWidth, x + i * charWidth, y);
+        }
+        return x + length * charWidth;
+    }
+
+    /**
+     * copies the set pixels of a column range of pre rendered text into the overlay, clipped to its bounds
+     */
+    private void copyText(int[] source, int sourceWidth, int sourceX, int width, int x, int y) {
+        int copyWidth = Math.min(width, overlayWidth - x);
+        for (int row = 0; row < lineHeight && y + row < overlayHeight; row++) {
+            int from = row * sourceWidth + sourceX;
+            int to = (y + row) * overlayWidth + x;
+            for (int col = 0; col < copyWidth; col++) {
+                if (source[from + col] != 0) {
+                    pixels[to + col] = TEXT;
+                }
+            }
+        }
+    }
+
+    /**
+     * writes a scaled number into the buffer as text, without allocating
+     *
+     * @return how many characters were written
+     */
+    static int formatFixed(long value, int decimals, char[] buffer) {
+        boolean negative = value < 0;
+        long remaining = Math.abs(value);
+
+        // write the digits backwards from the end of the buffer, then move them to the front
+        int pos = buffer.length;
+        int digits = 0;
+        do {
+            if (digits == decimals && decimals > 0) {
+                buffer[--pos] = '.';
+            }
+            buffer[--pos] = (char) ('0' + (remaining % 10));
+            remaining /= 10;
+            digits++;
+        } while (remaining > 0 || digits <= decimals);
+
+        if (negative) {
+            buffer[--pos] = '-';
+        }
+
+        int length = buffer.length - pos;
+        System.arraycopy(buffer, pos, buffer, 0, length);
+        return length;
+    }
+
+    /**
+     * renders a string once and keeps its pixels, so it can be copied each frame without text layout
+     */
+    private int[] renderText(String text, Font font) {
+        int width = Math.max(1, text.length() * charWidth);
+        BufferedImage image = new BufferedImage(width, lineHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setFont(font);
+        graphics.setColor(Color.WHITE);
+        for (int i = 0; i < text.length(); i++) {
+            // draw each character in its own cell so glyph lookups are a simple multiply
+            graphics.drawString(text.substring(i, i + 1), i * charWidth, ascent);
+        }
+        graphics.dispose();
+        return image.getRGB(0, 0, width, lineHeight, null, 0, width);
+    }
+}
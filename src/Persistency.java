@@ -1,19 +1,35 @@
 package src;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+import javax.imageio.ImageIO;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
@@ -24,10 +40,30 @@ import org.json.JSONObject;
 class Persistency {
     private final App app;
     private final Domain domain;
+    // the newest version of the JSON level format, and the one levels are saved in
+    static final int LATEST_VERSION = 2;
+    private static final int SAVE_VERSION = Integer.getInteger("chips.level.version", LATEST_VERSION);
+
     private final Map<String, Integer> tileToIntMap;
+    // the tile Strings of the level being loaded and what they decode to
+    private final DescriptorCache descriptors = new DescriptorCache();
+    private LevelHeader loadedHeader;
+
+    // the levels saves have been made from or loaded onto, by level ID
+    private final Map<String, BaseLevel> baseLevels = new HashMap<>();
+    // the level the board loaded last was built from, or null if it was not built from one
+    private String loadedBase;
+    // the cells of the base level a loaded save had changed, indexed like the tileArray
+    private Set<Integer> loadedDeltaCells = Set.of();
+
+    // the store games are saved in, opened the first time it is needed
+    private static SaveStore saveStore;
+    // the level pack each level without a file of its own is in, by level ID, made the first time one is looked for
+    private static Map<String, LevelPack> packedLevels;
 
     /**
      * Constructor for Persistency.
+     * The app may be null when levels are loaded without a game window, for example when exporting a replay.
      */
     public Persistency(App app, Domain domain) {
         this.app = app;
@@ -37,7 +73,12 @@ class Persistency {
     }
 
     /**
-     * Method for loading a level from a file.
+     * Method for loading a level from a file, or a saved game from the SaveStore.
+     * A save in the store is used before a file of the same name, saves made before there was a store are files.
+     * A level with no file of its own is read from the level pack in the levels folder that has it, see LevelPack.
+     * The file may be JSON or binary, which it is is told from the first bytes of the file.
+     * JSON files are read a token at a time, see getLevelFromJSONFile.
+     * A level the game ships with is remembered, so a game saved while playing it only has to store what changed.
      *
      * @param level The ID of the level to load.
      *
@@ -46,20 +87,201 @@ class Persistency {
     public ArrayList<ArrayList<Domain.Tile>> getLevel(String level) {
         long currentTime = System.currentTimeMillis();
         System.out.println("Loading level: " + level);
-        String lvlString = new String();
+        ArrayList<ArrayList<Domain.Tile>> loadedLevel;
 
         try {
-            lvlString = Files.readString(Path.of("levels" + File.separator + level + ".json"));
+            loadedBase = null;
+            loadedDeltaCells = Set.of();
+            SaveStore.StoredSave save = findSave(level);
+            if (save != null) {
+                loadedLevel = readLevelJSON(() -> Compression.reader(save.level()));
+            } else {
+                loadedLevel = readLevel(level);
+                if (loadedBase == null && level.equals("" + loadedHeader.levelNumber())) {
+                    rememberBase(level, levelModified(level), loadedLevel);
+                    loadedBase = level;
+                }
+            }
         } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
 
-        var loadedLevel = getLevelFromJSON(lvlString);
         System.out.println("Finished loading level in " + (System.currentTimeMillis() - currentTime) + "ms");
         return loadedLevel;
     }
 
+    /**
+     * reads a level from its own file, or from the level pack that has it if it has no file
+     */
+    private ArrayList<ArrayList<Domain.Tile>> readLevel(String level) throws IOException {
+        Path file = levelFile(level);
+        LevelPack pack = Files.isRegularFile(file) ? null : levelPack(level);
+        if (pack == null) {
+            return readLevelFile(file);
+        }
+        byte[] bytes = pack.read(level);
+        if (BinaryLevel.isBinary(ByteBuffer.wrap(bytes))) {
+            return getLevelFromBinary(ByteBuffer.wrap(bytes));
+        }
+        return readLevelJSON(() -> Compression.reader(bytes));
+    }
+
+    /**
+     * returns when a level was last changed, the time of its own file or of the level pack that has it
+     */
+    private static long levelModified(String level) throws IOException {
+        Path file = levelFile(level);
+        LevelPack pack = Files.isRegularFile(file) ? null : levelPack(level);
+        return pack == null ? Files.getLastModifiedTime(file).toMillis() : pack.modified();
+    }
+
+    /**
+     * Finds the level pack a level is in. The packs in the levels folder are opened the first time this is
+     * called and their tables of contents read, after that finding a level is a map lookup. When more than
+     * one pack has a level, the one whose name comes first is used.
+     *
+     * @param level The ID of the level.
+     *
+     * @return The pack, or null if no pack has the level.
+     */
+    static synchronized LevelPack levelPack(String level) throws IOException {
+        if (packedLevels == null) {
+            Map<String, LevelPack> packed = new HashMap<>();
+            File[] packs = new File("levels").listFiles((dir, name) -> name.endsWith(LevelPack.EXTENSION));
+            if (packs != null) {
+                Arrays.sort(packs);
+                for (File file : packs) {
+                    LevelPack pack = LevelPack.open(file.toPath());
+                    for (LevelPack.Entry entry : pack.entries()) {
+                        packed.putIfAbsent(entry.id(), pack);
+                    }
+                }
+            }
+            packedLevels = packed;
+        }
+        return packedLevels.get(level);
+    }
+
+    /**
+     * Method for finding out about a level without loading it, for level select menus and for checking levels.
+     * The level is looked for where getLevel looks for it, but none of its tiles are built and neither the app
+     * nor the domain is changed. A level in a level pack is answered from the pack's table of contents, a binary
+     * file has its cells stepped over, and a JSON file is read only until the fields have been found, which for
+     * files the game writes is before any of the tiles. The treasure count is chap's, how many there are left.
+     *
+     * @param level The ID of the level or save.
+     *
+     * @return The level's size, level number, time limit and treasure count, or null if it could not be read.
+     */
+    public static LevelInfo getLevelInfo(String level) {
+        try {
+            SaveStore.StoredSave save = findSave(level);
+            if (save != null) {
+                return readLevelInfoJSON(Compression.reader(save.level()));
+            }
+            Path file = levelFile(level);
+            LevelPack pack = Files.isRegularFile(file) ? null : levelPack(level);
+            return pack == null ? readLevelInfo(file) : pack.entry(level).info();
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Reads the size, level number, time limit and treasure count of a level file, JSON or binary, plain or
+     * compressed, without building its tiles. See getLevelInfo.
+     *
+     * @param file The level file.
+     *
+     * @return What a menu needs to know about the level.
+     */
+    static LevelInfo readLevelInfo(Path file) throws IOException {
+        if (BinaryLevel.isBinary(file)) {
+            return BinaryLevel.readInfo(BinaryLevel.map(file));
+        }
+        return readLevelInfoJSON(Compression.reader(file));
+    }
+
+    /**
+     * Reads a JSON level a token at a time until the size, level number, time limit and chap's treasure count
+     * have all been found. A save that only stores its changes takes the treasure count from its level when chap
+     * is not among them.
+     */
+    private static LevelInfo readLevelInfoJSON(Reader text) throws IOException {
+        int wid = -1;
+        int hit = -1;
+        int levelNumber = -1;
+        int totalTime = -1;
+        int treasures = -1;
+        String base = null;
+
+        try (JsonPullReader in = new JsonPullReader(text)) {
+            in.beginObject();
+            while ((wid < 0 || hit < 0 || levelNumber < 0 || totalTime < 0 || treasures < 0) && in.hasNext()) {
+                switch (in.nextName()) {
+                    case "width":
+                        wid = in.nextInt();
+                        break;
+                    case "height":
+                        hit = in.nextInt();
+                        break;
+                    case "version":
+                        checkVersion(in.nextInt());
+                        break;
+                    case "levelNumber":
+                        levelNumber = in.nextInt();
+                        break;
+                    case "totalTime":
+                        totalTime = in.nextInt();
+                        break;
+                    case "base":
+                        base = in.nextString();
+                        break;
+                    case "tileArray":
+                    case "palette":
+                    case "changes":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            String tile = in.nextString();
+                            int chap = tile.indexOf("chapTile ");
+                            if (chap == -1) {
+                                continue;
+                            }
+                            treasures = Integer.parseInt(tile.substring(chap + "chapTile ".length()).strip());
+                            if (wid >= 0 && hit >= 0 && levelNumber >= 0 && totalTime >= 0) {
+                                // the rest of the file is not needed
+                                return new LevelInfo(wid, hit, levelNumber, totalTime, treasures);
+                            }
+                        }
+                        in.endArray();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+        }
+
+        if (treasures < 0 && base != null) {
+            LevelInfo baseInfo = getLevelInfo(base);
+            treasures = baseInfo == null ? -1 : baseInfo.treasures();
+        }
+        return new LevelInfo(required(wid < 0 ? null : wid, "width"), required(hit < 0 ? null : hit, "height"),
+                required(levelNumber < 0 ? null : levelNumber, "levelNumber"),
+                required(totalTime < 0 ? null : totalTime, "totalTime"), Math.max(treasures, 0));
+    }
+
+    /**
+     * reads a level file in whichever format it is in
+     */
+    private ArrayList<ArrayList<Domain.Tile>> readLevelFile(Path file) throws IOException {
+        if (BinaryLevel.isBinary(file)) {
+            return getLevelFromBinary(BinaryLevel.map(file));
+        }
+        return getLevelFromJSONFile(file);
+    }
+
     /**
      * Method for building a level from a JSON string.
      * Do not use this method unless you know what you are doing.
@@ -71,21 +293,18 @@ class Persistency {
     public ArrayList<ArrayList<Domain.Tile>> getLevelFromJSON(String lvlString) {
         long currentTime = System.currentTimeMillis();
         JSONObject lvl = new JSONObject(lvlString);
+        descriptors.clear();
 
         int wid = lvl.getInt("width");
         int hit = lvl.getInt("height");
+        checkVersion(lvl.optInt("version", 1));
 
         ArrayList<ArrayList<Domain.Tile>> tiles = new ArrayList<ArrayList<Domain.Tile>>(wid);
 
         for (int i = 0; i < wid; i++) {
             tiles.add(new ArrayList<Domain.Tile>(hit));
-            for (int j = 0; j < hit; j++) {
-                tiles.get(i).add(null);
-            }
         }
 
-        JSONArray tileArray = lvl.getJSONArray("tileArray");
-
         JSONArray inventoryArray = lvl.getJSONArray("inventoryArray");
 
         String chapStandingOn = lvl.getString("chapStandingOn");
@@ -94,17 +313,44 @@ class Persistency {
         int totalTime = lvl.getInt("totalTime");
         long elapsedTime = lvl.getLong("elapsedTime");
 
-        app.setLevel(levelNumber);
-        app.setTotalTime(totalTime);
-        app.setElapsed(elapsedTime);
+        loadedHeader = new LevelHeader(wid, hit, levelNumber, totalTime, elapsedTime);
+        if (app != null) {
+            app.setLevel(levelNumber);
+            app.setTotalTime(totalTime);
+            app.setElapsed(elapsedTime);
+        }
+
+        if (lvl.has("base")) {
+            List<String> changes = lvl.getJSONArray("changes").toList().stream().map(s -> (String) s).toList();
+            try {
+                tiles = applyDelta(lvl.getString("base"), lvl.getString("baseHash"), changes, wid, hit);
+            } catch (IOException e) {
+                throw new JSONException("Could not read level " + lvl.getString("base") + ": " + e.getMessage());
+            }
+        } else if (lvl.has("tileRows")) {
+            List<String> palette = lvl.getJSONArray("palette").toList().stream().map(s -> (String) s).toList();
+            JSONArray tileRows = lvl.getJSONArray("tileRows");
 
-        for (int i = 0; i < wid; i++) {
             for (int j = 0; j < hit; j++) {
-                String tileString = tileArray.getString(i + j * wid);
+                addTileRow(tileRows.getString(j), palette, tiles);
+            }
+        } else {
+            JSONArray tileArray = lvl.getJSONArray("tileArray");
+
+            for (int i = 0; i < wid; i++) {
+                for (int j = 0; j < hit; j++) {
+                    tiles.get(i).add(null);
+                }
+            }
+
+            for (int i = 0; i < wid; i++) {
+                for (int j = 0; j < hit; j++) {
+                    String tileString = tileArray.getString(i + j * wid);
 
-                Domain.Tile tile = getTileFromString(tileString);
+                    Domain.Tile tile = getTileFromString(tileString);
 
-                tiles.get(i).set(j, tile);
+                    tiles.get(i).set(j, tile);
+                }
             }
         }
 
@@ -117,31 +363,470 @@ class Persistency {
         return tiles;
     }
 
+    /**
+     * Method for building a level from a binary level file.
+     *
+     * @param lvlBuffer The file to build the level from, from its start.
+     *
+     * @return The level as a 2D ArrayList of Domain.Tiles.
+     *
+     * @see BinaryLevel
+     */
+    public ArrayList<ArrayList<Domain.Tile>> getLevelFromBinary(ByteBuffer lvlBuffer) {
+        BinaryLevel.Level lvl = BinaryLevel.read(lvlBuffer, domain);
+        loadedHeader = lvl.header();
+
+        if (app != null) {
+            app.setLevel(lvl.header().levelNumber());
+            app.setTotalTime(lvl.header().totalTime());
+            app.setElapsed(lvl.header().elapsedTime());
+        }
+
+        domain.getChap().setStandingOn(lvl.standingOn());
+
+        domain.getChap().inventory.clear();
+        lvl.inventory().stream().map(c -> domain.new KeyTile(c)).forEach(k -> domain.getChap().inventory.add(k));
+
+        return lvl.tiles();
+    }
+
+    /**
+     * Finds the file a level is stored in.
+     * A level converted to binary has a .bin file next to its .json one, when both exist the one
+     * written last is used so a level saved as JSON after it was converted is not lost.
+     * The move journal's checkpoint is kept beside the journal, see MoveJournal.LEVEL.
+     *
+     * @param level The ID of the level.
+     *
+     * @return The level's file, the .json one if there is neither.
+     */
+    static Path levelFile(String level) {
+        if (level.equals(MoveJournal.NAME)) {
+            return MoveJournal.LEVEL;
+        }
+        File json = new File("levels" + File.separator + level + ".json");
+        File bin = new File("levels" + File.separator + level + ".bin");
+        if (bin.isFile() && (!json.isFile() || bin.lastModified() >= json.lastModified())) {
+            return bin.toPath();
+        }
+        return json.toPath();
+    }
+
+    /**
+     * Method for building a level from a JSON file, reading it a token at a time.
+     * Each tile is put into the board as soon as it is read, so neither the file nor a JSON tree
+     * of it is ever held in memory. Gives the same level as getLevelFromJSON, for both versions of the format.
+     * A compressed file is inflated as it is read.
+     *
+     * @param file The JSON file to build the level from, plain or compressed.
+     *
+     * @return The level as a 2D ArrayList of Domain.Tiles.
+     */
+    public ArrayList<ArrayList<Domain.Tile>> getLevelFromJSONFile(Path file) throws IOException {
+        return readLevelJSON(() -> Compression.reader(file));
+    }
+
+    /**
+     * Opens the text of a JSON level, from the start each time it is called.
+     */
+    private interface LevelText {
+        Reader open() throws IOException;
+    }
+
+    /**
+     * builds a level from JSON a token at a time, see getLevelFromJSONFile
+     */
+    private ArrayList<ArrayList<Domain.Tile>> readLevelJSON(LevelText text) throws IOException {
+        int wid = -1;
+        int hit = -1;
+        ArrayList<ArrayList<Domain.Tile>> tiles = null;
+        List<Integer> inventory = null;
+        String chapStandingOn = null;
+        List<String> palette = null;
+        Integer levelNumber = null;
+        Integer totalTime = null;
+        Long elapsedTime = null;
+        String base = null;
+        String baseHash = null;
+        List<String> changes = null;
+        descriptors.clear();
+
+        try (JsonPullReader in = new JsonPullReader(text.open())) {
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "width":
+                        wid = in.nextInt();
+                        break;
+                    case "height":
+                        hit = in.nextInt();
+                        break;
+                    case "version":
+                        checkVersion(in.nextInt());
+                        break;
+                    case "tileArray":
+                        // rows are stored one after another, so only the width is needed to place each tile
+                        if (wid < 0) {
+                            in.skipValue();
+                        } else {
+                            tiles = readTileArray(in, wid, hit);
+                        }
+                        break;
+                    case "palette":
+                        palette = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            palette.add(in.nextString());
+                        }
+                        in.endArray();
+                        break;
+                    case "tileRows":
+                        if (wid < 0 || palette == null) {
+                            in.skipValue();
+                        } else {
+                            tiles = readTileRows(in, palette, wid, hit);
+                        }
+                        break;
+                    case "inventoryArray":
+                        inventory = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            if (in.peekString()) {
+                                inventory.add(Integer.parseInt(in.nextString()));
+                            } else {
+                                in.skipValue();
+                            }
+                        }
+                        in.endArray();
+                        break;
+                    case "chapStandingOn":
+                        chapStandingOn = in.nextString();
+                        break;
+                    case "levelNumber":
+                        levelNumber = in.nextInt();
+                        break;
+                    case "totalTime":
+                        totalTime = in.nextInt();
+                        break;
+                    case "elapsedTime":
+                        elapsedTime = in.nextLong();
+                        break;
+                    case "base":
+                        base = in.nextString();
+                        break;
+                    case "baseHash":
+                        baseHash = in.nextString();
+                        break;
+                    case "changes":
+                        changes = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            changes.add(in.nextString());
+                        }
+                        in.endArray();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+        }
+
+        required(wid < 0 ? null : wid, "width");
+        required(hit < 0 ? null : hit, "height");
+        if (base != null) {
+            tiles = applyDelta(base, required(baseHash, "baseHash"), required(changes, "changes"), wid, hit);
+        }
+        if (tiles == null) {
+            // the tiles came before the width or the palette, they are read again now those are known
+            try (JsonPullReader in = new JsonPullReader(text.open())) {
+                in.beginObject();
+                while (in.hasNext()) {
+                    String name = in.nextName();
+                    if (name.equals("tileArray")) {
+                        tiles = readTileArray(in, wid, hit);
+                    } else if (name.equals("tileRows")) {
+                        tiles = readTileRows(in, required(palette, "palette"), wid, hit);
+                    } else {
+                        in.skipValue();
+                    }
+                }
+            }
+        }
+        required(tiles, "tileArray");
+        for (ArrayList<Domain.Tile> column : tiles) {
+            if (column.size() < hit) {
+                throw new JSONException("The level has fewer than width * height tiles");
+            }
+            column.subList(hit, column.size()).clear();
+        }
+        required(inventory, "inventoryArray");
+        required(chapStandingOn, "chapStandingOn");
+
+        loadedHeader = new LevelHeader(wid, hit, required(levelNumber, "levelNumber"), required(totalTime, "totalTime"),
+                required(elapsedTime, "elapsedTime"));
+        if (app != null) {
+            app.setLevel(levelNumber);
+            app.setTotalTime(totalTime);
+            app.setElapsed(elapsedTime);
+        }
+
+        domain.getChap().setStandingOn(getTileFromString(chapStandingOn));
+
+        domain.getChap().inventory.clear();
+        inventory.stream().map(c -> domain.new KeyTile(c)).forEach(k -> domain.getChap().inventory.add(k));
+
+        return tiles;
+    }
+
+    /**
+     * Reads the tileArray of a JSON level into a new board, one tile at a time.
+     *
+     * @param wid The width of the level.
+     * @param hit The height of the level, or -1 if it is not known yet, in which case every tile is read.
+     */
+    private ArrayList<ArrayList<Domain.Tile>> readTileArray(JsonPullReader in, int wid, int hit) throws IOException {
+        ArrayList<ArrayList<Domain.Tile>> tiles = new ArrayList<ArrayList<Domain.Tile>>(wid);
+        for (int i = 0; i < wid; i++) {
+            tiles.add(new ArrayList<Domain.Tile>(Math.max(hit, 0)));
+        }
+
+        StringBuilder tileString = new StringBuilder();
+        long cells = hit < 0 ? Long.MAX_VALUE : (long) wid * hit;
+        long index = 0;
+        in.beginArray();
+        while (in.hasNext()) {
+            if (index < cells) {
+                in.nextString(tileString);
+                tiles.get((int) (index % wid)).add(getTileFromString(tileString));
+            } else {
+                in.skipValue();
+            }
+            index++;
+        }
+        in.endArray();
+        return tiles;
+    }
+
+    /**
+     * Reads the tileRows of a version 2 JSON level into a new board, one row at a time.
+     *
+     * @param palette The level's palette of tile Strings.
+     * @param wid The width of the level.
+     * @param hit The height of the level, or -1 if it is not known yet, in which case every row is read.
+     */
+    private ArrayList<ArrayList<Domain.Tile>> readTileRows(JsonPullReader in, List<String> palette, int wid, int hit)
+            throws IOException {
+        ArrayList<ArrayList<Domain.Tile>> tiles = new ArrayList<ArrayList<Domain.Tile>>(wid);
+        for (int i = 0; i < wid; i++) {
+            tiles.add(new ArrayList<Domain.Tile>(Math.max(hit, 0)));
+        }
+
+        StringBuilder row = new StringBuilder();
+        int j = 0;
+        in.beginArray();
+        while (in.hasNext()) {
+            if (hit < 0 || j < hit) {
+                in.nextString(row);
+                addTileRow(row, palette, tiles);
+            } else {
+                in.skipValue();
+            }
+            j++;
+        }
+        in.endArray();
+        return tiles;
+    }
+
+    /**
+     * Adds one row of a version 2 level to the bottom of the board.
+     * A row is a list of palette indices separated by spaces, an index repeated n times is written index*n.
+     *
+     * @param row The row, for example "0 1*10 0".
+     * @param palette The level's palette of tile Strings.
+     * @param tiles The board, a column for each tile across.
+     */
+    private void addTileRow(CharSequence row, List<String> palette, ArrayList<ArrayList<Domain.Tile>> tiles) {
+        int i = 0;
+        int at = 0;
+        int end = row.length();
+        while (at < end) {
+            int runEnd = indexOf(row, ' ', at, end);
+            int star = indexOf(row, '*', at, runEnd);
+            String tileString = palette.get(Integer.parseInt(row, at, star, 10));
+            int count = star == runEnd ? 1 : Integer.parseInt(row, star + 1, runEnd, 10);
+            if (i + count > tiles.size()) {
+                throw new JSONException("Row is wider than the level: " + row);
+            }
+            for (int k = 0; k < count; k++) {
+                tiles.get(i++).add(getTileFromString(tileString));
+            }
+            at = runEnd + 1;
+        }
+        if (i != tiles.size()) {
+            throw new JSONException("Row is narrower than the level: " + row);
+        }
+    }
+
+    /**
+     * Builds the board of a saved game that only stores the cells it changed, see levelDeltaJSON.
+     * The level it was saved from is read, or taken from the cache if it was already, and the changes are laid over it.
+     *
+     * @param base The ID of the level the game was saved from.
+     * @param baseHash The content hash that level had when the game was saved.
+     * @param changes The changed cells, each "x y tileString".
+     * @param wid The width of the level.
+     * @param hit The height of the level.
+     *
+     * @return The level as a 2D ArrayList of Domain.Tiles.
+     */
+    private ArrayList<ArrayList<Domain.Tile>> applyDelta(String base, String baseHash, List<String> changes, int wid, int hit)
+            throws IOException {
+        BaseLevel baseLevel = baseLevel(base);
+        if (!baseLevel.hash().equals(baseHash) || baseLevel.width() != wid || baseLevel.height() != hit) {
+            throw new JSONException("The save was made from a different version of level " + base);
+        }
+
+        String[] cells = baseLevel.cells().clone();
+        Set<Integer> changed = new HashSet<>();
+        for (String change : changes) {
+            int xEnd = change.indexOf(' ');
+            int yEnd = xEnd < 0 ? -1 : change.indexOf(' ', xEnd + 1);
+            if (yEnd < 0) {
+                throw new JSONException("Bad change: " + change);
+            }
+            int x = Integer.parseInt(change, 0, xEnd, 10);
+            int y = Integer.parseInt(change, xEnd + 1, yEnd, 10);
+            if (x < 0 || y < 0 || x >= wid || y >= hit) {
+                throw new JSONException("Change outside the level: " + change);
+            }
+            cells[x + y * wid] = change.substring(yEnd + 1);
+            changed.add(x + y * wid);
+        }
+
+        descriptors.clear();
+        ArrayList<ArrayList<Domain.Tile>> tiles = new ArrayList<ArrayList<Domain.Tile>>(wid);
+        for (int i = 0; i < wid; i++) {
+            tiles.add(new ArrayList<Domain.Tile>(hit));
+        }
+        for (int j = 0; j < hit; j++) {
+            for (int i = 0; i < wid; i++) {
+                tiles.get(i).add(getTileFromString(cells[i + j * wid]));
+            }
+        }
+
+        loadedBase = base;
+        loadedDeltaCells = changed;
+        return tiles;
+    }
+
+    /**
+     * Returns a level saves can be made from, reading it if it is not cached or its file changed since it was.
+     *
+     * @param level The ID of the level.
+     */
+    private BaseLevel baseLevel(String level) throws IOException {
+        long modified = levelModified(level);
+        BaseLevel base = baseLevels.get(level);
+        if (base == null || base.modified() != modified) {
+            loadedBase = null;
+            ArrayList<ArrayList<Domain.Tile>> tiles = readLevel(level);
+            if (loadedBase != null) {
+                throw new JSONException("Level " + level + " is a saved game, a game cannot be saved from it");
+            }
+            base = rememberBase(level, modified, tiles);
+        }
+        return base;
+    }
+
+    /**
+     * Caches the tile Strings of a level that was just read, unless they already are, with a hash of them.
+     * Each distinct String is kept once however many cells hold it.
+     */
+    private BaseLevel rememberBase(String level, long modified, ArrayList<ArrayList<Domain.Tile>> tiles) {
+        BaseLevel base = baseLevels.get(level);
+        if (base != null && base.modified() == modified) {
+            return base;
+        }
+        int wid = tiles.size();
+        int hit = tiles.get(0).size();
+        Map<String, String> distinct = new HashMap<>();
+        String[] cells = new String[wid * hit];
+        for (int j = 0; j < hit; j++) {
+            for (int i = 0; i < wid; i++) {
+                Domain.Tile tile = tiles.get(i).get(j);
+                String tileString = tile == null ? "" : getStringFromTile(tile);
+                cells[i + j * wid] = distinct.computeIfAbsent(tileString, t -> t);
+            }
+        }
+        base = new BaseLevel(wid, hit, cells, contentHash(wid, hit, cells), modified);
+        baseLevels.put(level, base);
+        return base;
+    }
+
+    /**
+     * Hashes the size and tile Strings of a level, so a save can tell if the level it was made from has changed since.
+     * The hash does not depend on the format the level is stored in.
+     */
+    private static String contentHash(int wid, int hit, String[] cells) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update((wid + " " + hit + "\n").getBytes(StandardCharsets.UTF_8));
+        Map<String, byte[]> encoded = new HashMap<>();
+        for (String cell : cells) {
+            digest.update(encoded.computeIfAbsent(cell, c -> (c + "\n").getBytes(StandardCharsets.UTF_8)));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void checkVersion(int version) {
+        if (version < 1 || version > LATEST_VERSION) {
+            throw new JSONException("Unsupported level version: " + version);
+        }
+    }
+
+    private static <T> T required(T value, String key) {
+        if (value == null) {
+            throw new JSONException("JSONObject[\"" + key + "\"] not found.");
+        }
+        return value;
+    }
+
     /**
      * Builds a Domain.Tile from a given String.
+     * Each distinct String is only decoded once per level, after that its tiles are built from the
+     * descriptor it decoded to. Strings are looked up by their characters, so a StringBuilder can be
+     * reused for every tile.
      *
      * @param tileString The String to build the Domain.Tile from.
      *
      * @return The Domain.Tile built from the given String.
      */
-    private Domain.Tile getTileFromString(String tileString) {
-        if (tileString == null || tileString.equals(""))
+    private Domain.Tile getTileFromString(CharSequence tileString) {
+        if (tileString == null || tileString.length() == 0)
             return null;
 
-        String[] tileStringArray = tileString.split(" ");
-        int tileIndex = stringDecoder(tileStringArray[0]);
+        TileDescriptor descriptor = descriptors.get(tileString);
+        if (descriptor == null) {
+            descriptor = decodeTileString(tileString);
+            descriptors.put(tileString.toString(), descriptor);
+        }
 
-        switch (tileIndex) {
+        switch (descriptor.type()) {
             case 0:
                 return domain.new WallTile();
             case 1:
                 return domain.new FreeTile();
             case 2:
-                return domain.new KeyTile(Integer.parseInt(tileStringArray[1]));
+                return domain.new KeyTile(descriptor.number());
             case 3:
-                return domain.new LockedDoorTile(Integer.parseInt(tileStringArray[1]));
+                return domain.new LockedDoorTile(descriptor.number());
             case 4:
-                return domain.new InfoFeildTile(tileStringArray[1].replace("_", " "));
+                return domain.new InfoFeildTile(descriptor.info());
             case 5:
                 return domain.new TreasureTile();
             case 6:
@@ -149,40 +834,244 @@ class Persistency {
             case 7:
                 return domain.new ExitTile();
             case 8:
-                return domain.new ChapTile(Integer.parseInt(tileStringArray[1]));
-            case 9:
-                return domain.new EnemyTile(decodeEnemyString(tileStringArray[1]));
+                return domain.new ChapTile(descriptor.number());
             default:
-                throw new RuntimeException("Unknown tile type: " + tileStringArray[0]);
+                return domain.new EnemyTile(descriptor.path());
         }
     }
 
     /**
+     * Decodes a tile String into its type and argument.
+     * The String is read in place rather than split.
      *
+     * @param tileString The String to decode, not empty.
+     *
+     * @return What tiles built from the String look like.
      */
-    public boolean saveLevel(String level, ArrayList<ArrayList<Domain.Tile>> tiles) {
-        long currentTime = System.currentTimeMillis();
-        System.out.println("Saving level: " + level);
+    private TileDescriptor decodeTileString(CharSequence tileString) {
+        int nameEnd = indexOf(tileString, ' ', 0, tileString.length());
+        int argStart = Math.min(nameEnd + 1, tileString.length());
+        int argEnd = indexOf(tileString, ' ', argStart, tileString.length());
+        String name = tileString.subSequence(0, nameEnd).toString();
+        Integer tileIndex = tileToIntMap.get(name);
+        if (tileIndex == null) {
+            tileIndex = stringDecoder(name);
+        }
 
-        JSONObject lvl = saveLevelJSONObject(level, tiles);
+        switch (tileIndex) {
+            case 0:
+            case 1:
+            case 5:
+            case 6:
+            case 7:
+                return new TileDescriptor(tileIndex, 0, null, null);
+            case 2:
+            case 3:
+            case 8:
+                return new TileDescriptor(tileIndex, Integer.parseInt(tileString, argStart, argEnd, 10), null, null);
+            case 4:
+                return new TileDescriptor(tileIndex, 0,
+                        tileString.subSequence(argStart, argEnd).toString().replace("_", " "), null);
+            case 9:
+                return new TileDescriptor(tileIndex, 0, null, decodeEnemyString(tileString, argStart, argEnd));
+            default:
+                throw new RuntimeException("Unknown tile type: " + name);
+        }
+    }
 
-        try {
-            FileWriter file = new FileWriter("levels" + File.separator + level + ".json");
+    /**
+     * returns where a character first appears between start and end, or end if it does not
+     */
+    private static int indexOf(CharSequence chars, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (chars.charAt(i) == c) {
+                return i;
+            }
+        }
+        return end;
+    }
 
-            file.write(lvl.toString(4));
+    /**
+     * Saves a game as one unit to the SaveStore: the replay, the board, its thumbnail and an exit state that
+     * resumes from them. Either all of them are saved or, if the game stops part way, none are.
+     * A game cannot be saved under the name of one of the game's levels.
+     *
+     * @param save The game, serialised while it was held still.
+     *
+     * @return True if the game was saved, false otherwise.
+     */
+    public boolean saveGame(SavedGame save) {
+        long currentTime = System.currentTimeMillis();
+        System.out.println("Saving game: " + save.saveName());
 
-            file.close();
+        try {
+            SaveStore store = saveStore(true);
+            if (store.entry(save.saveName()) == null
+                    && (Files.isRegularFile(levelFile(save.saveName())) || levelPack(save.saveName()) != null)) {
+                System.out.println("Game save fail, " + save.saveName() + " is the name of a level");
+                return false;
+            }
+            byte[] thumbnail = new byte[0];
+            if (save.thumbnail() != null) {
+                ByteArrayOutputStream png = new ByteArrayOutputStream();
+                ImageIO.write(save.thumbnail(), "png", png);
+                thumbnail = png.toByteArray();
+            }
+            long written = store.put(
+                    new SaveStore.Entry(save.saveName(), save.level(), System.currentTimeMillis(), save.chipsLeft(), save.playTime()),
+                    Compression.compress(save.replayJSON()), Compression.compress(save.levelJSON()), thumbnail,
+                    exitStateJSON(new ExitState(Optional.empty(), Optional.of(save.saveName()))).getBytes(StandardCharsets.UTF_8));
 
-            System.out.println("Finished saving level in " + (System.currentTimeMillis() - currentTime) + "ms");
+            System.out.println("Finished saving game in " + (System.currentTimeMillis() - currentTime) + "ms ("
+                    + written + " bytes written to " + SaveStore.FILE + ")");
             return true;
         } catch (IOException e) {
-            System.out.println("Level save fail");
+            System.out.println("Game save fail");
             e.printStackTrace();
 
             return false;
         }
     }
 
+    /**
+     * Writes the files of a save to a transaction: the replay, the level and the thumbnail if it has one.
+     * Used for the journal's checkpoints, which are kept as files beside the journal rather than in the SaveStore.
+     * The replay and level are compressed, see Compression.
+     *
+     * @param transaction The transaction the files are replaced in when it commits.
+     * @param save The game to save.
+     */
+    void stageSave(SaveTransaction transaction, SavedGame save) throws IOException {
+        Path replayFile = Path.of("recorderfiles", save.saveName() + ".json");
+        transaction.write(replayFile, Compression.compress(save.replayJSON()));
+        transaction.write(levelFile(save.saveName()), Compression.compress(save.levelJSON()));
+        if (save.thumbnail() != null) {
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            ImageIO.write(save.thumbnail(), "png", png);
+            transaction.write(thumbnailFile(replayFile.toFile()).toPath(), png.toByteArray());
+        }
+    }
+
+    /**
+     * Builds the JSON text of the level of a game being saved, with the level number and times taken from the app.
+     * When the board was loaded from one of the game's levels, or from a save made from one, only what changed
+     * since is stored, see levelDeltaJSON. Otherwise the whole board is, as levelToJSON does.
+     *
+     * @param saveName The name the game is saved under.
+     * @param tiles The board, as the domain holds it.
+     *
+     * @return The level as JSON.
+     */
+    public String saveLevelJSON(String saveName, ArrayList<ArrayList<Domain.Tile>> tiles) {
+        return snapshotLevelJSON(saveName, tiles).get();
+    }
+
+    /**
+     * Takes what saveLevelJSON needs from the board, chap and the app, so the JSON can be built on another thread
+     * while the game carries on. A save that only stores what changed is built straight away, it only looks at the
+     * changed cells. For a whole board only the tile Strings are taken, the JSON is built when it is asked for.
+     * Must be called while nothing can change the board.
+     *
+     * @param saveName The name the game is saved under.
+     * @param tiles The board, as the domain holds it.
+     *
+     * @return Gives the level as JSON, as saveLevelJSON would have when this was called.
+     */
+    Supplier<String> snapshotLevelJSON(String saveName, ArrayList<ArrayList<Domain.Tile>> tiles) {
+        BaseLevel base = loadedBase == null ? null : baseLevels.get(loadedBase);
+        if (base != null) {
+            String delta = levelDeltaJSON(saveName, tiles,
+                    new LevelHeader(base.width(), base.height(), app.getLevel(), app.getTotalTime(), app.getElapsedTime()));
+            if (delta != null) {
+                return () -> delta;
+            }
+        }
+        LevelStrings level = levelStrings(tiles, headerFromApp(tiles));
+        return () -> levelToJSON(level, SAVE_VERSION);
+    }
+
+    /**
+     * Builds the JSON text of a save that stores only how the board differs from the level it was loaded from.
+     * It names that level and holds a hash of its contents, then the times, chap's inventory and what chap is
+     * standing on, and a line "x y tileString" for each cell that differs. Only the cells the domain changed
+     * since the board was loaded, and those a loaded save had changed, are looked at, so the time taken and the
+     * size of the save grow with how far the game has got, not with the size of the level.
+     *
+     * @param saveName The name the game is saved under.
+     * @param tiles The board, as the domain holds it with the buffer around the level.
+     * @param header The level number and times, the size is the level's.
+     *
+     * @return The JSON, or null if the board cannot be saved this way, in which case the whole board has to be.
+     */
+    String levelDeltaJSON(String saveName, ArrayList<ArrayList<Domain.Tile>> tiles, LevelHeader header) {
+        BaseLevel base = loadedBase == null ? null : baseLevels.get(loadedBase);
+        // a save under the level's own name would replace the level it needs
+        if (base == null || loadedBase.equals(saveName) || tiles.size() != base.width() + 2 * Domain.LEVEL_OFFSET
+                || tiles.get(0).size() != base.height() + 2 * Domain.LEVEL_OFFSET) {
+            return null;
+        }
+        int wid = base.width();
+        int hit = base.height();
+
+        Set<Integer> cells = new TreeSet<>(loadedDeltaCells);
+        for (Domain.Coordinates c : domain.getChangedCells()) {
+            if (c.x() < 0 || c.y() < 0 || c.x() >= wid || c.y() >= hit) {
+                return null;
+            }
+            cells.add(c.x() + c.y() * wid);
+        }
+
+        List<String> changes = new ArrayList<>();
+        for (int index : cells) {
+            int x = index % wid;
+            int y = index / wid;
+            Domain.Tile tile = tiles.get(x + Domain.LEVEL_OFFSET).get(y + Domain.LEVEL_OFFSET);
+            String tileString = tile == null ? "" : getStringFromTile(tile);
+            if (!tileString.equals(base.cells()[index])) {
+                changes.add(x + " " + y + " " + tileString);
+            }
+        }
+
+        StringBuilder lvl = new StringBuilder();
+        lvl.append("{\n");
+        lvl.append("    \"version\": 2,\n");
+        lvl.append("    \"base\": ").append(JSONObject.quote(loadedBase)).append(",\n");
+        lvl.append("    \"baseHash\": ").append(JSONObject.quote(base.hash())).append(",\n");
+        appendState(lvl, header, getStringFromTile(domain.getChap().getStandingOn()), inventoryStrings());
+        appendLines(lvl, "changes", changes);
+        lvl.append("\n}\n");
+        return lvl.toString();
+    }
+
+    /**
+     * Builds the JSON text of a level, with chap's state taken from the domain.
+     *
+     * @param tiles The level as a 2D ArrayList of Domain.Tiles.
+     * @param header The level number and times, the size is taken from the tiles.
+     * @param version 1 for a tile String per cell, 2 for a palette and run length encoded rows.
+     *
+     * @return The level as JSON.
+     */
+    String levelToJSON(ArrayList<ArrayList<Domain.Tile>> tiles, LevelHeader header, int version) {
+        return levelToJSON(levelStrings(tiles, header), version);
+    }
+
+    private static String levelToJSON(LevelStrings level, int version) {
+        checkVersion(version);
+        return version == 1 ? levelJSONObject(level).toString(4) : levelJSONv2(level);
+    }
+
+    /**
+     * Returns the size, level number and times of the level that was loaded last, or null if none has been.
+     */
+    public LevelHeader getLoadedHeader() {
+        return loadedHeader;
+    }
+
+    private LevelHeader headerFromApp(ArrayList<ArrayList<Domain.Tile>> tiles) {
+        return new LevelHeader(tiles.size(), tiles.get(0).size(), app.getLevel(), app.getTotalTime(), app.getElapsedTime());
+    }
+
     /**
      * Method for saving a level to a file.
      *
@@ -192,47 +1081,127 @@ class Persistency {
      * @return Whether or not the save was successful.
      */
     private JSONObject saveLevelJSONObject(String level, ArrayList<ArrayList<Domain.Tile>> tiles) {
-        JSONObject lvl = new JSONObject();
+        return levelJSONObject(levelStrings(tiles, headerFromApp(tiles)));
+    }
 
-        int wid = tiles.size();
-        int hit = tiles.get(0).size();
+    private static JSONObject levelJSONObject(LevelStrings level) {
+        JSONObject lvl = new JSONObject();
+        LevelHeader header = level.header();
 
-        lvl.put("width", wid);
-        lvl.put("height", hit);
+        lvl.put("width", header.width());
+        lvl.put("height", header.height());
 
-        String[] tileArray = new String[wid * hit];
+        lvl.put("chapStandingOn", level.standingOn());
 
-        ArrayList<Domain.Tile> inventory = domain.getChap().inventory;
+        lvl.put("tileArray", level.cells());
 
-        for (int i = 0; i < wid; i++) {
-            for (int j = 0; j < hit; j++) {
-                String tileString = null;
+        lvl.put("inventoryArray", level.inventory());
 
-                Domain.Tile tile = tiles.get(i).get(j);
+        lvl.put("levelNumber", header.levelNumber());
+        lvl.put("totalTime", header.totalTime());
+        lvl.put("elapsedTime", header.elapsedTime());
 
-                tileString = getStringFromTile(tile);
+        return lvl;
+    }
 
-                tileArray[i + j * wid] = tileString;
+    /**
+     * Builds the JSON text of a version 2 level.
+     * Every distinct tile String is listed once in a palette, and each row of the board is one line
+     * of palette indices with runs of the same index written index*count, so a level stays small and
+     * a change to the board shows up as a change to the rows it is on.
+     */
+    private static String levelJSONv2(LevelStrings level) {
+        LevelHeader header = level.header();
+        int wid = header.width();
+        int hit = header.height();
+        String[] cells = level.cells();
+
+        Map<String, Integer> palette = new LinkedHashMap<>();
+        List<String> rows = new ArrayList<>(hit);
+        StringBuilder row = new StringBuilder();
+        for (int j = 0; j < hit; j++) {
+            row.setLength(0);
+            String run = cells[j * wid];
+            int count = 1;
+            for (int i = 1; i <= wid; i++) {
+                String tileString = i < wid ? cells[i + j * wid] : null;
+                if (run.equals(tileString)) {
+                    count++;
+                    continue;
+                }
+                if (row.length() > 0) {
+                    row.append(' ');
+                }
+                row.append(palette.computeIfAbsent(run, t -> palette.size()));
+                if (count > 1) {
+                    row.append('*').append(count);
+                }
+                run = tileString;
+                count = 1;
             }
+            rows.add(row.toString());
         }
 
-        String[] inventoryArray;
-        inventoryArray = new String[inventory.size()];
-        for (int i = 0; i < inventory.size(); i++) {
-            inventoryArray[i] = "" + inventory.get(i).iconIndex;
-        }
-
-        lvl.put("chapStandingOn", getStringFromTile(domain.getChap().getStandingOn()));
+        StringBuilder lvl = new StringBuilder();
+        lvl.append("{\n");
+        lvl.append("    \"version\": 2,\n");
+        appendState(lvl, header, level.standingOn(), level.inventory());
+        appendLines(lvl, "palette", palette.keySet());
+        lvl.append(",\n");
+        appendLines(lvl, "tileRows", rows);
+        lvl.append("\n}\n");
+        return lvl.toString();
+    }
 
-        lvl.put("tileArray", tileArray);
+    /**
+     * appends the size, level number and times of a level and chap's state, each member followed by a comma
+     */
+    private static void appendState(StringBuilder lvl, LevelHeader header, String standingOn, String[] inventory) {
+        lvl.append("    \"width\": ").append(header.width()).append(",\n");
+        lvl.append("    \"height\": ").append(header.height()).append(",\n");
+        lvl.append("    \"levelNumber\": ").append(header.levelNumber()).append(",\n");
+        lvl.append("    \"totalTime\": ").append(header.totalTime()).append(",\n");
+        lvl.append("    \"elapsedTime\": ").append(header.elapsedTime()).append(",\n");
+        lvl.append("    \"chapStandingOn\": ").append(JSONObject.quote(standingOn)).append(",\n");
+        lvl.append("    \"inventoryArray\": ").append(new JSONArray(inventory)).append(",\n");
+    }
 
-        lvl.put("inventoryArray", inventoryArray);
+    /**
+     * appends a member holding an array of Strings, one String per line
+     */
+    private static void appendLines(StringBuilder lvl, String name, Iterable<String> lines) {
+        lvl.append("    ").append(JSONObject.quote(name)).append(": [");
+        String separator = "\n";
+        for (String line : lines) {
+            lvl.append(separator).append("        ").append(JSONObject.quote(line));
+            separator = ",\n";
+        }
+        lvl.append("\n    ]");
+    }
 
-        lvl.put("levelNumber", app.getLevel());
-        lvl.put("totalTime", app.getTotalTime());
-        lvl.put("elapsedTime", app.getElapsedTime());
+    /**
+     * takes the tile Strings of a board and chap's state, everything the JSON of a whole level is built from
+     */
+    private LevelStrings levelStrings(ArrayList<ArrayList<Domain.Tile>> tiles, LevelHeader header) {
+        int wid = tiles.size();
+        int hit = tiles.get(0).size();
+        String[] cells = new String[wid * hit];
+        for (int i = 0; i < wid; i++) {
+            for (int j = 0; j < hit; j++) {
+                cells[i + j * wid] = getStringFromTile(tiles.get(i).get(j));
+            }
+        }
+        return new LevelStrings(new LevelHeader(wid, hit, header.levelNumber(), header.totalTime(), header.elapsedTime()),
+                cells, getStringFromTile(domain.getChap().getStandingOn()), inventoryStrings());
+    }
 
-        return lvl;
+    private String[] inventoryStrings() {
+        ArrayList<Domain.Tile> inventory = domain.getChap().inventory;
+        String[] inventoryArray = new String[inventory.size()];
+        for (int i = 0; i < inventory.size(); i++) {
+            inventoryArray[i] = "" + inventory.get(i).iconIndex;
+        }
+        return inventoryArray;
     }
 
     /**
@@ -268,14 +1237,182 @@ class Persistency {
     }
 
     /**
-     * Loads the exit state.
+     * Finds the thumbnail that belongs to a saved file.
+     *
+     * @param saveFile The saved file, for example recorderfiles/mysave.json.
+     *
+     * @return The thumbnail file next to it, which may not exist.
+     */
+    public static File thumbnailFile(File saveFile) {
+        String name = saveFile.getName();
+        int dot = name.lastIndexOf('.');
+        String baseName = dot == -1 ? name : name.substring(0, dot);
+        return new File(saveFile.getParentFile(), baseName + ".png");
+    }
+
+    /**
+     * Returns the SaveStore, opening it the first time. When the store is made, the saves and the exit state
+     * the game wrote as separate files before there was one are copied into it.
+     *
+     * @param create Whether to make the store if there is none, otherwise null is returned.
+     */
+    private static synchronized SaveStore saveStore(boolean create) throws IOException {
+        if (saveStore == null) {
+            boolean exists = Files.isRegularFile(SaveStore.FILE);
+            if (!exists && !create) {
+                return null;
+            }
+            saveStore = SaveStore.open(SaveStore.FILE);
+            if (!exists) {
+                importSaveFiles(saveStore);
+            }
+        }
+        return saveStore;
+    }
+
+    /**
+     * Reads a saved game from the SaveStore.
+     *
+     * @param saveName The name it was saved under.
+     *
+     * @return The save, or null if the store does not have one with that name.
+     */
+    static SaveStore.StoredSave findSave(String saveName) throws IOException {
+        SaveStore store = saveStore(false);
+        return store == null ? null : store.load(saveName);
+    }
+
+    /**
+     * Lists the saved games, newest first, from the SaveStore's index without reading any of them.
+     *
+     * @return The saves, none if nothing has been saved.
+     */
+    static List<SaveStore.Entry> listSaves() {
+        try {
+            SaveStore store = saveStore(true);
+            return store.list();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return List.of();
+        }
+    }
+
+    /**
+     * Reads the thumbnail of a saved game.
+     *
+     * @param saveName The name it was saved under.
+     *
+     * @return The thumbnail, or null if the save has none.
+     */
+    static BufferedImage loadThumbnail(String saveName) {
+        try {
+            SaveStore.StoredSave save = findSave(saveName);
+            if (save == null || save.thumbnail().length == 0) {
+                return null;
+            }
+            return ImageIO.read(new ByteArrayInputStream(save.thumbnail()));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Copies the saves in the recorderfiles and levels folders and exitState.json into a new store.
+     * The files are left where they are. The levels of the game and the journal's checkpoint are not saves.
+     */
+    private static void importSaveFiles(SaveStore store) {
+        File[] replays = new File("recorderfiles").listFiles((dir, name) -> name.endsWith(".json"));
+        for (File replay : replays == null ? new File[0] : replays) {
+            String name = replay.getName().substring(0, replay.getName().length() - ".json".length());
+            Path level = levelFile(name);
+            try {
+                if (name.equals(MoveJournal.NAME) || !Files.isRegularFile(level) || BinaryLevel.isBinary(level)) {
+                    continue;
+                }
+                SaveInfo info = readSaveInfo(level);
+                if (name.equals("" + info.level())) {
+                    continue;
+                }
+                File thumbnail = thumbnailFile(replay);
+                store.put(new SaveStore.Entry(name, info.level(), replay.lastModified(), info.chipsLeft(), info.playTime()),
+                        Files.readAllBytes(replay.toPath()), Files.readAllBytes(level),
+                        thumbnail.isFile() ? Files.readAllBytes(thumbnail.toPath()) : new byte[0], null);
+                System.out.println("Copied save " + name + " into " + SaveStore.FILE);
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Could not copy save " + name + " into " + SaveStore.FILE);
+                e.printStackTrace();
+            }
+        }
+
+        Path exitState = Path.of("exitState.json");
+        try {
+            if (Files.isRegularFile(exitState)) {
+                store.putExitState(Files.readAllBytes(exitState));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads the level number and elapsed time of a JSON save, and how many chips chap has left from the chap
+     * tile in its tiles, palette or changes, without building the board.
+     */
+    private static SaveInfo readSaveInfo(Path file) throws IOException {
+        int level = -1;
+        long playTime = 0;
+        int chipsLeft = -1;
+        try (JsonPullReader in = new JsonPullReader(Compression.reader(file))) {
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "levelNumber":
+                        level = in.nextInt();
+                        break;
+                    case "elapsedTime":
+                        playTime = in.nextLong();
+                        break;
+                    case "tileArray":
+                    case "palette":
+                    case "changes":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            String tile = in.nextString();
+                            int chap = tile.indexOf("chapTile ");
+                            if (chap != -1) {
+                                chipsLeft = Integer.parseInt(tile.substring(chap + "chapTile ".length()).strip());
+                            }
+                        }
+                        in.endArray();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+        }
+        return new SaveInfo(required(level < 0 ? null : level, "levelNumber"), playTime, chipsLeft);
+    }
+
+    /**
+     * Loads the exit state, from the SaveStore or, if it does not have one, the file it was kept in before.
      *
      * @return The loaded ExitState.
      */
     public ExitState loadExitState() {
         String exitStateString = new String();
 
-        if (new File("exitState.json").isFile()) {
+        byte[] stored = null;
+        try {
+            SaveStore store = saveStore(false);
+            stored = store == null ? null : store.loadExitState();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        if (stored != null) {
+            exitStateString = new String(stored, StandardCharsets.UTF_8);
+        } else if (new File("exitState.json").isFile()) {
             try {
                 exitStateString = Files.readString(Path.of("exitState.json"));
             } catch (IOException e) {
@@ -304,20 +1441,8 @@ class Persistency {
      * @return True if the state was saved successfully, false otherwise.
      */
     public boolean saveExitState(ExitState exitState) {
-        JSONObject exitStateJSON = new JSONObject();
-
-        int level = exitState.level().orElse(-1);
-        String saveName = exitState.saveName().orElse("NOSAVE");
-
-        exitStateJSON.put("level", level);
-        exitStateJSON.put("saveName", saveName);
-
         try {
-            FileWriter file = new FileWriter("exitState.json");
-
-            file.write(exitStateJSON.toString(4));
-
-            file.close();
+            saveStore(true).putExitState(exitStateJSON(exitState).getBytes(StandardCharsets.UTF_8));
 
             return true;
         } catch (IOException e) {
@@ -327,6 +1452,18 @@ class Persistency {
         }
     }
 
+    private String exitStateJSON(ExitState exitState) {
+        JSONObject exitStateJSON = new JSONObject();
+
+        int level = exitState.level().orElse(-1);
+        String saveName = exitState.saveName().orElse("NOSAVE");
+
+        exitStateJSON.put("level", level);
+        exitStateJSON.put("saveName", saveName);
+
+        return exitStateJSON.toString(4);
+    }
+
     /**
      * Saves the exit state, ready to be loaded on the next boot.
      *
@@ -364,15 +1501,129 @@ class Persistency {
     /**
      * Decodes an enemy string into a list of coordinates.
      *
-     * @param enemyString The enemy string to decode.
+     * @param enemyString The characters holding the enemy string.
+     * @param start Where the enemy string starts.
+     * @param end Where the enemy string ends.
      *
      * @return List of coordinates extracted from the enemy string.
      */
-    private List<Domain.Coordinates> decodeEnemyString(String enemyString) {
-        return Arrays.stream(enemyString.split(",")).map(c -> {
-            String[] split = c.split(":");
-            return new Domain.Coordinates(Integer.parseInt(split[0]), Integer.parseInt(split[1]));
-        }).toList();
+    private List<Domain.Coordinates> decodeEnemyString(CharSequence enemyString, int start, int end) {
+        List<Domain.Coordinates> path = new ArrayList<>();
+        int at = start;
+        do {
+            int comma = indexOf(enemyString, ',', at, end);
+            int colon = indexOf(enemyString, ':', at, comma);
+            path.add(new Domain.Coordinates(Integer.parseInt(enemyString, at, colon, 10),
+                    Integer.parseInt(enemyString, colon + 1, comma, 10)));
+            at = comma + 1;
+        } while (at < end);
+        return List.copyOf(path);
+    }
+
+    /**
+     * What the index of the SaveStore holds about a save that was copied into it from files.
+     */
+    private record SaveInfo(int level, long playTime, int chipsLeft) {
+    }
+
+    /**
+     * The Strings the JSON of a whole level is built from, taken from the board and chap at one moment.
+     *
+     * @param header The size, level number and times of the level.
+     * @param cells The tile String of every cell, indexed like the tileArray.
+     * @param standingOn The tile String of what chap is standing on.
+     * @param inventory The colours of the keys chap is holding.
+     */
+    private record LevelStrings(LevelHeader header, String[] cells, String standingOn, String[] inventory) {
+    }
+
+    /**
+     * A level saves can be made from, as it is on disk.
+     *
+     * @param width The width of the level.
+     * @param height The height of the level.
+     * @param cells The tile String of every cell, indexed like the tileArray, an empty String for an empty cell.
+     * @param hash The content hash of the level, see contentHash.
+     * @param modified When the level's file was last changed, the cache is only used while it is unchanged.
+     */
+    private record BaseLevel(int width, int height, String[] cells, String hash, long modified) {
+    }
+
+    /**
+     * What a tile String decodes to.
+     *
+     * @param type The tile's type, numbered as in tileToIntMap.
+     * @param number The colour of a key or door, or chap's treasure total.
+     * @param info The text of an info field.
+     * @param path The path of an enemy, shared by every enemy built from the same String.
+     */
+    private record TileDescriptor(int type, int number, String info, List<Domain.Coordinates> path) {
+    }
+
+    /**
+     * Tile Strings and their descriptors, looked up by the characters of a String so a StringBuilder
+     * holding one can be looked up without making a String of it.
+     */
+    private static final class DescriptorCache {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private String[] keys = new String[INITIAL_CAPACITY];
+        private TileDescriptor[] values = new TileDescriptor[INITIAL_CAPACITY];
+        private int size = 0;
+
+        TileDescriptor get(CharSequence key) {
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot].contentEquals(key)) {
+                    return values[slot];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * adds a String that is not in the cache
+         */
+        void put(String key, TileDescriptor value) {
+            if (size * 2 >= keys.length) {
+                String[] oldKeys = keys;
+                TileDescriptor[] oldValues = values;
+                keys = new String[oldKeys.length * 2];
+                values = new TileDescriptor[oldKeys.length * 2];
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != null) {
+                        insert(oldKeys[i], oldValues[i]);
+                    }
+                }
+            }
+            insert(key, value);
+            size++;
+        }
+
+        void clear() {
+            keys = new String[INITIAL_CAPACITY];
+            values = new TileDescriptor[INITIAL_CAPACITY];
+            size = 0;
+        }
+
+        private void insert(String key, TileDescriptor value) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        // the same as String.hashCode, spread so the low bits used for the slot depend on every character
+        private static int hash(CharSequence key) {
+            int h = 0;
+            for (int i = 0; i < key.length(); i++) {
+                h = 31 * h + key.charAt(i);
+            }
+            return h ^ (h >>> 16);
+        }
     }
 
     private Map<String, Integer> constructTileToIntMap() {
@@ -392,9 +1643,8 @@ class Persistency {
         return tileToIntMap;
     }
 
-    private int stringDecoder(String str) {
-        char[] chars = str.toCharArray();
-        switch (chars[0]) {
+    private int stringDecoder(CharSequence str) {
+        switch (str.charAt(0)) {
             case 'w':
                 return 0;
             case 'f':
@@ -408,9 +1658,9 @@ class Persistency {
             case 't':
                 return 5;
             case 'e':
-                if (chars[4] == 'L')
+                if (str.charAt(4) == 'L')
                     return 6;
-                else if (chars[4] == 'T')
+                else if (str.charAt(4) == 'T')
                     return 7;
                 else 
                     return 9;
@@ -419,9 +1669,6 @@ class Persistency {
         }
 
         // Should never happen
-        return tileToIntMap.get(str);
+        return tileToIntMap.get(str.toString());
     }
 }
-
-record ExitState(Optional<Integer> level, Optional<String> saveName) {
-}
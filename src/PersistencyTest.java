@@ -1,16 +1,39 @@
 package src;
 
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
 import org.json.JSONObject;
 import org.json.JSONArray;
 
+import java.io.IOException;
 import java.lang.reflect.Method;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
 class PersistencyTest {
+    // where a test writes its files, made before each test and deleted after it
+    private Path folder;
+
+    @BeforeEach
+    public void createFolder() throws IOException {
+        folder = Files.createTempDirectory("persistencyTest");
+    }
+
+    @AfterEach
+    public void deleteFolder() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(folder);
+    }
 
     /**
      * Testing if getLevel(String) returns an accurate level.
@@ -168,4 +191,377 @@ class PersistencyTest {
             assertEquals("", e.getMessage());
         }
     }
+
+    /**
+     * Testing if a level written in the binary format reads back the same as the JSON it came from.
+     *
+     * @see Persistency#getLevelFromBinary(java.nio.ByteBuffer)
+     */
+    @Test
+    public void test_5_binaryLevelRoundTrip() throws Exception {
+        String lvlString = """
+                {
+                    "chapStandingOn": "keyTile 1",
+                    "inventoryArray": ["0", "3"],
+                    "totalTime": 60,
+                    "width": 3,
+                    "levelNumber": 2,
+                    "height": 3,
+                    "elapsedTime": 1234,
+                    "tileArray": [
+                        "wallTile",
+                        "keyTile 2",
+                        "lockedDoorTile 2",
+                        "infoFeildTile Collect_the_chips",
+                        "chapTile 4",
+                        "treasureTile",
+                        "enemyTile 0:2,1:2,2:2",
+                        "exitLockTile",
+                        "exitTile"
+                    ]
+                }""";
+
+        Domain jsonDomain = new Domain();
+        ArrayList<ArrayList<Domain.Tile>> jsonTiles = new Persistency(null, jsonDomain).getLevelFromJSON(lvlString);
+
+        Path file = folder.resolve("level.bin");
+        BinaryLevel.write(file, new LevelHeader(3, 3, 2, 60, 1234), jsonTiles,
+                jsonDomain.getChap().getStandingOn(), jsonDomain.getChap().inventory);
+        assertTrue(BinaryLevel.isBinary(file));
+
+        Domain binDomain = new Domain();
+        assertSameBoard(jsonTiles, new Persistency(null, binDomain).getLevelFromBinary(BinaryLevel.map(file)));
+        assertEquals("keyTile 1", tileString(binDomain.getChap().getStandingOn()));
+        assertEquals(2, binDomain.getChap().inventory.size());
+        assertEquals(3, binDomain.getChap().inventory.get(1).iconIndex);
+    }
+
+    /**
+     * Testing if reading a JSON file a token at a time gives the same level as parsing it whole,
+     * including when the tiles come before the width.
+     *
+     * @see Persistency#getLevelFromJSONFile(Path)
+     */
+    @Test
+    public void test_6_getLevelFromJSONFile() throws Exception {
+        String lvlString = """
+                {
+                    "tileArray": [
+                        "wallTile",
+                        "keyTile 2",
+                        "infoFeildTile Mind_the_\\"gap\\"",
+                        "enemyTile 0:1,1:1",
+                        "chapTile 3",
+                        "freeTile",
+                    ],
+                    "chapStandingOn": "lockedDoorTile 1",
+                    "inventoryArray": ["2"],
+                    "totalTime": 5,
+                    "height": 2,
+                    "levelNumber": 1,
+                    "width": 3,
+                    "elapsedTime": 7
+                }""";
+        Path file = folder.resolve("level.json");
+        Files.writeString(file, lvlString);
+
+        Domain streamDomain = new Domain();
+        ArrayList<ArrayList<Domain.Tile>> streamTiles = new Persistency(null, streamDomain).getLevelFromJSONFile(file);
+
+        assertSameBoard(new Persistency(null, new Domain()).getLevelFromJSON(lvlString), streamTiles);
+        assertEquals("Mind the \"gap\"", ((Domain.InfoFeildTile) streamTiles.get(2).get(0)).info);
+        assertEquals("lockedDoorTile 1", tileString(streamDomain.getChap().getStandingOn()));
+        assertEquals(1, streamDomain.getChap().inventory.size());
+    }
+
+    /**
+     * Testing if a level saved as JSON version 2 reads back the same, whole and a token at a time.
+     *
+     * @see Persistency#levelToJSON(ArrayList, LevelHeader, int)
+     */
+    @Test
+    public void test_7_levelJSONVersion2() throws Exception {
+        Domain d = new Domain();
+        Persistency persistency = new Persistency(null, d);
+
+        ArrayList<ArrayList<Domain.Tile>> tiles = new ArrayList<ArrayList<Domain.Tile>>();
+        int wid = 5, hit = 3;
+        for (int i = 0; i < wid; i++) {
+            tiles.add(new ArrayList<Domain.Tile>());
+            for (int j = 0; j < hit; j++) {
+                if (i == 2 && j == 1) {
+                    tiles.get(i).add(d.new ChapTile(1));
+                } else if (i == 3 && j == 1) {
+                    tiles.get(i).add(d.new InfoFeildTile("Hello there"));
+                } else if (j == 1) {
+                    tiles.get(i).add(d.new FreeTile());
+                } else {
+                    tiles.get(i).add(d.new WallTile());
+                }
+            }
+        }
+
+        String lvlString = persistency.levelToJSON(tiles, new LevelHeader(wid, hit, 2, 180, 42), 2);
+
+        JSONObject lvl = new JSONObject(lvlString);
+        assertEquals(2, lvl.getInt("version"));
+        assertEquals("0*5", lvl.getJSONArray("tileRows").getString(0));
+        assertEquals("1*2 2 3 1", lvl.getJSONArray("tileRows").getString(1));
+
+        Path file = folder.resolve("level.json");
+        Files.writeString(file, lvlString);
+        assertSameBoard(tiles, new Persistency(null, new Domain()).getLevelFromJSON(lvlString));
+        assertSameBoard(tiles, new Persistency(null, new Domain()).getLevelFromJSONFile(file));
+    }
+
+    /**
+     * Testing if a save that only stores the cells changed since level 2 was loaded reads back as the same board.
+     *
+     * @see Persistency#levelDeltaJSON(String, ArrayList, LevelHeader)
+     */
+    @Test
+    public void test_8_levelDelta() throws Exception {
+        Domain d = new Domain();
+        Persistency persistency = new Persistency(null, d);
+        d.setPersistency(persistency);
+        d.loadLevel("2");
+        LevelHeader base = persistency.getLoadedHeader();
+
+        assertNull(persistency.levelDeltaJSON("2", d.getBoard(), base));
+        d.updateEnemies();
+        d.updateEnemies();
+
+        String lvlString = persistency.levelDeltaJSON("deltaTest", d.getBoard(), base);
+        JSONObject lvl = new JSONObject(lvlString);
+        assertEquals("2", lvl.getString("base"));
+        // each enemy left a cell and entered another
+        assertTrue(lvl.getJSONArray("changes").length() > 0);
+        assertTrue(lvl.getJSONArray("changes").length() <= 4 * d.getEnemies().size());
+
+        List<List<Domain.Tile>> expected = d.getBoard()
+                .subList(Domain.LEVEL_OFFSET, Domain.LEVEL_OFFSET + base.width()).stream()
+                .map(column -> column.subList(Domain.LEVEL_OFFSET, Domain.LEVEL_OFFSET + base.height())).toList();
+        Path file = folder.resolve("save.json");
+        Files.writeString(file, lvlString);
+        assertSameBoard(expected, new Persistency(null, new Domain()).getLevelFromJSON(lvlString));
+        assertSameBoard(expected, new Persistency(null, new Domain()).getLevelFromJSONFile(file));
+
+        String wrongBase = lvlString.replace(lvl.getString("baseHash"), "0".repeat(64));
+        assertThrows(org.json.JSONException.class, () -> new Persistency(null, new Domain()).getLevelFromJSON(wrongBase));
+    }
+
+    /**
+     * Testing if a level compressed with gzip, or as a bare zlib stream, reads back the same as the plain JSON.
+     *
+     * @see Compression#open(Path)
+     */
+    @Test
+    public void test_9_compressedLevel() throws Exception {
+        Persistency persistency = new Persistency(null, new Domain());
+        ArrayList<ArrayList<Domain.Tile>> tiles = persistency.getLevelFromJSONFile(Path.of("levels", "2.json"));
+        String lvlString = persistency.levelToJSON(tiles, persistency.getLoadedHeader(), 2);
+
+        java.io.ByteArrayOutputStream zlib = new java.io.ByteArrayOutputStream();
+        try (java.util.zip.DeflaterOutputStream out = new java.util.zip.DeflaterOutputStream(zlib)) {
+            out.write(lvlString.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        }
+
+        Path file = folder.resolve("level.json");
+        for (byte[] content : List.of(Compression.compress(lvlString, 1), Compression.compress(lvlString, 9), zlib.toByteArray())) {
+            assertTrue(content.length < lvlString.length());
+            Files.write(file, content);
+            assertTrue(Compression.isCompressed(file));
+            assertSameBoard(tiles, new Persistency(null, new Domain()).getLevelFromJSONFile(file));
+        }
+        assertFalse(Compression.isCompressed(Path.of("levels", "2.json")));
+    }
+
+    /**
+     * Testing that saves put in a SaveStore are listed and loaded from its index after it is reopened,
+     * that a write cut short is dropped, and that compaction keeps only the latest of each save.
+     *
+     * @see SaveStore
+     */
+    @Test
+    public void test_10_saveStore() throws Exception {
+        Path file = folder.resolve("saves.store");
+        SaveStore store = SaveStore.open(file);
+        assertTrue(store.list().isEmpty());
+        assertNull(store.loadExitState());
+
+        store.put(new SaveStore.Entry("first", 1, 1000, 11, 5000), "[1]".getBytes(), "level 1".getBytes(),
+                new byte[0], null);
+        store.put(new SaveStore.Entry("second", 2, 2000, 3, 90000), "[2]".getBytes(), "level 2".getBytes(),
+                new byte[] { 1, 2, 3 }, "exit second".getBytes());
+        store.put(new SaveStore.Entry("first", 1, 3000, 7, 20000), "[1, 1]".getBytes(), "level 1 again".getBytes(),
+                new byte[0], "exit first".getBytes());
+        long size = store.size();
+        store.close();
+
+        store = SaveStore.open(file);
+        assertEquals(List.of(new SaveStore.Entry("first", 1, 3000, 7, 20000), new SaveStore.Entry("second", 2, 2000, 3, 90000)),
+                store.list());
+        assertArrayEquals("[1, 1]".getBytes(), store.load("first").replay());
+        assertArrayEquals("level 2".getBytes(), store.load("second").level());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, store.load("second").thumbnail());
+        assertArrayEquals("exit first".getBytes(), store.loadExitState());
+        assertNull(store.load("third"));
+        store.close();
+
+        // a save that was being written when the game stopped, without the index after it
+        Files.write(file, new byte[] { 1, 0, 0, 0, 40, 'h', 'a', 'l', 'f' }, java.nio.file.StandardOpenOption.APPEND);
+        store = SaveStore.open(file);
+        assertEquals(size, store.size());
+        assertEquals(2, store.list().size());
+
+        store.compact();
+        assertTrue(store.size() < size);
+        assertEquals(store.liveBytes(), store.size());
+        store.close();
+
+        store = SaveStore.open(file);
+        assertEquals(2, store.list().size());
+        assertArrayEquals("level 1 again".getBytes(), store.load("first").level());
+        assertArrayEquals("[2]".getBytes(), store.load("second").replay());
+        store.close();
+    }
+
+    /**
+     * Testing that levels written to a LevelPack, as JSON and as binary, read back as they were written,
+     * with their table of contents, and that a damaged level is refused.
+     *
+     * @see LevelPack
+     */
+    @Test
+    public void test_11_levelPack() throws Exception {
+        byte[] json = Files.readAllBytes(Path.of("levels", "1.json"));
+        byte[] binary = { 9, 8, 7, 6, 5, 4, 3, 2, 1 };
+        LevelHeader header = new LevelHeader(17, 17, 2, 180, 0);
+
+        Path file = folder.resolve("levels.pack");
+        LevelPack.write(file, List.of(new LevelPack.Level("one", json, new LevelHeader(15, 15, 1, 60, 0), 11),
+                new LevelPack.Level("two", binary, header, 22)));
+
+        LevelPack pack = LevelPack.open(file);
+        assertEquals(2, pack.entries().size());
+        assertEquals("one", pack.entries().get(0).id());
+        assertEquals(17, pack.entry("two").width());
+        assertEquals(2, pack.entry("two").levelNumber());
+        assertEquals(22, pack.entry("two").treasures());
+        assertTrue(pack.entry("one").length() < json.length);
+        assertArrayEquals(json, pack.read("one"));
+        assertArrayEquals(binary, pack.read("two"));
+        assertNull(pack.read("three"));
+        pack.close();
+
+        byte[] damaged = Files.readAllBytes(file);
+        damaged[damaged.length - 1] ^= 1;
+        Files.write(file, damaged);
+        LevelPack damagedPack = LevelPack.open(file);
+        assertArrayEquals(json, damagedPack.read("one"));
+        assertThrows(java.io.IOException.class, () -> damagedPack.read("two"));
+        damagedPack.close();
+    }
+
+    /**
+     * Testing that the size, level number, time limit and treasure count of a level are read the same from
+     * JSON of both versions, binary and a level pack, without the app being needed.
+     *
+     * @see Persistency#getLevelInfo(String)
+     */
+    @Test
+    public void test_12_levelInfo() throws Exception {
+        assertEquals(new LevelInfo(12, 12, 1, 60, 11), Persistency.getLevelInfo("1"));
+        LevelInfo expected = new LevelInfo(17, 17, 2, 180, 22);
+        assertEquals(expected, Persistency.getLevelInfo("2"));
+        assertNull(Persistency.getLevelInfo("no such level"));
+
+        Domain d = new Domain();
+        Persistency persistency = new Persistency(null, d);
+        ArrayList<ArrayList<Domain.Tile>> tiles = persistency.getLevelFromJSONFile(Path.of("levels", "2.json"));
+        LevelHeader header = persistency.getLoadedHeader();
+
+        Path json = folder.resolve("level.json");
+        Files.writeString(json, persistency.levelToJSON(tiles, header, 2));
+        assertEquals(expected, Persistency.readLevelInfo(json));
+        Files.write(json, Compression.compress(persistency.levelToJSON(tiles, header, 1)));
+        assertEquals(expected, Persistency.readLevelInfo(json));
+
+        Path binary = folder.resolve("level.bin");
+        BinaryLevel.write(binary, header, tiles, d.getChap().getStandingOn(), d.getChap().inventory);
+        assertEquals(expected, Persistency.readLevelInfo(binary));
+
+        Path pack = folder.resolve("levels.pack");
+        LevelPack.write(pack, List.of(new LevelPack.Level("2", Files.readAllBytes(binary), header, 22)));
+        LevelPack levelPack = LevelPack.open(pack);
+        assertEquals(expected, levelPack.entry("2").info());
+        levelPack.close();
+    }
+
+    /**
+     * Testing that a move journal reopened after a crash keeps the moves that were written whole, drops one
+     * cut short or damaged, and numbers new moves on from the last it kept, and that compacting it after a
+     * checkpoint keeps only the moves the checkpoint does not include.
+     *
+     * @see MoveJournal
+     */
+    @Test
+    public void test_13_moveJournal() throws Exception {
+        Path file = folder.resolve("moves.journal");
+        MoveJournal journal = MoveJournal.open(null, file);
+        journal.append("up", 100, 2);
+        journal.append("left", 200, 2);
+        journal.append("down", 300, 2);
+        journal.close();
+        MoveJournal.Entry up = new MoveJournal.Entry(1, "up", 100, 2);
+        MoveJournal.Entry left = new MoveJournal.Entry(2, "left", 200, 2);
+        assertEquals(List.of(up, left, new MoveJournal.Entry(3, "down", 300, 2)), MoveJournal.readEntries(file));
+
+        // the last move was being written when the game stopped
+        byte[] written = Files.readAllBytes(file);
+        Files.write(file, java.util.Arrays.copyOf(written, written.length - 3));
+        journal = MoveJournal.open(null, file);
+        journal.append("right", 400, 2);
+        journal.close();
+        MoveJournal.Entry right = new MoveJournal.Entry(3, "right", 400, 2);
+        assertEquals(List.of(up, left, right), MoveJournal.readEntries(file));
+
+        // a move that fails its check, the moves after it cannot be trusted either. The second move's time
+        // starts after the 6 byte header, the 27 bytes of the first move and its own 8 byte number.
+        byte[] damaged = Files.readAllBytes(file);
+        damaged[6 + 27 + 8] ^= 1;
+        Files.write(file, damaged);
+        assertEquals(List.of(up), MoveJournal.readEntries(file));
+        Files.write(file, written);
+
+        assertEquals(1, MoveJournal.compact(file, 2));
+        assertEquals(List.of(new MoveJournal.Entry(3, "down", 300, 2)), MoveJournal.readEntries(file));
+        journal = MoveJournal.open(null, file);
+        journal.append("up", 500, 2);
+        journal.close();
+        assertEquals(4, MoveJournal.readEntries(file).get(1).seq());
+    }
+
+    /**
+     * Checks that two boards are the same size and hold the same tiles, compared as they are saved.
+     */
+    private static void assertSameBoard(List<? extends List<Domain.Tile>> expected,
+            List<? extends List<Domain.Tile>> actual) throws ReflectiveOperationException {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).size(), actual.get(i).size());
+            for (int j = 0; j < expected.get(i).size(); j++) {
+                assertEquals(tileString(expected.get(i).get(j)), tileString(actual.get(i).get(j)));
+            }
+        }
+    }
+
+    /**
+     * returns a tile as it is written to a level file
+     */
+    private static String tileString(Domain.Tile tile) throws ReflectiveOperationException {
+        Method getStringFromTile = Persistency.class.getDeclaredMethod("getStringFromTile", Domain.Tile.class);
+        getStringFromTile.setAccessible(true);
+        return (String) getStringFromTile.invoke(new Persistency(null, new Domain()), tile);
+    }
 }
@@ -2,11 +2,9 @@ package src;
 
 import javax.swing.*;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.BufferedReader;
 import java.io.IOException;
-import javax.swing.filechooser.FileNameExtensionFilter;
+import java.io.Reader;
 import javax.swing.Timer;
 import java.util.ArrayList;
 import java.util.List;
@@ -26,6 +24,9 @@ import org.json.JSONException;
  */
 public class Recorder {
 
+    // How often the board is asked to repaint while chap walks during a replay
+    private static final long REPAINT_MILLIS = 8;
+
     // List to store recorded player moves
     private List<Move> storedMoves;
 
@@ -226,18 +227,11 @@ public class Recorder {
 
                     elapsedTime = System.currentTimeMillis() - startTime;
 
-                    app.updateBackgroundPanel(false, "unset", 0, false);
+                    app.updateBackgroundPanel(false, "unset");
 
                     while (elapsedTime >= currentMove.getTime() && !isCancelled()) {
                         if (app.executeMove(currentMove.getDirection(), false)) {
-                            for (int i = 0; i < 30; i += 2) {
-                                app.updateBackgroundPanel(true, currentMove.getDirection(), i, false);
-                                try {
-                                    Thread.sleep(20);
-                                } catch (InterruptedException e) {
-                                }
-                            }
-
+                            animateMove(currentMove.getDirection(), App.MOVE_MILLIS);
                         }
                         // Check if the level has changed from 1 to 2
                         if (currentMove.getLevel() == 2 && switching == false) {
@@ -250,7 +244,7 @@ public class Recorder {
                         }
 
                         app.executeMove(currentMove.getDirection(), true);
-                        app.updateBackgroundPanel(false, currentMove.getDirection(), 0, false);
+                        app.updateBackgroundPanel(false, currentMove.getDirection());
 
                         elapsedTime = System.currentTimeMillis() - startTime;
                         moveNum++;
@@ -351,18 +345,31 @@ public class Recorder {
      */
     public void executeMove(String direction) {
         if (app.executeMove(direction, false)) {
-            for (int i = 0; i < 30; i += 2) {
-                app.updateBackgroundPanel(true, direction, i, false);
-                try {
-                    Thread.sleep(20);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
+            animateMove(direction, App.MOVE_MILLIS);
         }
 
         app.executeMove(direction, true);
-        app.updateBackgroundPanel(false, direction, 0, false);
+        app.updateBackgroundPanel(false, direction);
+    }
+
+    /**
+     * Shows chap walking a tile for the given time, then returns so the move can be made.
+     * Frames work out where chap is from the clock, this only keeps them coming.
+     *
+     * @param direction The direction of the move.
+     * @param millis How long the walk takes.
+     */
+    private void animateMove(String direction, long millis) {
+        app.animateReplayMove(direction, millis);
+        long end = System.nanoTime() + millis * 1_000_000L;
+        while (System.nanoTime() < end) {
+            app.repaintBoard();
+            try {
+                Thread.sleep(Math.max(1, Math.min(REPAINT_MILLIS, (end - System.nanoTime()) / 1_000_000L)));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
     }
 
     /**
@@ -414,20 +421,14 @@ public class Recorder {
 
                     elapsedTime = slowedDownTime + startTime -1;
 
-                    app.updateBackgroundPanel(false, "unset", 0, false);
+                    app.updateBackgroundPanel(false, "unset");
                     //System.out.println("Current move time = " + currentMove.getTime());
                     //System.out.println("Current elapsed time = " + elapsedTime);
                     while (elapsedTime >= currentMove.getTime() && !isCancelled()) {
                         //System.out.println("FIRST WHILE LOOP WORKING");
                         if (app.executeMove(currentMove.getDirection(), false)) {
                             //System.out.println("FIRST FOR LOOP WORKING");
-                            for (int i = 0; i < 30; i += 2) {
-                                app.updateBackgroundPanel(true, currentMove.getDirection(), i, false);
-                                try {
-                                    Thread.sleep(20 / (1 - app.getSelectedSpeed()/5));
-                                } catch (InterruptedException e) {
-                                }
-                            }
+                            animateMove(currentMove.getDirection(), App.MOVE_MILLIS / (1 - app.getSelectedSpeed()/5));
                         }
                         // Check if the level has changed from 1 to 2
                         if (currentMove.getLevel() == 2 && switching == false) {
@@ -440,7 +441,7 @@ public class Recorder {
                         }
 
                         app.executeMove(currentMove.getDirection(), true);
-                        app.updateBackgroundPanel(false, currentMove.getDirection(), 0, false);
+                        app.updateBackgroundPanel(false, currentMove.getDirection());
 
                         elapsedTime = slowedDownTime;
                         moveNum++;
@@ -498,115 +499,126 @@ public class Recorder {
     }
 
     /**
-     * Save recorded moves to a JSON file.
+     * Asks the player for the name to save the game under.
+     *
+     * @return The name without the ".json" extension, or null if the player cancelled.
      */
-    public String saveToFile(JFrame frame) {
-        // Determine the current working directory of the game
-        String gameDirectory = System.getProperty("user.dir");
-
-        // Create a "recorderfiles" directory if it doesn't exist
-        File recorderFilesDir = new File(gameDirectory, "recorderfiles");
-        if (!recorderFilesDir.exists()) {
-            recorderFilesDir.mkdirs(); // Create the directory and its parent directories if necessary
-        }
-
+    public String chooseSaveName(JFrame frame) {
         String selectedFilename = JOptionPane.showInputDialog(frame, "Enter a filename:");
 
         // Ensure the selected filename is not null
-        if (selectedFilename != null) {
-            if (!selectedFilename.endsWith(".json")) {
-                selectedFilename += ".json";
-            }
+        if (selectedFilename == null || selectedFilename.isBlank()) {
+            return null;
+        }
 
-            // Construct the full path by combining the directory path and selected filename
-            String fullPath = recorderFilesDir.getAbsolutePath() + File.separator + selectedFilename;
+        // Return the selected filename with the ".json" extension removed
+        return selectedFilename.endsWith(".json")
+            ? selectedFilename.substring(0, selectedFilename.length() - ".json".length()) : selectedFilename;
+    }
 
-            JSONArray movesArray = new JSONArray(); // Create a JSON array to hold recorded moves
-            for (Move move : storedMoves) {
-                JSONObject moveObject = new JSONObject(); // Create a JSON object for each move
-                moveObject.put("direction", move.getDirection()); // Add the move's direction to the JSON object
-                moveObject.put("timestamp", move.getTime()); // Add the move's timestamp to the JSON object
-                moveObject.put("level", move.getLevel());
-                movesArray.put(moveObject); // Add the JSON object to the array
-            }
+    /**
+     * Builds the JSON text of the recorded moves, as it is saved in a replay file.
+     */
+    public String toJSON() {
+        return toJSON(storedMoves);
+    }
 
-            try (FileWriter fileWriter = new FileWriter(fullPath)) {
-                fileWriter.write(movesArray.toString()); // Write the JSON array to the file as a string
-            } catch (IOException e) {
-                e.printStackTrace(); // Handle any potential IO errors
-            }
+    /**
+     * Copies the moves recorded so far, so toJSON(List) can turn them into JSON on another thread
+     * while more moves are recorded.
+     *
+     * @return The moves, the list does not change.
+     */
+    public List<Move> copyMoves() {
+        return List.copyOf(storedMoves);
+    }
 
-            // Return the selected filename with the ".json" extension removed
-            return selectedFilename.replace(".json", "");
-        } else {
-            // Handle the case when selectedFilename is null
-            return "You must specify a filename for the saved file"; 
+    /**
+     * Builds the JSON text of a list of moves, as it is saved in a replay file.
+     *
+     * @param moves The moves, in the order they were made.
+     */
+    public static String toJSON(List<Move> moves) {
+        JSONArray movesArray = new JSONArray(); // Create a JSON array to hold recorded moves
+        for (Move move : moves) {
+            JSONObject moveObject = new JSONObject(); // Create a JSON object for each move
+            moveObject.put("direction", move.getDirection()); // Add the move's direction to the JSON object
+            moveObject.put("timestamp", move.getTime()); // Add the move's timestamp to the JSON object
+            moveObject.put("level", move.getLevel());
+            movesArray.put(moveObject); // Add the JSON object to the array
         }
+        return movesArray.toString();
     }
 
     /**
-     * Load recorded moves from a JSON file in the same directory as the saved files.
+     * Load recorded moves from a saved game chosen from the list of saves.
      */
     public String loadFromFile(JFrame frame,String type) {
-        String gameDirectory = System.getProperty("user.dir");
-        File recorderFilesDir = new File(gameDirectory, "recorderfiles");
+        String saveName = SaveChooser.choose(frame, "Load Recorded Moves"); // Pick a save from the save store's index
 
-        JFileChooser fileChooser = new JFileChooser(recorderFilesDir);
-        fileChooser.setDialogTitle("Load Recorded Moves"); // Set the dialog title
+        if (saveName != null) {
+            loadFromString(saveName);
 
-        // Filter to allow only JSON files
-        FileNameExtensionFilter jsonFilter = new FileNameExtensionFilter("JSON Files (*.json)", "json");
-        fileChooser.setFileFilter(jsonFilter);
+            // Set the game to level 1 before starting the replay
+            app.setLevel1();
 
-        int userChoice = fileChooser.showOpenDialog(frame);
+            switch (type){
+                case "auto" : autoReplayGame();
+                    break;
+                case "step" : stepByStepReplay();
+                    break;
+                case "speed" : changeSpeed();
+                    break;
+            }
+            return saveName;
+        }
+        return null;
+    }
 
-        if (userChoice == JFileChooser.APPROVE_OPTION) {
-            File selectedFile = fileChooser.getSelectedFile();
+    /**
+     * Replace the stored moves with the moves in a replay file, without starting a replay.
+     * The file may be plain JSON or compressed.
+     *
+     * @param file The replay JSON file to read.
+     * @throws IOException If the file cannot be read.
+     */
+    public void loadMoves(File file) throws IOException {
+        loadMoves(Compression.reader(file.toPath())); // Inflate the file as it is read if it is compressed
+    }
 
-            try {
-                FileReader fileReader = new FileReader(selectedFile); // Create a file reader for the selected JSON file
-                BufferedReader bufferedReader = new BufferedReader(fileReader); // Create a buffered reader for efficient reading
-                StringBuilder jsonText = new StringBuilder(); // Create a string builder to store the JSON content
-                String line;
-                while ((line = bufferedReader.readLine()) != null) {
-                    jsonText.append(line); // Read each line of the JSON file and append it to the string builder
-                }
-                JSONArray movesArray = new JSONArray(jsonText.toString()); // Create a JSON array from the loaded JSON content
-
-                // Clear existing moves before loading
-                storedMoves.clear();
-
-                // Iterate through the JSON array and populate the storedMoves list
-                for (int i = 0; i < movesArray.length(); i++) {
-                    JSONObject moveObject = movesArray.getJSONObject(i); // Get each JSON object representing a move
-                    String direction = moveObject.getString("direction"); // Retrieve the direction from the JSON object
-                    long timestamp = moveObject.getLong("timestamp"); // Retrieve the timestamp from the JSON object
-                    int level = moveObject.getInt("level");
-                    storedMoves.add(new Move(direction, timestamp, level)); // Create a new Move object and add it to the list
-                }
+    /**
+     * Replace the stored moves with the moves in a replay, without starting a replay.
+     *
+     * @param reader The replay JSON, closed once it is read.
+     * @throws IOException If the replay cannot be read.
+     */
+    public void loadMoves(Reader reader) throws IOException {
+        StringBuilder jsonText = new StringBuilder(); // Create a string builder to store the JSON content
+        try (BufferedReader bufferedReader = new BufferedReader(reader)) { // Create a buffered reader
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                jsonText.append(line); // Read each line of the JSON file and append it to the string builder
+            }
+        }
 
-                // Set the game to level 1 before starting the replay
-                app.setLevel1();
+        JSONArray movesArray = new JSONArray(jsonText.toString()); // Create a JSON array from the loaded JSON content
 
-                switch (type){
-                    case "auto" : autoReplayGame();
-                        break;
-                    case "step" : stepByStepReplay();
-                        break;
-                    case "speed" : changeSpeed();
-                        break;
-                }
+        // Clear existing moves before loading
+        storedMoves.clear();
 
-            } catch (IOException e) {
-                e.printStackTrace(); // Handle any potential IO errors
-            }
-            return selectedFile.toString().replace(".json", "");
+        // Iterate through the JSON array and populate the storedMoves list
+        for (int i = 0; i < movesArray.length(); i++) {
+            JSONObject moveObject = movesArray.getJSONObject(i); // Get each JSON object representing a move
+            String direction = moveObject.getString("direction"); // Retrieve the direction from the JSON object
+            long timestamp = moveObject.getLong("timestamp"); // Retrieve the timestamp from the JSON object
+            int level = moveObject.getInt("level");
+            storedMoves.add(new Move(direction, timestamp, level)); // Create a new Move object and add it to the list
         }
-        return null;
     }
 
     /**
      * Load recorded moves from a String in app.
+     * The replay is read from the save store, or from its file if it was saved before there was one.
      */
     public String loadFromString(String fileName) {
         String gameDirectory = System.getProperty("user.dir");
@@ -614,31 +626,13 @@ public class Recorder {
         String filePath = recorderFilesDir + File.separator + fileName + ".json";
 
         try {
+            SaveStore.StoredSave save = Persistency.findSave(fileName); // Look the save up in the save store's index
             File jsonFile = new File(filePath);
 
-            if (jsonFile.exists() && jsonFile.isFile()) {
-                FileReader fileReader = new FileReader(jsonFile); // Create a file reader for the specified JSON file
-                BufferedReader bufferedReader = new BufferedReader(fileReader); // Create a buffered reader for efficient reading
-                StringBuilder jsonText = new StringBuilder(); // Create a string builder to store the JSON content
-                String line;
-                while ((line = bufferedReader.readLine()) != null) {
-                    jsonText.append(line); // Read each line of the JSON file and append it to the string builder
-                }
-
-                JSONArray movesArray = new JSONArray(jsonText.toString()); // Create a JSON array from the loaded JSON content
-
-                // Clear existing moves before loading
-                storedMoves.clear();
-
-                // Iterate through the JSON array and populate the storedMoves list
-                for (int i = 0; i < movesArray.length(); i++) {
-                    JSONObject moveObject = movesArray.getJSONObject(i); // Get each JSON object representing a move
-                    String direction = moveObject.getString("direction"); // Retrieve the direction from the JSON object
-                    long timestamp = moveObject.getLong("timestamp"); // Retrieve the timestamp from the JSON object
-                    int level = moveObject.getInt("level");
-                    storedMoves.add(new Move(direction, timestamp, level)); // Create a new Move object and add it to the list
-                }
-
+            if (save != null) {
+                loadMoves(Compression.reader(save.replay()));
+            } else if (jsonFile.exists() && jsonFile.isFile()) {
+                loadMoves(jsonFile);
             }
         } catch (IOException | JSONException e) {
             e.printStackTrace(); // Handle any potential IO or JSON parsing errors
@@ -3,6 +3,8 @@ package src;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
 
@@ -86,5 +88,31 @@ public class RecorderTest {
         // Check if the level is set correctly
         assertEquals(level, recorder.getLevel());
     }
-    
+
+    /**
+     * Test that a replay saved compressed loads the same moves as the plain JSON it was made from.
+     */
+    @Test
+    public void testLoadCompressedMoves() throws Exception {
+        recorder.storeMovesMade("right", 1200, 1);
+        recorder.storeMovesMade("down", 1450, 1);
+        recorder.storeMovesMade("left", 90210, 2);
+
+        Path file = Files.createTempFile("replay", ".json");
+        try {
+            Files.write(file, Compression.compress(recorder.toJSON(), 9));
+            assertTrue("The replay should be written compressed", Compression.isCompressed(file));
+
+            Recorder loaded = new Recorder(app);
+            loaded.loadMoves(file.toFile());
+            List<Recorder.Move> moves = loaded.getStoredMoves();
+            assertEquals(3, moves.size());
+            assertEquals("The last move should be 'left'", "left", moves.get(2).getDirection());
+            assertEquals(90210, moves.get(2).getTime());
+            assertEquals(2, moves.get(2).getLevel());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
 }
@@ -0,0 +1,179 @@
+package src;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Draws frames of the board view on its own thread, so a slow frame never holds up the EDT.
+ *
+ * When a frame is asked for the worker takes a snapshot of the game under the render lock, then
+ * releases the lock and composes the frame into whichever of its two buffers is not on show.
+ * The finished buffer is swapped in with a single atomic exchange and the EDT only ever draws
+ * the latest finished buffer. A buffer being drawn by the EDT is marked as such, the worker
+ * waits for that mark to clear before reusing it, the EDT never waits on the worker.
+ * Requests made while a frame is being drawn are merged into one more frame.
+ *
+ * @author lalatheo
+ */
+public class RenderWorker implements Runnable {
+
+    /**
+     * Takes the snapshot the next frame is drawn from, called with the render lock held.
+     */
+    public interface FrameSource {
+        Renderer.FrameState capture();
+    }
+
+    // what is being done with a buffer, the worker draws into it or the EDT draws it on screen
+    private static final int IDLE = 0;
+    private static final int WRITING = 1;
+    private static final int READING = 2;
+
+    /**
+     * one of the two frame buffers
+     */
+    private static final class Buffer {
+        final BufferedImage image;
+        final int[] pixels;
+        final AtomicInteger state = new AtomicInteger(IDLE);
+
+        Buffer(int width, int height) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+    }
+
+    private final Object lock;
+    private final FrameSource source;
+    private final Runnable onFrame;
+
+    // the latest finished frame, drawn by the EDT
+    private final AtomicReference<Buffer> front = new AtomicReference<>();
+    // the frame the worker draws into next, only touched by the worker
+    private Buffer back;
+
+    private final AtomicBoolean requested = new AtomicBoolean(false);
+    private volatile boolean running = false;
+    private Thread thread;
+
+    /**
+     * Constructor
+     *
+     * @param lock the lock that guards the game while a snapshot is taken
+     * @param source takes the snapshot each frame is drawn from
+     * @param onFrame called on the worker thread when a new frame is ready to be shown
+     */
+    public RenderWorker(Object lock, FrameSource source, Runnable onFrame) {
+        this.lock = lock;
+        this.source = source;
+        this.onFrame = onFrame;
+    }
+
+    /**
+     * starts the worker thread
+     */
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "render-worker");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * stops the worker thread once it has finished the frame it is on
+     */
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * asks for a new frame, returns straight away
+     */
+    public void requestFrame() {
+        if (!requested.getAndSet(true) && thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * draws the latest finished frame with its top left corner at x, y, never waits for the worker
+     *
+     * @return false if there is no finished frame to draw yet
+     */
+    public boolean drawLatest(Graphics g, int x, int y) {
+        // the worker can claim the buffer between reading front and marking it, the new front is finished then
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Buffer shown = front.get();
+            if (shown == null) {
+                return false;
+            }
+            if (shown.state.compareAndSet(IDLE, READING)) {
+                try {
+                    g.drawImage(shown.image, x, y, null);
+                } finally {
+                    shown.state.set(IDLE);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            if (!requested.getAndSet(false)) {
+                LockSupport.park(this);
+                continue;
+            }
+            try {
+                renderFrame();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * takes a snapshot, composes it into the back buffer and swaps it to the front
+     */
+    private void renderFrame() {
+        Renderer.FrameState frame;
+        synchronized (lock) {
+            frame = source.capture();
+        }
+
+        Buffer target = back;
+        if (target == null || target.image.getWidth() != frame.getWidth() || target.image.getHeight() != frame.getHeight()) {
+            // the old buffer may still be on screen, it is left to the EDT and dropped
+            target = new Buffer(frame.getWidth(), frame.getHeight());
+        }
+        // the EDT may still be drawing the buffer that was on show before the last swap
+        while (!target.state.compareAndSet(IDLE, WRITING)) {
+            Thread.onSpinWait();
+        }
+        try {
+            frame.compose(target.pixels);
+            Graphics2D g = target.image.createGraphics();
+            frame.drawOverlays(g, 0, 0);
+            g.dispose();
+        } finally {
+            target.state.set(IDLE);
+        }
+
+        back = front.getAndSet(target);
+        onFrame.run();
+    }
+}
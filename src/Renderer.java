@@ -3,14 +3,11 @@ package src;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
-import javax.imageio.ImageIO;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
+import java.awt.image.DataBufferInt;
 
 
 
@@ -24,59 +21,304 @@ public class Renderer{
     private final int TOPLEFTCORNER = 32;
     private final int TILESIZE = 32;
     private final int HOWMANYTILES = 9; //9x9
+    // tile sizes the view can be zoomed to, from 2x magnification down, smaller still only for the overview
+    private static final int[] ZOOM_LEVELS = {64, 48, 32, 24, 16, 12, 8, 6, 4, 3, 2, 1};
+    // largest board image kept between frames, bigger boards are drawn tile by tile from the visible cells
+    private static final int MAX_MASK_PIXELS = 4096 * 4096;
 
     private Domain domain;
     private Domain.ChapTile theChap;
     private ArrayList<ArrayList<Domain.Tile>> board;
-    private BufferedImage spritesheet;
     private HashMap<String, BufferedImage> chapImages;
+    // chap's walking images, made once and shared by every renderer
+    private static final HashMap<String, BufferedImage> SHARED_CHAP_IMAGES = new HashMap<>();
+    private PerformanceHud hud;
+
+    // the current zoom and the size of the board view in pixels
+    private int tileSize = TILESIZE;
+    private int viewportWidth = TILESIZE * HOWMANYTILES;
+    private int viewportHeight = TILESIZE * HOWMANYTILES;
+    private final SpriteCache sprites = new SpriteCache();
+
+    // every sprite packed into one int array per tile size, so cells are drawn by copying rows of ints
+    private final HashMap<Integer, SpriteAtlas> atlases = new HashMap<>();
+    private SpriteAtlas atlas;
+
+    // the whole board drawn at the current zoom, kept between frames and only redrawn where cells changed
+    private BufferedImage mask;
+    private int[] maskPixels;
+    private int maskTileSize = 0;
+    // the board view composed here before it is drawn onto the panel, when drawing straight to a graphics
+    private BufferedImage view;
+    private int[] viewPixels;
+    private Domain.DirtyCursor dirtyCursor;
+
+    // optional in game minimap, updated from changed cells only
+    private static final int MINIMAP_SIZE = 96;
+    private static final int THUMBNAIL_SIZE = 160;
+    private Minimap minimap;
+    private boolean minimapVisible = false;
 
     
     
-    private Clip backgroundClip;
-    private Clip backgroundClip2;
-    private Clip loseClip;
-    private Clip keyClip;
-    private Clip doorClip;
-    private Clip beepClip;
-    private Clip winClip;
-    private Clip infoClip;
+    private static final String MUSIC = "game-music-loop.wav";
+    private static final String MUSIC_2 = "game-music-loop2.wav";
+    private static final String KEY_SFX = "key-sfx.wav";
+    private static final String LOSE_SFX = "lose-sfx.wav";
+    private static final String DOOR_SFX = "door-sfx.wav";
+    private static final String BEEP_SFX = "beep-sfx.wav";
+    private static final String WIN_SFX = "winning-sfx.wav";
+    private static final String INFO_SFX = "info-sfx.wav";
+
+    // background music is streamed from disk, one track at a time
+    private MusicPlayer music;
+
+    // sound effects are mixed into one output line, so overlapping plays do not cut each other off
+    private AudioMixer mixer;
+    private AudioMixer.Samples loseSound;
+    private AudioMixer.Samples keySound;
+    private AudioMixer.Samples doorSound;
+    private AudioMixer.Samples beepSound;
+    private AudioMixer.Samples winSound;
+    private AudioMixer.Samples infoSound;
 
     /**
      * Constructor, set up of the chapImages, board, and audio
      */
     public Renderer(Domain domain) {
+        this(domain, true);
+    }
+
+    /**
+     * Constructor, set up of the chapImages, board, and optionally audio
+     * 
+     * @param withAudio false when nothing will be played, for example when rendering offscreen
+     */
+    public Renderer(Domain domain, boolean withAudio) {
         this.domain = domain;
         this.board = domain.getBoard();
         this.chapImages = new HashMap<>();
         this.theChap = domain.getChap();
+        this.dirtyCursor = domain.newDirtyCursor();
         
         initializeImages();
-        initializeAudio();
+        if(withAudio){
+            initializeAudio();
+        }
+    }
+
+    /**
+     * sets the performance overlay drawn over the board, null for none
+     */
+    public void setHud(PerformanceHud hud) {
+        this.hud = hud;
+    }
+
+    /**
+     * shows or hides the minimap in the corner of the board view
+     */
+    public void setMinimapVisible(boolean visible) {
+        this.minimapVisible = visible;
+    }
+
+    /**
+     * draws a downsampled picture of a whole board, at 1 to 4 pixels per tile, used for save thumbnails
+     */
+    public static BufferedImage renderThumbnail(ArrayList<ArrayList<Domain.Tile>> board) {
+        return Minimap.render(board, Minimap.scaleFor(board.size(), board.get(0).size(), THUMBNAIL_SIZE));
+    }
+
+    /**
+     * returns where on the game panel the board view starts, in pixels
+     */
+    public int getViewportOrigin() {
+        return TOPLEFTCORNER;
+    }
+
+    /**
+     * returns the width of the board view, in pixels
+     */
+    public int getViewportWidth() {
+        return viewportWidth;
+    }
+
+    /**
+     * returns the height of the board view, in pixels
+     */
+    public int getViewportHeight() {
+        return viewportHeight;
+    }
+
+    /**
+     * sets how many pixels of the game panel the board view covers, the view keeps its top left corner
+     */
+    public void setViewportSize(int width, int height) {
+        this.viewportWidth = Math.max(TILESIZE, width);
+        this.viewportHeight = Math.max(TILESIZE, height);
+    }
+
+    /**
+     * returns how many pixels wide a tile is drawn at the current zoom
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * sets the zoom as the size tiles are drawn at, between 1 pixel and 2x magnification
+     */
+    public void setTileSize(int size) {
+        this.tileSize = Math.max(1, Math.min(ZOOM_LEVELS[0], size));
+    }
+
+    /**
+     * zooms in one level, up to 2x magnification
+     */
+    public void zoomIn() {
+        for (int i = ZOOM_LEVELS.length - 1; i >= 0; i--) {
+            if (ZOOM_LEVELS[i] > tileSize) {
+                tileSize = ZOOM_LEVELS[i];
+                return;
+            }
+        }
+    }
+
+    /**
+     * zooms out one level, the furthest out is the overview where the whole board fits in the view
+     */
+    public void zoomOut() {
+        int overview = getOverviewTileSize();
+        for (int level : ZOOM_LEVELS) {
+            if (level < tileSize && level > overview) {
+                tileSize = level;
+                return;
+            }
+        }
+        tileSize = Math.min(tileSize, overview);
+    }
+
+    /**
+     * returns the largest tile size at which the whole board fits in the view, at least 1 pixel
+     */
+    public int getOverviewTileSize() {
+        int fit = Math.min(viewportWidth / board.size(), viewportHeight / board.get(0).size());
+        return Math.max(1, Math.min(TILESIZE, fit));
     }
 
     /**
      * method for the renderer logic, stuff like maze, character, objects creation will be here
      * 
      * @param g 
+     * @param moveProgress how far chap is through walking to the next tile, from 0 to 1
+     * @param enemyProgress how far the enemies are through walking to the tile they last moved to, from 0 to 1
      */
-    public void repaint(Graphics g, boolean animating, String move, int pixel, boolean updateBackground) {
-        if(updateBackground){
-            backgroundAnimationUpdate();
+    public void repaint(Graphics g, boolean animating, String move, float moveProgress, float enemyProgress) {
+        FrameState frame = capture(animating, move, moveProgress, enemyProgress);
+        if (view == null || view.getWidth() != frame.getWidth() || view.getHeight() != frame.getHeight()) {
+            view = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_INT_RGB);
+            viewPixels = ((DataBufferInt) view.getRaster().getDataBuffer()).getData();
         }
-        
-        //its 9 for how many tile fit in the screen
-        BufferedImage mask = new BufferedImage(board.get(0).size()*32, board.size()*32, BufferedImage.TYPE_INT_ARGB);
-        Graphics maskGraphics = mask.getGraphics();
-        
-        for (int i = 0; i < board.get(0).size(); i++) {
-            for (int j = 0; j < board.size(); j++) {
-                maskGraphics.drawImage(board.get(i).get(j).getIcon()
-                , i * 32
-                , j * 32, null);
-            }
+        frame.compose(viewPixels);
+        g.drawImage(view, TOPLEFTCORNER, TOPLEFTCORNER, null);
+        frame.drawOverlays(g, TOPLEFTCORNER, TOPLEFTCORNER);
+    }
+
+    /**
+     * What one frame of the board view shows, taken from the game while the render lock is held.
+     * It keeps everything it needs, sprites as their place in the atlas, so it can be drawn once the lock
+     * is released without looking at the game again. Frames are drawn on the thread that captured them.
+     */
+    public final class FrameState {
+        private final int width;
+        private final int height;
+        private final int drawingX;
+        private final int drawingY;
+        private final int boardWidth;
+        private final int boardHeight;
+        private final int size;
+        private final SpriteAtlas frameAtlas;
+        private final int[] boardPixels;
+        // atlas indices of the visible cells row by row, for boards without a cached image
+        private final int[] cells;
+        private final int firstX;
+        private final int firstY;
+        private final int columns;
+        // board x, y and atlas index of each sprite drawn over the cells, in drawing order
+        private final int[] sprites;
+        private final int spriteCount;
+        private final BufferedImage map;
+
+        private FrameState(int drawingX, int drawingY, int[] cells, int firstX, int firstY, int columns,
+                int[] sprites, int spriteCount, BufferedImage map) {
+            this.width = viewportWidth;
+            this.height = viewportHeight;
+            this.drawingX = drawingX;
+            this.drawingY = drawingY;
+            this.boardWidth = board.size() * tileSize;
+            this.boardHeight = board.get(0).size() * tileSize;
+            this.size = tileSize;
+            this.frameAtlas = atlas;
+            this.boardPixels = maskPixels;
+            this.cells = cells;
+            this.firstX = firstX;
+            this.firstY = firstY;
+            this.columns = columns;
+            this.sprites = sprites;
+            this.spriteCount = spriteCount;
+            this.map = map;
+        }
+
+        /**
+         * returns the width of the board view in pixels
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * returns the height of the board view in pixels
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * draws the board view into a frame buffer of getWidth() x getHeight() pixels stored row by row
+         */
+        public void compose(int[] dst) {
+            composeFrame(this, dst);
+        }
+
+        /**
+         * draws the minimap and the performance overlay over the frame, once it is on screen at x, y
+         */
+        public void drawOverlays(Graphics g, int x, int y) {
+            drawFrameOverlays(this, g, x, y);
+        }
+    }
+
+    /**
+     * brings the cached board up to date with the game and takes what the next frame of the board view shows
+     * must be called with the render lock held, the frame it returns can be drawn after the lock is released
+     *
+     * @param moveProgress how far chap is through walking to the next tile, from 0 to 1
+     * @param enemyProgress how far the enemies are through walking to the tile they last moved to, from 0 to 1
+     */
+    public FrameState capture(boolean animating, String move, float moveProgress, float enemyProgress) {
+        if(hud != null){
+            hud.beginFrame();
+        }
+
+        // bring the cached board up to date, only the changed cells are redrawn
+        if(maskTileSize != tileSize || !dirtyCursor.drain(this::drawCell)){
+            redrawBoard();
         }
+        // chap's icon changes with the direction he faces without his cell changing
+        Domain.Coordinates chapCell = theChap.getChapCoordinates();
+        drawCell(chapCell.x(), chapCell.y());
         
+        // chap and the camera are drawn part way to the next tile, so the walk is as smooth as the frame rate allows
+        int pixel = animating ? Math.round(moveProgress * tileSize) : 0;
          int calcPixelX = pixel;
         int calcPixelY = pixel;
         
@@ -97,94 +339,238 @@ public class Renderer{
                 calcPixelX = 0;
                 break;
          }
-        
-         int drawingX = ((theChap.getChapCoordinates().x()-4)*32)+calcPixelX;
-         int drawingY = ((theChap.getChapCoordinates().y()-4)*32)+calcPixelY;
 
-         drawingX = Math.max(0, Math.min(drawingX, mask.getWidth() - 32 * 9));
-         drawingY = Math.max(0, Math.min(drawingY, mask.getHeight() - 32 * 9));
-        
-         BufferedImage crop = mask.getSubimage(drawingX, drawingY, TILESIZE * HOWMANYTILES, TILESIZE * HOWMANYTILES);
-        
-         g.drawImage(crop,TOPLEFTCORNER,TOPLEFTCORNER,null);
-        
-        if(animating){
-            animate(g, move, 0);
-        }
-    }
-
-    /**
-     * method to handle the background animation
-     */
-    public void backgroundAnimationUpdate() {
-        // Loop through the board and find the ExitTile
-        for (int i = 0; i < board.size() ; i++) {
-            for (int j = 0; j < board.get(0).size() ; j++) {
-                Domain.Tile tile = board.get(i).get(j);
-                
-                // Check if the tile is an ExitTile
-                if (tile instanceof Domain.ExitTile) {
-                    Domain.ExitTile exitTile = (Domain.ExitTile) tile;
-                    
-                    // Get the current icon index and update it
-                    int iconIndex = exitTile.getIconIndex();
-                    switch (iconIndex) {
-                        case 0:
-                            exitTile.setIcon(1);
-                            break;
-                        case 1:
-                            exitTile.setIcon(2);
-                            break;
-                        case 2:
-                            exitTile.setIcon(0);
-                            break;
-                    }
-                    return;
+        // keep chap in the middle of the view, unless that would show past the edge of the board
+        int boardWidth = board.size() * tileSize;
+        int boardHeight = board.get(0).size() * tileSize;
+        int chapX = chapCell.x() * tileSize + calcPixelX;
+        int chapY = chapCell.y() * tileSize + calcPixelY;
+        int drawingX = cameraPosition(chapX + tileSize / 2 - viewportWidth / 2, boardWidth, viewportWidth);
+        int drawingY = cameraPosition(chapY + tileSize / 2 - viewportHeight / 2, boardHeight, viewportHeight);
+
+        // boards too large to keep as one image are drawn from the visible cells
+        int[] cells = null;
+        int firstX = Math.max(0, drawingX / tileSize);
+        int firstY = Math.max(0, drawingY / tileSize);
+        int columns = 0;
+        if(mask == null){
+            int lastX = Math.min(board.size() - 1, (drawingX + viewportWidth) / tileSize);
+            int lastY = Math.min(board.get(0).size() - 1, (drawingY + viewportHeight) / tileSize);
+            int across = lastX - firstX + 1;
+            int[] visible = new int[across * (lastY - firstY + 1)];
+            BandCompositor.paintRows(firstY, lastY + 1, across, row -> {
+                for (int i = 0; i < across; i++) {
+                    visible[(row - firstY) * across + i] = atlasIndex(board.get(firstX + i).get(row));
                 }
+            });
+            cells = visible;
+            columns = across;
+        }
+
+        List<Domain.EnemyTile> enemies = enemyProgress < 1 ? domain.getEnemies() : List.of();
+        int[] moving = new int[(enemies.size() * 2 + 1) * 3];
+        int spriteCount = 0;
+        for (Domain.EnemyTile enemy : enemies) {
+            spriteCount = addMovingEnemy(enemy, enemyProgress, moving, spriteCount);
+        }
+        if(animating){
+            BufferedImage chapImage = getChapImage(move);
+            moving[spriteCount * 3] = chapX;
+            moving[spriteCount * 3 + 1] = chapY;
+            moving[spriteCount * 3 + 2] = atlas.indexOf(chapImage, () -> sprites.get(chapImage, () -> chapImage, tileSize));
+            spriteCount++;
+        }
+
+        BufferedImage map = null;
+        if(minimapVisible){
+            if (minimap == null) {
+                minimap = new Minimap(domain, MINIMAP_SIZE);
             }
+            map = minimap.update();
         }
+
+        return new FrameState(drawingX, drawingY, cells, firstX, firstY, columns, moving, spriteCount, map);
     }
 
     /**
-     * method to control the animation, to animate
-     * 
-     * @param g 
-     * @param move this is the move direction 'up', 'left', 'right', 'down'
-     * @param pixel this is would be the direction for the 
+     * adds an enemy drawn part way between the cell it left and the cell it is in
+     * the cell it is in is covered with the floor it left behind until it arrives
+     *
+     * @param moving board x, y and atlas index of the sprites drawn over the cells
+     * @return how many sprites are in the list now
      */
-    private void animate(Graphics g, String move, int pixel){
-        
-        int x = 4 * 32 + TOPLEFTCORNER;
-        int y = 4 * 32 + TOPLEFTCORNER;
+    private int addMovingEnemy(Domain.EnemyTile enemy, float progress, int[] moving, int count) {
+        Domain.Coordinates from = enemy.getPreviousPosition();
+        Domain.Coordinates to = enemy.getPosition();
+        Domain.Tile left = board.get(from.x()).get(from.y());
+        // enemies that jump back to the start of their path, or whose old cell was taken, are not slid
+        if (Math.abs(to.x() - from.x()) + Math.abs(to.y() - from.y()) != 1 || !(left instanceof Domain.FreeTile)) {
+            return count;
+        }
+        moving[count * 3] = to.x() * tileSize;
+        moving[count * 3 + 1] = to.y() * tileSize;
+        moving[count * 3 + 2] = atlasIndex(left);
+        moving[count * 3 + 3] = Math.round((from.x() + (to.x() - from.x()) * progress) * tileSize);
+        moving[count * 3 + 4] = Math.round((from.y() + (to.y() - from.y()) * progress) * tileSize);
+        moving[count * 3 + 5] = atlasIndex(enemy);
+        return count + 2;
+    }
 
-        switch(move){
-            case "left" :
-                g.drawImage(getChapImage(move),x - pixel, y , null);
-                break;
-            case "right" : 
-                g.drawImage(getChapImage(move),x + pixel, y, null);
-                break;
-            case "up" : 
-                g.drawImage(getChapImage(move),x , y - pixel , null);
-                break;
-            case "down" : 
-                g.drawImage(getChapImage(move),x , y + pixel , null);
-                break;
-            default :
-                throw new IllegalArgumentException("Did not give move");
+    /**
+     * draws a captured frame of the board view into a frame buffer
+     * the cached board image is copied a row at a time, or the visible cells are drawn for boards too large for one
+     */
+    private void composeFrame(FrameState frame, int[] dst) {
+        int width = frame.width;
+        int height = frame.height;
+        if (frame.boardPixels == null || frame.boardWidth < width || frame.boardHeight < height) {
+            Arrays.fill(dst, 0, width * height, 0xFF000000);
         }
 
+        if (frame.boardPixels != null) {
+            int left = Math.max(0, frame.drawingX);
+            int right = Math.min(frame.boardWidth, frame.drawingX + width);
+            int top = Math.max(0, frame.drawingY);
+            int bottom = Math.min(frame.boardHeight, frame.drawingY + height);
+            for (int y = top; y < bottom; y++) {
+                System.arraycopy(frame.boardPixels, y * frame.boardWidth + left,
+                    dst, (y - frame.drawingY) * width + left - frame.drawingX, right - left);
+            }
+        } else {
+            int columns = frame.columns;
+            int rows = frame.cells.length / columns;
+            int size = frame.size;
+            BandCompositor.paintRows(0, rows, columns, row -> {
+                for (int i = 0; i < columns; i++) {
+                    frame.frameAtlas.draw(frame.cells[row * columns + i], dst, width, height,
+                        (frame.firstX + i) * size - frame.drawingX, (frame.firstY + row) * size - frame.drawingY);
+                }
+            });
+        }
+
+        for (int i = 0; i < frame.spriteCount; i++) {
+            frame.frameAtlas.draw(frame.sprites[i * 3 + 2], dst, width, height,
+                frame.sprites[i * 3] - frame.drawingX, frame.sprites[i * 3 + 1] - frame.drawingY);
+        }
+    }
+
+    /**
+     * draws the minimap in the top right corner of a frame on screen at x, y, shrunk further if the board is very large,
+     * then the performance overlay in the top left
+     */
+    private void drawFrameOverlays(FrameState frame, Graphics g, int x, int y) {
+        if (frame.map != null) {
+            int width = Math.min(frame.map.getWidth(), MINIMAP_SIZE);
+            int height = Math.min(frame.map.getHeight(), MINIMAP_SIZE);
+            int mapX = x + frame.width - width - 2;
+            int mapY = y + 2;
+
+            g.setColor(Color.BLACK);
+            g.drawRect(mapX - 1, mapY - 1, width + 1, height + 1);
+            g.drawImage(frame.map, mapX, mapY, width, height, null);
+        }
+
+        if(hud != null){
+            hud.endFrame();
+            hud.draw(g, x + 2, y + 2);
+        }
+    }
+
+    /**
+     * returns the left or top edge of the view on the board, centred on the board when it is smaller than the view
+     */
+    private static int cameraPosition(int wanted, int boardSize, int viewSize) {
+        if (boardSize <= viewSize) {
+            return -(viewSize - boardSize) / 2;
+        }
+        return Math.max(0, Math.min(wanted, boardSize - viewSize));
+    }
+
+    /**
+     * draws every cell of the board into the cached board image at the current zoom, used when a new board is loaded
+     * or the zoom changes. Boards too large to keep as one image are drawn from the visible cells every frame instead.
+     */
+    private void redrawBoard() {
+        board = domain.getBoard();
+        theChap = domain.getChap();
+        maskTileSize = tileSize;
+        atlas = atlases.computeIfAbsent(tileSize, SpriteAtlas::new);
+
+        int width = board.size() * tileSize;
+        int height = board.get(0).size() * tileSize;
+        if ((long) width * height > MAX_MASK_PIXELS) {
+            mask = null;
+            maskPixels = null;
+            return;
+        }
+        if (mask == null || mask.getWidth() != width || mask.getHeight() != height) {
+            mask = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            maskPixels = ((DataBufferInt) mask.getRaster().getDataBuffer()).getData();
+        }
+
+        composeCells(board, maskPixels, width, height);
+    }
+
+    /**
+     * copies every cell of a board into a frame buffer at the current zoom
+     * large boards are drawn in bands of rows on several threads
+     *
+     * @param dst the frame buffer, width x height pixels stored row by row
+     */
+    void composeCells(List<? extends List<Domain.Tile>> cells, int[] dst, int width, int height) {
+        atlas = atlases.computeIfAbsent(tileSize, SpriteAtlas::new);
+        int columns = cells.size();
+        BandCompositor.paintRows(0, cells.get(0).size(), columns, row -> {
+            for (int i = 0; i < columns; i++) {
+                atlas.copy(atlasIndex(cells.get(i).get(row)), dst, width, height, i * tileSize, row * tileSize);
+            }
+        });
+    }
+
+
+
+    /**
+     * draws a single cell of the board into the cached board image, replacing what was there
+     */
+    private void drawCell(int x, int y) {
+        if (mask != null) {
+            atlas.copy(atlasIndex(board.get(x).get(y)), maskPixels, mask.getWidth(), mask.getHeight(), x * tileSize, y * tileSize);
+        }
+    }
+
+    /**
+     * identifies how a tile looks, chap also depends on the tile he stands on
+     */
+    private record TileSprite(Class<?> type, int icon, Class<?> under, int underIcon) {
+    }
+
+    /**
+     * returns where the tile's current icon, scaled to the current zoom, is in the atlas
+     * each icon is scaled and packed once per zoom and kind of tile
+     */
+    private int atlasIndex(Domain.Tile tile) {
+        TileSprite key = atlasKey(tile);
+        return atlas.indexOf(key, () -> sprites.get(key, tile::getIcon, tileSize));
+    }
+
+    /**
+     * returns the key the tile's current icon is cached under
+     */
+    private static TileSprite atlasKey(Domain.Tile tile) {
+        if (tile instanceof Domain.ChapTile chap) {
+            Domain.Tile under = chap.getStandingOn();
+            return new TileSprite(chap.getClass(), chap.iconIndex, under.getClass(), under.iconIndex);
+        }
+        return new TileSprite(tile.getClass(), tile.iconIndex, null, 0);
     }
 
-    
- 
     /**
      * Make the background of an image transparent
      * 
      * @param image The image to process
      * @return  The image with a transparent background
      */
-    private BufferedImage makeTransparent(BufferedImage imageWhite, BufferedImage imageBlack) {
+    private static BufferedImage makeTransparent(BufferedImage imageWhite, BufferedImage imageBlack) {
         int width = imageWhite.getWidth();
         int height = imageWhite.getHeight();
         
@@ -210,12 +596,12 @@ public class Renderer{
     }
     
     
-    private boolean isWhite(int rgb) {
+    private static boolean isWhite(int rgb) {
         Color color = new Color(rgb);
         return (color.getGreen() == 255 && color.getRed() == 255 && color.getBlue() == 255);
     }
 
-    private boolean isBlack(int rgb) {
+    private static boolean isBlack(int rgb) {
         Color color = new Color(rgb);
         return (color.getGreen() == 0 && color.getRed() == 0 && color.getBlue() == 0);
     }
@@ -257,94 +643,106 @@ public class Renderer{
      * methods to play and stop music and SFX
      */
     public void playBackgroundMusic(){
-    	if(backgroundClip!=null) {
-    		backgroundClip.loop(Clip.LOOP_CONTINUOUSLY);
-    	}else {
-            System.err.println("backgroundClip is null. Cannot start background music.");
-    	}    }
+        playMusic(MUSIC);
+    }
 
     public void playBackgroundMusic2(){
-    	if(backgroundClip2!=null) {
-    		backgroundClip2.loop(Clip.LOOP_CONTINUOUSLY);
-    	}else {
-            System.err.println("backgroundClip2 is null. Cannot start background music.");
-    	}
+        playMusic(MUSIC_2);
+    }
+
+    /**
+     * plays the music of a level, levels without a track of their own play the first level's music
+     */
+    public void playLevelMusic(int level){
+        playMusic(level == 2 ? MUSIC_2 : MUSIC);
+    }
+
+    private void playMusic(String track){
+        if(music != null){
+            music.play(track);
+        }
+    }
+
+    private void stopMusic(String track){
+        if(music != null && track.equals(music.getTrack())){
+            music.stop();
+        }
     }
 
     public void playKeySFX(){
-        keyClip.setFramePosition(0);
-        keyClip.start();
+        play(keySound);
     }
 
     public void playDoorSFX(){
-        doorClip.setFramePosition(0);
-        doorClip.start();
+        play(doorSound);
     }
 
     public void playTreasureSFX(){
-        beepClip.setFramePosition(0);
-        beepClip.start();
+        play(beepSound);
     }
 
     public void playLoseSFX(){
-        loseClip.setFramePosition(0);
-        loseClip.start();
+        play(loseSound);
     }
 
     public void playWinSFX(){
-        winClip.setFramePosition(0);
-        winClip.start();
+        play(winSound);
     }
 
     public void playInfoSFX(){
-        infoClip.setFramePosition(0);
-        infoClip.start();
+        play(infoSound);
+    }
+
+    /**
+     * plays a sound effect from the start on a voice of its own, sounds that could not be loaded are silent
+     */
+    private void play(AudioMixer.Samples sound){
+        if(mixer != null){
+            mixer.play(sound);
+        }
+    }
+
+    private void stop(AudioMixer.Samples sound){
+        if(mixer != null){
+            mixer.stop(sound);
+        }
     }
 
     //methods for 
     public void stopBackgroundMusic(){
-    	if(backgroundClip!=null) {
-    		backgroundClip.stop();
-    	}else {
-            System.err.println("backgroundClip is null. Cannot stop background music.");
-    	}
+        stopMusic(MUSIC);
     }
 
     public void stopBackgroundMusic2(){
-    	if(backgroundClip2!=null) {
-    		backgroundClip2.stop();
-    	}else {
-            System.err.println("backgroundClip2 is null. Cannot stop background music.");
-    	}
+        stopMusic(MUSIC_2);
     }
 
     public void stopKeySFX(){
-        keyClip.stop();
+        stop(keySound);
     }
 
     public void stopDoorSFX(){
-        doorClip.stop();
+        stop(doorSound);
     }
     
     public void stopTreasureSFX(){
-        beepClip.stop();
+        stop(beepSound);
     }
 
     public void stopLoseSFX(){
-        loseClip.stop();
+        stop(loseSound);
     }
 
     public void startWinSFX(){
-        winClip.setFramePosition(0);
-        winClip.start();
+        play(winSound);
     }
 
     public void stopWinSFX(){
-        winClip.stop();
+        stop(winSound);
     }
 
     public void stopInfoSFX(){
-        infoClip.stop();
+        stop(infoSound);
     }
 
     /**
@@ -359,55 +757,58 @@ public class Renderer{
 
     /**
      * method to initialize all the audios and sound effects
+     * the sounds are shared by every renderer, each is only decoded once per run
      */
     private void initializeAudio() {
-        try {
-            // Get the current working directory
-            String currentDirectory = System.getProperty("user.dir");
-            String audioPath = currentDirectory.replace(File.separator + "src", "") + File.separator + "audio" + File.separator;
-
-            // Initialize background music
-            backgroundClip = loadAudioClip(audioPath + "game-music-loop.wav");
-            backgroundClip2 = loadAudioClip(audioPath + "game-music-loop2.wav");
-
-            // Initialize SFX
-            keyClip = loadAudioClip(audioPath + "key-sfx.wav");
-            loseClip = loadAudioClip(audioPath + "lose-sfx.wav");
-            doorClip = loadAudioClip(audioPath + "door-sfx.wav");
-            beepClip = loadAudioClip(audioPath + "beep-sfx.wav");
-            winClip = loadAudioClip(audioPath + "winning-sfx.wav");
-            infoClip = loadAudioClip(audioPath + "info-sfx.wav");
-        } catch (Exception e) {
-            System.out.println("Audio not initialized: " + e.getMessage());
-        }
+        // Initialize background music, tracks are only opened when they play
+        music = MusicPlayer.shared();
+
+        // Initialize SFX
+        mixer = AudioMixer.shared();
+        keySound = Assets.samples(KEY_SFX);
+        loseSound = Assets.samples(LOSE_SFX);
+        doorSound = Assets.samples(DOOR_SFX);
+        beepSound = Assets.samples(BEEP_SFX);
+        winSound = Assets.samples(WIN_SFX);
+        infoSound = Assets.samples(INFO_SFX);
     }
 
-    private Clip loadAudioClip(String filePath) throws Exception {
-        AudioInputStream audioStream = AudioSystem.getAudioInputStream(new File(filePath));
-        Clip clip = AudioSystem.getClip();
-        clip.open(audioStream);
-        return clip;
+    /**
+     * decodes every sound effect and starts the mixer before the first renderer is made, so it finds them ready
+     */
+    static void preloadAudio() {
+        AudioMixer.shared();
+        for (String effect : List.of(KEY_SFX, LOSE_SFX, DOOR_SFX, BEEP_SFX, WIN_SFX, INFO_SFX)) {
+            Assets.samples(effect);
+        }
     }
 
     /**
      * method to initialize images
      */
     private void initializeImages(){
-        try {
-            String currentDirectory = System.getProperty("user.dir");
-            String filePath = currentDirectory.replace(File.separator+"src", "") + File.separator+"images"+File.separator+"spritesheet.png";
-            this.spritesheet = ImageIO.read(new File(filePath));
-        } catch (IOException e) {
-            e.printStackTrace();
+        preloadImages();
+        synchronized (SHARED_CHAP_IMAGES) {
+            chapImages.putAll(SHARED_CHAP_IMAGES);
         }
+    }
 
-        int XWhiteBG = 288;
-        int XBlackBG = 384;
-        // put the little chap into the hashmap, with move as it's key
-        chapImages.put("up", makeTransparent(spritesheet.getSubimage(XWhiteBG, 384, 32, 32), spritesheet.getSubimage(XBlackBG, 384, 32, 32)));
-        chapImages.put("left", makeTransparent(spritesheet.getSubimage(XWhiteBG, 416, 32, 32), spritesheet.getSubimage(XBlackBG, 416, 32, 32)));
-        chapImages.put("down", makeTransparent(spritesheet.getSubimage(XWhiteBG, 448, 32, 32), spritesheet.getSubimage(XBlackBG, 448, 32, 32)));
-        chapImages.put("right", makeTransparent(spritesheet.getSubimage(XWhiteBG, 480, 32, 32), spritesheet.getSubimage(XBlackBG, 480, 32, 32)));
+    /**
+     * reads the spritesheet and cuts chap's walking images out of it, once per run
+     */
+    static void preloadImages(){
+        synchronized (SHARED_CHAP_IMAGES) {
+            if (SHARED_CHAP_IMAGES.isEmpty()) {
+                BufferedImage spritesheet = Assets.spritesheet();
+                int XWhiteBG = 288;
+                int XBlackBG = 384;
+                // put the little chap into the hashmap, with move as it's key
+                SHARED_CHAP_IMAGES.put("up", makeTransparent(spritesheet.getSubimage(XWhiteBG, 384, 32, 32), spritesheet.getSubimage(XBlackBG, 384, 32, 32)));
+                SHARED_CHAP_IMAGES.put("left", makeTransparent(spritesheet.getSubimage(XWhiteBG, 416, 32, 32), spritesheet.getSubimage(XBlackBG, 416, 32, 32)));
+                SHARED_CHAP_IMAGES.put("down", makeTransparent(spritesheet.getSubimage(XWhiteBG, 448, 32, 32), spritesheet.getSubimage(XBlackBG, 448, 32, 32)));
+                SHARED_CHAP_IMAGES.put("right", makeTransparent(spritesheet.getSubimage(XWhiteBG, 480, 32, 32), spritesheet.getSubimage(XBlackBG, 480, 32, 32)));
+            }
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,404 @@
+package src;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Turns a Recorder replay file into a PNG image sequence or an animated GIF without opening a window.
+ *
+ * Domain is driven headlessly on the same 20ms step as the game timer and every frame is drawn
+ * by Renderer into an offscreen image. Frames are handed to a pool of encoder threads through a
+ * bounded queue, and their buffers are recycled, so encoding uses every core while memory stays flat.
+ * A PNG sequence is encoded fully in parallel. For a GIF the encoders convert frames to 256 colours
+ * in parallel, but the GIF itself is one stream, so its frames are compressed and written by one
+ * thread at a time, in order.
+ *
+ * The replay is either a replay file or the name of a saved game in the save store.
+ *
+ * Usage: java src.ReplayExporter replay.json|saveName [outputDir] [--gif] [--threads N] [--fps N]
+ *
+ * @author Brodie Banfield
+ */
+public class ReplayExporter {
+
+    // the game advances in 20ms steps, the same as App's timer
+    private static final int STEP_MILLIS = App.STEP_MILLIS;
+    private static final int STEPS_PER_SECOND = 1000 / STEP_MILLIS;
+    // frames kept after the last move so the end of the replay is visible
+    private static final int TAIL_STEPS = STEPS_PER_SECOND;
+
+    private final File replayFile;
+    private final File outputDir;
+    private final boolean gif;
+    private final int threads;
+    private final int sampleEvery;
+
+    private BlockingQueue<Frame> frames;
+    private BlockingQueue<BufferedImage> freeBuffers;
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private GifSequence gifSequence;
+
+    /**
+     * A rendered frame waiting to be encoded, an index of -1 tells an encoder to stop.
+     */
+    private record Frame(int index, BufferedImage image) {
+    }
+
+    private static final Frame END = new Frame(-1, null);
+
+    /**
+     * Create an exporter.
+     *
+     * @param replayFile The replay JSON file written by Recorder, or a file named after a save in the save store.
+     * @param outputDir Where the images are written.
+     * @param gif True to write one animated GIF instead of a PNG sequence.
+     * @param threads How many encoder threads to use.
+     * @param fps How many frames per second of game time to export, at most 50.
+     */
+    public ReplayExporter(File replayFile, File outputDir, boolean gif, int threads, int fps) {
+        this.replayFile = replayFile;
+        this.outputDir = outputDir;
+        this.gif = gif;
+        this.threads = Math.max(1, threads);
+        this.sampleEvery = Math.max(1, STEPS_PER_SECOND / Math.max(1, fps));
+    }
+
+    /**
+     * Command line entry point.
+     *
+     * @param args The replay file or save name, then optionally the output directory and flags.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("Usage: java src.ReplayExporter replay.json|saveName [outputDir] [--gif] [--threads N] [--fps N]");
+            return;
+        }
+        System.setProperty("java.awt.headless", "true");
+
+        File replay = new File(args[0]);
+        String name = replay.getName().replace(".json", "");
+        File output = new File("export" + File.separator + name);
+        boolean gif = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int fps = STEPS_PER_SECOND;
+
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--gif":
+                    gif = true;
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--fps":
+                    fps = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    output = new File(args[i]);
+            }
+        }
+
+        new ReplayExporter(replay, output, gif, threads, fps).export();
+    }
+
+    /**
+     * Runs the replay and writes every exported frame.
+     *
+     * @return The number of frames written.
+     */
+    public int export() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+
+        Recorder recorder = new Recorder(null);
+        if (replayFile.isFile()) {
+            recorder.loadMoves(replayFile);
+        } else {
+            recorder.loadFromString(replayFile.getName().replace(".json", ""));
+        }
+        List<Recorder.Move> moves = recorder.getStoredMoves();
+        if (moves.isEmpty()) {
+            System.out.println("Replay " + replayFile + " has no moves");
+            return 0;
+        }
+
+        Domain domain = new Domain();
+        Persistency persistency = new Persistency(null, domain);
+        domain.setPersistency(persistency);
+        int level = moves.get(0).getLevel();
+        domain.loadLevel("" + level);
+
+        Renderer renderer = new Renderer(domain, false);
+        int origin = renderer.getViewportOrigin();
+        int width = renderer.getViewportWidth();
+        int height = renderer.getViewportHeight();
+
+        outputDir.mkdirs();
+        int capacity = threads * 2;
+        frames = new ArrayBlockingQueue<>(capacity);
+        freeBuffers = new ArrayBlockingQueue<>(capacity + threads + 1);
+        for (int i = 0; i < capacity + threads + 1; i++) {
+            freeBuffers.add(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+        }
+        if (gif) {
+            gifSequence = new GifSequence(new File(outputDir.getPath() + ".gif"), STEP_MILLIS * sampleEvery, capacity + threads);
+        }
+
+        List<Thread> encoders = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread encoder = new Thread(this::encodeFrames, "frame-encoder-" + i);
+            encoder.start();
+            encoders.add(encoder);
+        }
+
+        // replay the moves on the game's own 20ms step, as Recorder's auto replay does
+        long firstMoveTime = moves.get(0).getTime();
+        int moveIndex = 0;
+        int step = 0;
+        int tail = 0;
+        int frameIndex = 0;
+        boolean animating = false;
+        String move = "unset";
+        long moveStart = 0;
+        long enemyMove = -App.MOVE_MILLIS;
+
+        while (tail < TAIL_STEPS && failure.get() == null) {
+            long time = (long) step * STEP_MILLIS;
+
+            domain.updateAnimations(STEP_MILLIS);
+            if (level == 2 && time % 400 == 0) {
+                domain.updateEnemies();
+                enemyMove = time;
+            }
+
+            if (!animating && moveIndex < moves.size() && time >= moves.get(moveIndex).getTime() - firstMoveTime) {
+                Recorder.Move next = moves.get(moveIndex++);
+                if (next.getLevel() != level) {
+                    level = next.getLevel();
+                    domain.loadLevel("" + level);
+                }
+                move = next.getDirection();
+                if (!domain.getChap().move(move, false)) {
+                    // the game only records moves chap could make, so the replay is not of this level
+                    failure.compareAndSet(null, new IOException("Move " + moveIndex + " (" + move + ") of " + replayFile
+                            + " cannot be made, the replay does not match level " + level));
+                    break;
+                }
+                animating = true;
+                moveStart = time;
+            }
+
+            if (animating && time - moveStart >= App.MOVE_MILLIS) {
+                domain.getChap().move(move, true);
+                animating = false;
+                move = "unset";
+            }
+            // nothing plays the sounds here, so just keep the command list from growing
+            domain.getCommands();
+
+            if (step % sampleEvery == 0) {
+                BufferedImage image = freeBuffers.take();
+                Graphics2D g = image.createGraphics();
+                g.translate(-origin, -origin);
+                float moveProgress = (time - moveStart) / (float) App.MOVE_MILLIS;
+                float enemyProgress = Math.min(1, (time - enemyMove) / (float) App.MOVE_MILLIS);
+                renderer.repaint(g, animating, move, moveProgress, enemyProgress);
+                g.dispose();
+                frames.put(new Frame(frameIndex++, image));
+            }
+
+            if (moveIndex >= moves.size() && !animating) {
+                tail++;
+            }
+            step++;
+        }
+
+        for (int i = 0; i < threads; i++) {
+            frames.put(END);
+        }
+        for (Thread encoder : encoders) {
+            encoder.join();
+        }
+        if (gifSequence != null) {
+            gifSequence.close();
+        }
+        if (failure.get() != null) {
+            throw new IOException("Export failed", failure.get());
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double gameSeconds = step / (double) STEPS_PER_SECOND;
+        System.out.println("Exported " + frameIndex + " frames (" + String.format("%.1f", gameSeconds) + "s of play) to "
+                + (gif ? outputDir.getPath() + ".gif" : outputDir.getPath()) + " in " + String.format("%.2f", seconds) + "s: "
+                + String.format("%.1f", frameIndex / seconds) + " frames/sec, "
+                + String.format("%.1f", gameSeconds / seconds) + "x real time, " + threads + " encoder threads");
+        return frameIndex;
+    }
+
+    /**
+     * Encoder thread body, encodes frames until told to stop and hands their buffers back.
+     */
+    private void encodeFrames() {
+        try {
+            while (true) {
+                Frame frame = frames.take();
+                if (frame == END) {
+                    return;
+                }
+                if (failure.get() == null) {
+                    try {
+                        if (gif) {
+                            gifSequence.add(frame.index(), toIndexed(frame.image()));
+                        } else {
+                            ImageIO.write(frame.image(), "png", new File(outputDir, String.format("frame%06d.png", frame.index())));
+                        }
+                    } catch (IOException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+                freeBuffers.put(frame.image());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Converts a frame to the 256 colour image a GIF needs, the slow part of GIF encoding, done on the encoder threads.
+     */
+    private BufferedImage toIndexed(BufferedImage image) {
+        BufferedImage indexed = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_INDEXED);
+        Graphics2D g = indexed.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return indexed;
+    }
+
+    /**
+     * Writes GIF frames in order as encoder threads finish them, in any order.
+     * The encoder that hands over the next frame to write writes it, and any frames after it that are
+     * ready, without holding the lock, so the other encoders keep converting frames meanwhile.
+     * Encoders that get too far ahead of the next frame to write wait, so at most a window of frames is held.
+     */
+    private static class GifSequence {
+        private final ImageOutputStream output;
+        private final ImageWriter writer;
+        private final int delayCentiseconds;
+        private final int window;
+        private final TreeMap<Integer, BufferedImage> pending = new TreeMap<>();
+        private int nextIndex = 0;
+        // true while an encoder is writing, only that encoder uses the writer
+        private boolean writing = false;
+        private boolean failed = false;
+
+        GifSequence(File file, int frameMillis, int window) throws IOException {
+            file.delete();
+            this.output = ImageIO.createImageOutputStream(file);
+            this.writer = ImageIO.getImageWritersByFormatName("gif").next();
+            this.delayCentiseconds = Math.max(1, frameMillis / 10);
+            this.window = window;
+            writer.setOutput(output);
+            writer.prepareWriteSequence(null);
+        }
+
+        void add(int index, BufferedImage image) throws IOException, InterruptedException {
+            synchronized (this) {
+                while (index - nextIndex >= window && !failed) {
+                    wait();
+                }
+                if (failed) {
+                    return;
+                }
+                pending.put(index, image);
+                if (writing) {
+                    // the encoder writing takes this frame when it gets to it
+                    return;
+                }
+                writing = true;
+            }
+
+            try {
+                while (true) {
+                    int first;
+                    List<BufferedImage> ready = new ArrayList<>();
+                    synchronized (this) {
+                        first = nextIndex;
+                        while (pending.containsKey(first + ready.size())) {
+                            ready.add(pending.remove(first + ready.size()));
+                        }
+                        if (ready.isEmpty()) {
+                            writing = false;
+                            return;
+                        }
+                    }
+                    for (int i = 0; i < ready.size(); i++) {
+                        BufferedImage next = ready.get(i);
+                        writer.writeToSequence(new IIOImage(next, null, frameMetadata(next, first + i)), null);
+                    }
+                    synchronized (this) {
+                        nextIndex += ready.size();
+                        notifyAll();
+                    }
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    // stop every other encoder waiting on a frame that will never be written
+                    failed = true;
+                    writing = false;
+                    notifyAll();
+                }
+                throw e;
+            }
+        }
+
+        void close() throws IOException {
+            writer.endWriteSequence();
+            writer.dispose();
+            output.close();
+        }
+
+        /**
+         * metadata giving each frame its delay, with a looping extension on the first frame
+         */
+        private IIOMetadata frameMetadata(BufferedImage image, int index) throws IOException {
+            IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), null);
+            String format = metadata.getNativeMetadataFormatName();
+            IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+
+            IIOMetadataNode control = new IIOMetadataNode("GraphicControlExtension");
+            control.setAttribute("disposalMethod", "none");
+            control.setAttribute("userInputFlag", "FALSE");
+            control.setAttribute("transparentColorFlag", "FALSE");
+            control.setAttribute("delayTime", Integer.toString(delayCentiseconds));
+            control.setAttribute("transparentColorIndex", "0");
+            root.appendChild(control);
+
+            if (index == 0) {
+                IIOMetadataNode extensions = new IIOMetadataNode("ApplicationExtensions");
+                IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+                loop.setAttribute("applicationID", "NETSCAPE");
+                loop.setAttribute("authenticationCode", "2.0");
+                loop.setUserObject(new byte[] { 1, 0, 0 });
+                extensions.appendChild(loop);
+                root.appendChild(extensions);
+            }
+
+            metadata.setFromTree(format, root);
+            return metadata;
+        }
+    }
+}
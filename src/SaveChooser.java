@@ -0,0 +1,117 @@
+package src;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.ImageIcon;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingConstants;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+
+/**
+ * Load dialog listing the saved games, newest first, with the thumbnail of the selected one beside the list.
+ * The list comes from the save store's index, so no save is read until it is selected. Thumbnails are read
+ * the first time a save is selected and kept for as long as the dialog is open.
+ *
+ * @author Oshi Werellagama
+ */
+public class SaveChooser extends JLabel implements ListSelectionListener {
+    private static final long serialVersionUID = 1L;
+    private static final int SIZE = 170;
+
+    private final JList<SaveStore.Entry> list;
+    private final Map<String, ImageIcon> thumbnails = new HashMap<>();
+
+    /**
+     * Shows the saved games and waits for one to be picked.
+     *
+     * @param parent The window the dialog belongs to.
+     * @param title The title of the dialog.
+     *
+     * @return The name of the save picked, or null if the dialog was cancelled or there are no saves.
+     */
+    public static String choose(Component parent, String title) {
+        List<SaveStore.Entry> saves = Persistency.listSaves();
+        if (saves.isEmpty()) {
+            JOptionPane.showMessageDialog(parent, "There are no saved games yet.", title, JOptionPane.INFORMATION_MESSAGE);
+            return null;
+        }
+
+        JList<SaveStore.Entry> list = new JList<>(saves.toArray(new SaveStore.Entry[0]));
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected,
+                    boolean cellHasFocus) {
+                return super.getListCellRendererComponent(list, describe((SaveStore.Entry) value), index, isSelected,
+                        cellHasFocus);
+            }
+        });
+        SaveChooser preview = new SaveChooser(list);
+        list.setSelectedIndex(0);
+
+        JScrollPane scroll = new JScrollPane(list);
+        scroll.setPreferredSize(new Dimension(360, SIZE));
+        JPanel panel = new JPanel(new BorderLayout(8, 0));
+        panel.add(scroll, BorderLayout.CENTER);
+        panel.add(preview, BorderLayout.EAST);
+
+        int choice = JOptionPane.showConfirmDialog(parent, panel, title, JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        SaveStore.Entry selected = list.getSelectedValue();
+        return choice == JOptionPane.OK_OPTION && selected != null ? selected.name() : null;
+    }
+
+    private SaveChooser(JList<SaveStore.Entry> list) {
+        this.list = list;
+        setPreferredSize(new Dimension(SIZE, SIZE));
+        setHorizontalAlignment(SwingConstants.CENTER);
+        setText("No preview");
+        list.addListSelectionListener(this);
+    }
+
+    /**
+     * Updates the preview when a different save is selected.
+     *
+     * @param event The selection change.
+     */
+    @Override
+    public void valueChanged(ListSelectionEvent event) {
+        SaveStore.Entry selected = list.getSelectedValue();
+        ImageIcon thumbnail = selected == null ? null : thumbnails.computeIfAbsent(selected.name(), this::readThumbnail);
+
+        setIcon(thumbnail);
+        setText(thumbnail == null ? "No preview" : null);
+    }
+
+    /**
+     * Reads the thumbnail of a save, or null if it has none.
+     */
+    private ImageIcon readThumbnail(String saveName) {
+        BufferedImage image = Persistency.loadThumbnail(saveName);
+        return image == null ? null : new ImageIcon(image);
+    }
+
+    /**
+     * the line a save is shown as, for example "mysave - level 2, 5 chips left, 1:23 played, 19/10/26 11:03"
+     */
+    private static String describe(SaveStore.Entry save) {
+        long seconds = save.playTime() / 1000;
+        return save.name() + " - level " + save.level()
+                + (save.chipsLeft() < 0 ? "" : ", " + save.chipsLeft() + " chips left")
+                + ", " + seconds / 60 + ":" + String.format("%02d", seconds % 60) + " played, "
+                + DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT).format(new Date(save.timestamp()));
+    }
+}
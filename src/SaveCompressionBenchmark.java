@@ -0,0 +1,110 @@
+package src;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reports how much smaller, and how much slower to write and read, saves and replays are at each
+ * compression level, so -Dchips.save.compression can be chosen from real files.
+ *
+ * Every file is read as text, whether or not it is already compressed, then compressed at each
+ * level and inflated again through Compression.open, the way Persistency and Recorder read them.
+ * With no files given every .json in recorderfiles and levels is used.
+ *
+ * Usage: java src.SaveCompressionBenchmark [file ...]
+ *
+ * @author Jake Domb
+ */
+public class SaveCompressionBenchmark {
+    private static final int[] LEVELS = { 0, 1, 3, 6, 9 };
+    private static final int ROUNDS = 20;
+
+    /**
+     * Command line entry point.
+     *
+     * @param args The files to measure, every save and replay by default.
+     */
+    public static void main(String[] args) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            files.add(Path.of(arg));
+        }
+        if (files.isEmpty()) {
+            for (String folder : new String[] { "recorderfiles", "levels" }) {
+                File[] found = new File(folder).listFiles((dir, name) -> name.endsWith(".json"));
+                if (found != null) {
+                    for (File file : found) {
+                        files.add(file.toPath());
+                    }
+                }
+            }
+        }
+        if (files.isEmpty()) {
+            System.out.println("No files to measure");
+            return;
+        }
+
+        List<String> texts = new ArrayList<>();
+        long plain = 0;
+        for (Path file : files) {
+            try (InputStream in = Compression.open(file)) {
+                String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                texts.add(text);
+                plain += text.getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        System.out.println(files.size() + " files, " + plain + " bytes of JSON");
+
+        Path temp = Files.createTempFile("compressed", ".json");
+        try {
+            // the first pass only warms up
+            for (int pass = 0; pass < 2; pass++) {
+                for (int level : LEVELS) {
+                    measure(level, texts, plain, temp, pass == 1);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * compresses and inflates every text ROUNDS times at one level and reports the sizes and speeds
+     */
+    private static void measure(int level, List<String> texts, long plain, Path temp, boolean report)
+            throws IOException {
+        long size = 0;
+        long compressNanos = 0;
+        long inflateNanos = 0;
+        for (String text : texts) {
+            byte[] compressed = null;
+            long start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                compressed = Compression.compress(text, level);
+            }
+            compressNanos += System.nanoTime() - start;
+            size += compressed.length;
+
+            Files.write(temp, compressed);
+            start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                try (InputStream in = Compression.open(temp)) {
+                    in.readAllBytes();
+                }
+            }
+            inflateNanos += System.nanoTime() - start;
+        }
+        if (report) {
+            double megabytes = plain * (double) ROUNDS / (1024 * 1024);
+            System.out.println(String.format("level %d %9d bytes, %5.1f%% of plain, write %7.1f MB/s, read %7.1f MB/s",
+                    level, size, size * 100.0 / plain, megabytes * 1e9 / compressNanos,
+                    megabytes * 1e9 / inflateNanos));
+        }
+    }
+}
@@ -0,0 +1,525 @@
+package src;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A single file holding every saved game, its replay, board and thumbnail, and the exit state, so a save
+ * can be listed or loaded without looking through a folder.
+ *
+ * The file is only ever appended to. A save is written as one record, followed by an index of every
+ * save in the store and a trailer holding where that index starts. Opening the store reads the trailer
+ * and the index after it, which gives the name, level, time saved, chips left and play time of every
+ * save and where its record is, so listing the saves or finding one never reads a record. Nothing
+ * written counts until the index after it is on disk, so a save the game stopped in the middle of is
+ * cut off the next time the store is opened, and the saves before it are as they were.
+ *
+ * Every record is its type, its length, its contents and a CRC32 of them. Replacing a save or the exit
+ * state leaves the old record in the file, once it is mostly such records the store is compacted by
+ * copying the records still in use to a new file and moving that over the old one.
+ *
+ * @author Jake Domb
+ */
+final class SaveStore {
+    static final Path FILE = Path.of("saves.store");
+    // compacted once it is at least this big and more than half of it is records no longer used
+    static final long COMPACT_BYTES = 256 * 1024;
+    private static final byte[] MAGIC = { 'C', 'H', 'S', 'S' };
+    private static final byte[] INDEX_MAGIC = { 'C', 'H', 'S', 'I' };
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 2;
+    // the type and length before the contents of a record, and the CRC after them
+    private static final int RECORD_OVERHEAD = 1 + 4 + 4;
+    // where the last index starts, then INDEX_MAGIC
+    private static final int TRAILER_SIZE = 8 + INDEX_MAGIC.length;
+    private static final byte SAVE = 1;
+    private static final byte EXIT_STATE = 2;
+    private static final byte INDEX = 3;
+
+    /**
+     * What the index holds about a save, enough to list it without reading it.
+     *
+     * @param name The name it was saved under.
+     * @param level The level it was saved on.
+     * @param timestamp When it was saved, in milliseconds since the epoch.
+     * @param chipsLeft How many chips chap still had to collect, or -1 if that is not known.
+     * @param playTime How long the level had been played for, in milliseconds.
+     */
+    record Entry(String name, int level, long timestamp, int chipsLeft, long playTime) {
+    }
+
+    /**
+     * A save read from the store. The replay and level are as they were given to put, the thumbnail is a PNG, empty if there is none.
+     */
+    record StoredSave(Entry entry, byte[] replay, byte[] level, byte[] thumbnail) {
+    }
+
+    /**
+     * where a record starts in the file, and how many bytes it takes including its type, length and CRC
+     */
+    private record Location(long offset, int length) {
+    }
+
+    private final Path file;
+    private FileChannel channel;
+    // the saves in the order they were written, oldest first, and where their records are
+    private Map<String, Entry> entries = new LinkedHashMap<>();
+    private Map<String, Location> locations = new HashMap<>();
+    private Location exitState;
+    // where the next record is written, the end of the last trailer
+    private long end;
+    private int indexLength;
+
+    private SaveStore(Path file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens a store, making it if the file does not exist. Anything written after the last index that
+     * was written in full is cut off.
+     *
+     * @param file The store's file.
+     */
+    static SaveStore open(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        SaveStore store = new SaveStore(file, channel);
+        try {
+            store.readIndex();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return store;
+    }
+
+    /**
+     * returns every save in the store, the newest first
+     */
+    synchronized List<Entry> list() {
+        List<Entry> list = new ArrayList<>(entries.values());
+        Collections.reverse(list);
+        return list;
+    }
+
+    /**
+     * returns what the index holds about a save, or null if there is no save with that name
+     */
+    synchronized Entry entry(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * Reads a save.
+     *
+     * @param name The name it was saved under.
+     *
+     * @return The save, or null if there is no save with that name.
+     */
+    synchronized StoredSave load(String name) throws IOException {
+        Location location = locations.get(name);
+        if (location == null) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(readRecord(location, SAVE)));
+        Entry entry = readEntry(in);
+        return new StoredSave(entry, readBytes(in), readBytes(in), readBytes(in));
+    }
+
+    /**
+     * returns the exit state last put, or null if none has been
+     */
+    synchronized byte[] loadExitState() throws IOException {
+        return exitState == null ? null : readRecord(exitState, EXIT_STATE);
+    }
+
+    /**
+     * Adds a save, replacing any with the same name, and optionally the exit state, in one write. Once this
+     * returns both are on disk, if the game stops before then neither is.
+     *
+     * @param entry What the index holds about the save.
+     * @param replay The replay.
+     * @param level The board.
+     * @param thumbnail The thumbnail as a PNG, empty if there is none.
+     * @param exitState The new exit state, or null to keep the one there is.
+     *
+     * @return How many bytes were written.
+     */
+    synchronized long put(Entry entry, byte[] replay, byte[] level, byte[] thumbnail, byte[] exitState) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(replay.length + level.length + thumbnail.length + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeEntry(out, entry);
+        writeBytes(out, replay);
+        writeBytes(out, level);
+        writeBytes(out, thumbnail);
+        byte[] save = record(SAVE, bytes.toByteArray());
+
+        Map<String, Entry> newEntries = new LinkedHashMap<>(entries);
+        Map<String, Location> newLocations = new HashMap<>(locations);
+        // removed first so the save moves to the end of the order
+        newEntries.remove(entry.name());
+        newEntries.put(entry.name(), entry);
+        newLocations.put(entry.name(), new Location(end, save.length));
+
+        byte[] exit = exitState == null ? new byte[0] : record(EXIT_STATE, exitState);
+        Location newExit = exitState == null ? this.exitState : new Location(end + save.length, exit.length);
+        return commit(concat(save, exit), newEntries, newLocations, newExit);
+    }
+
+    /**
+     * Replaces the exit state.
+     *
+     * @param exitState The exit state, as Persistency writes it.
+     */
+    synchronized void putExitState(byte[] exitState) throws IOException {
+        byte[] exit = record(EXIT_STATE, exitState);
+        commit(exit, entries, locations, new Location(end, exit.length));
+    }
+
+    /**
+     * returns how many bytes of the file are records still in use, the index and the trailer
+     */
+    synchronized long liveBytes() {
+        long live = HEADER_SIZE + indexLength + TRAILER_SIZE + (exitState == null ? 0 : exitState.length());
+        for (Location location : locations.values()) {
+            live += location.length();
+        }
+        return live;
+    }
+
+    /**
+     * returns how big the file is
+     */
+    synchronized long size() {
+        return end;
+    }
+
+    /**
+     * Copies the records still in use, in the same order, to a new file and moves it over the store, which
+     * leaves out saves that were replaced and old exit states and indexes. If the game stops part way
+     * the store is as it was, and the new file is deleted by SaveTransaction.recover.
+     */
+    synchronized void compact() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + SaveTransaction.TEMP_SUFFIX);
+        Map<String, Location> moved = new HashMap<>();
+        Location movedExit = null;
+        long position;
+        byte[] index;
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            position = write(out, 0, ByteBuffer.wrap(header()));
+            for (String name : entries.keySet()) {
+                Location location = locations.get(name);
+                moved.put(name, new Location(position, location.length()));
+                position += copy(location, out, position);
+            }
+            if (exitState != null) {
+                movedExit = new Location(position, exitState.length());
+                position += copy(exitState, out, position);
+            }
+            index = record(INDEX, indexContents(entries, moved, movedExit));
+            position = write(out, position, trailed(index, position));
+            out.force(true);
+        }
+
+        channel.close();
+        try {
+            SaveTransaction.move(temp, file);
+        } finally {
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        locations = moved;
+        exitState = movedExit;
+        end = position;
+        indexLength = index.length;
+    }
+
+    /**
+     * stops using the file, the store cannot be used after
+     */
+    synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * writes records and an index after them and forces them to disk, then starts using the new index
+     */
+    private long commit(byte[] records, Map<String, Entry> newEntries, Map<String, Location> newLocations,
+            Location newExit) throws IOException {
+        long indexOffset = end + records.length;
+        byte[] index = record(INDEX, indexContents(newEntries, newLocations, newExit));
+        long position = write(channel, end, ByteBuffer.wrap(records));
+        position = write(channel, position, trailed(index, indexOffset));
+        // left over from a write that failed part way, the trailer has to be at the very end
+        if (channel.size() > position) {
+            channel.truncate(position);
+        }
+        channel.force(false);
+
+        long written = position - end;
+        entries = newEntries;
+        locations = newLocations;
+        exitState = newExit;
+        end = position;
+        indexLength = index.length;
+
+        if (end >= COMPACT_BYTES && end > 2 * liveBytes()) {
+            // what was written is already safe, a store that could not be compacted is only bigger
+            try {
+                compact();
+            } catch (IOException e) {
+                System.out.println("Could not compact " + file);
+                e.printStackTrace();
+            }
+        }
+        return written;
+    }
+
+    /**
+     * reads the index the trailer points to, or finds the last whole one if the last write was cut short
+     */
+    private void readIndex() throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            end = write(channel, 0, ByteBuffer.wrap(header()));
+            commit(new byte[0], entries, locations, null);
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        read(0, header);
+        if (header.position() < HEADER_SIZE || !header.flip().equals(ByteBuffer.wrap(header()))) {
+            throw new IOException(file + " is not a save store, or is a newer version");
+        }
+
+        if (size >= HEADER_SIZE + TRAILER_SIZE) {
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+            read(size - TRAILER_SIZE, trailer);
+            long indexOffset = trailer.flip().getLong();
+            if (hasIndexMagic(trailer) && indexOffset >= HEADER_SIZE && indexOffset < size - TRAILER_SIZE
+                    && useIndex(indexOffset, size - TRAILER_SIZE)) {
+                end = size;
+                return;
+            }
+        }
+
+        // the last write did not finish, everything after the last index written in full is dropped
+        long position = HEADER_SIZE;
+        long lastEnd = -1;
+        while (true) {
+            ByteBuffer start = ByteBuffer.allocate(1 + 4);
+            read(position, start);
+            if (start.position() < start.capacity()) {
+                break;
+            }
+            byte type = start.get(0);
+            long next = position + RECORD_OVERHEAD + (start.getInt(1) & 0xFFFFFFFFL);
+            if (type == INDEX) {
+                ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+                read(next, trailer);
+                if (trailer.position() < TRAILER_SIZE || trailer.flip().getLong() != position
+                        || !hasIndexMagic(trailer) || !useIndex(position, next)) {
+                    break;
+                }
+                lastEnd = next + TRAILER_SIZE;
+            } else if (next > size || (type != SAVE && type != EXIT_STATE)) {
+                break;
+            }
+            position = type == INDEX ? lastEnd : next;
+        }
+        long dropped = size - Math.max(lastEnd, HEADER_SIZE);
+        if (dropped > 0) {
+            System.out.println("Dropped " + dropped + " bytes of an interrupted save from " + file);
+        }
+        if (lastEnd < 0) {
+            entries = new LinkedHashMap<>();
+            locations = new HashMap<>();
+            exitState = null;
+            channel.truncate(HEADER_SIZE);
+            end = HEADER_SIZE;
+            commit(new byte[0], entries, locations, null);
+        } else {
+            channel.truncate(lastEnd);
+            channel.force(false);
+            end = lastEnd;
+        }
+    }
+
+    /**
+     * reads the index record at offset, which has to finish at limit, and uses it, returning false if it is not whole
+     */
+    private boolean useIndex(long offset, long limit) throws IOException {
+        if (limit - offset < RECORD_OVERHEAD || limit - offset > Integer.MAX_VALUE) {
+            return false;
+        }
+        Location location = new Location(offset, (int) (limit - offset));
+        byte[] contents;
+        try {
+            contents = readRecord(location, INDEX);
+        } catch (IOException e) {
+            return false;
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents));
+        Map<String, Entry> readEntries = new LinkedHashMap<>();
+        Map<String, Location> readLocations = new HashMap<>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            Entry entry = readEntry(in);
+            readEntries.put(entry.name(), entry);
+            readLocations.put(entry.name(), new Location(in.readLong(), in.readInt()));
+        }
+        long exitOffset = in.readLong();
+        int exitLength = in.readInt();
+
+        entries = readEntries;
+        locations = readLocations;
+        exitState = exitOffset < 0 ? null : new Location(exitOffset, exitLength);
+        indexLength = location.length();
+        return true;
+    }
+
+    private static byte[] indexContents(Map<String, Entry> entries, Map<String, Location> locations, Location exit)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entries.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(entries.size());
+        for (Entry entry : entries.values()) {
+            writeEntry(out, entry);
+            Location location = locations.get(entry.name());
+            out.writeLong(location.offset());
+            out.writeInt(location.length());
+        }
+        out.writeLong(exit == null ? -1 : exit.offset());
+        out.writeInt(exit == null ? 0 : exit.length());
+        return bytes.toByteArray();
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeUTF(entry.name());
+        out.writeInt(entry.level());
+        out.writeLong(entry.timestamp());
+        out.writeInt(entry.chipsLeft());
+        out.writeLong(entry.playTime());
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        return new Entry(in.readUTF(), in.readInt(), in.readLong(), in.readInt(), in.readLong());
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * frames contents as a record of the given type
+     */
+    private static byte[] record(byte type, byte[] contents) {
+        ByteBuffer out = ByteBuffer.allocate(RECORD_OVERHEAD + contents.length);
+        out.put(type).putInt(contents.length).put(contents);
+        CRC32 crc = new CRC32();
+        crc.update(out.array(), 0, out.position());
+        out.putInt((int) crc.getValue());
+        return out.array();
+    }
+
+    /**
+     * reads the contents of the record at a location, checking its type, length and CRC
+     */
+    private byte[] readRecord(Location location, byte type) throws IOException {
+        ByteBuffer in = ByteBuffer.allocate(location.length());
+        read(location.offset(), in);
+        if (in.hasRemaining() || in.get(0) != type || in.getInt(1) != location.length() - RECORD_OVERHEAD) {
+            throw new IOException(file + " is damaged, there is no whole record at " + location.offset());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(in.array(), 0, location.length() - 4);
+        if (in.getInt(location.length() - 4) != (int) crc.getValue()) {
+            throw new IOException(file + " is damaged, the record at " + location.offset() + " fails its check");
+        }
+        byte[] contents = new byte[location.length() - RECORD_OVERHEAD];
+        in.get(1 + 4, contents);
+        return contents;
+    }
+
+    /**
+     * reads from position until the buffer is full or the file ends
+     */
+    private void read(long position, ByteBuffer into) throws IOException {
+        while (into.hasRemaining()) {
+            int read = channel.read(into, position);
+            if (read < 0) {
+                return;
+            }
+            position += read;
+        }
+    }
+
+    private static long write(FileChannel out, long position, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            position += out.write(bytes, position);
+        }
+        return position;
+    }
+
+    /**
+     * copies a record from the store to the same place the compacted file is up to, returning its length
+     */
+    private long copy(Location location, FileChannel out, long position) throws IOException {
+        long copied = 0;
+        while (copied < location.length()) {
+            copied += channel.transferTo(location.offset() + copied, location.length() - copied, out.position(position + copied));
+        }
+        return copied;
+    }
+
+    /**
+     * an index followed by the trailer pointing at it, for an index written at offset
+     */
+    private static ByteBuffer trailed(byte[] index, long offset) {
+        return ByteBuffer.allocate(index.length + TRAILER_SIZE).put(index).putLong(offset).put(INDEX_MAGIC).flip();
+    }
+
+    private static boolean hasIndexMagic(ByteBuffer trailer) {
+        for (int i = 0; i < INDEX_MAGIC.length; i++) {
+            if (trailer.get(8 + i) != INDEX_MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] header() {
+        return ByteBuffer.allocate(HEADER_SIZE).put(MAGIC).putShort((short) VERSION).array();
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] both = new byte[first.length + second.length];
+        System.arraycopy(first, 0, both, 0, first.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+        return both;
+    }
+}
@@ -0,0 +1,219 @@
+package src;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Replaces a group of files so that either all of them change or none do, even if the game stops part way.
+ *
+ * Each file is first written in full to a temporary file next to it and forced to disk. Once every
+ * file is on disk a commit record listing them is written, and only then are the temporary files
+ * moved over the real ones. The record is deleted when every move is done. If the game stops
+ * before the record is in place the old files are untouched, if it stops after, recover() finishes
+ * the moves the next time the game starts. The record is itself written to a temporary file and
+ * moved into place, so it is either there in full or not at all. After each move the folder the file
+ * is in is forced to disk too, so the move itself is not lost if the machine stops.
+ *
+ * @author Jake Domb
+ */
+final class SaveTransaction {
+    static final Path COMMIT_RECORD = Path.of("save.commit");
+    // added to the name of a file while it is being written
+    static final String TEMP_SUFFIX = ".saving";
+
+    // commits and recovery use the one commit record, so they take turns
+    private static final Object COMMIT_LOCK = new Object();
+
+    // target file to the temporary file holding its new contents
+    private final Map<Path, Path> staged = new LinkedHashMap<>();
+    private long bytes = 0;
+    private int files = 0;
+
+    /**
+     * writes the new contents of a file to disk beside it, the file itself is only replaced by commit()
+     */
+    void write(Path target, String content) throws IOException {
+        write(target, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * writes the new contents of a file to disk beside it, the file itself is only replaced by commit()
+     */
+    void write(Path target, byte[] content) throws IOException {
+        Path absolute = target.toAbsolutePath();
+        Files.createDirectories(absolute.getParent());
+        Path temp = tempFile(absolute);
+        writeAndForce(temp, content);
+        staged.put(absolute, temp);
+        bytes += content.length;
+        files++;
+    }
+
+    /**
+     * returns how many bytes have been written so far
+     */
+    long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * returns how many files have been written so far
+     */
+    int getFiles() {
+        return files;
+    }
+
+    /**
+     * replaces every file written, once this returns all of them have changed
+     */
+    void commit() throws IOException {
+        synchronized (COMMIT_LOCK) {
+            commitRecord();
+        }
+        staged.clear();
+    }
+
+    private void commitRecord() throws IOException {
+        StringBuilder record = new StringBuilder();
+        for (Map.Entry<Path, Path> entry : staged.entrySet()) {
+            record.append(entry.getValue()).append('\t').append(entry.getKey()).append('\n');
+        }
+        Path recordTemp = tempFile(COMMIT_RECORD.toAbsolutePath());
+        writeAndForce(recordTemp, record.toString().getBytes(StandardCharsets.UTF_8));
+        move(recordTemp, COMMIT_RECORD);
+
+        // the save has happened from here on, a crash now is finished by recover()
+        for (Map.Entry<Path, Path> entry : staged.entrySet()) {
+            move(entry.getValue(), entry.getKey());
+        }
+        Files.delete(COMMIT_RECORD);
+    }
+
+    /**
+     * throws away the files written, leaving the real ones as they were
+     */
+    void abort() {
+        for (Path temp : staged.values()) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        staged.clear();
+    }
+
+    /**
+     * Replaces a single file, it either has its old contents or its new ones however the game stops.
+     *
+     * @param target The file to replace.
+     * @param content Its new contents.
+     */
+    static void writeFile(Path target, byte[] content) throws IOException {
+        Path absolute = target.toAbsolutePath();
+        Files.createDirectories(absolute.getParent());
+        Path temp = tempFile(absolute);
+        writeAndForce(temp, content);
+        move(temp, absolute);
+    }
+
+    /**
+     * Finishes a save the game stopped in the middle of, and deletes the files of saves that never
+     * reached their commit. Called before anything that was saved is loaded.
+     *
+     * @param folders The folders saves are written to, searched for left over temporary files.
+     */
+    static void recover(String... folders) {
+        synchronized (COMMIT_LOCK) {
+            recoverRecord();
+        }
+
+        for (String folder : folders) {
+            File[] leftOver = new File(folder).listFiles((dir, name) -> name.endsWith(TEMP_SUFFIX));
+            if (leftOver != null) {
+                for (File file : leftOver) {
+                    System.out.println("Deleting " + file + " left by an interrupted save");
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * finishes the moves listed in the commit record, if there is one
+     */
+    private static void recoverRecord() {
+        if (!Files.isRegularFile(COMMIT_RECORD)) {
+            return;
+        }
+        try (BufferedReader record = Files.newBufferedReader(COMMIT_RECORD)) {
+            String line;
+            while ((line = record.readLine()) != null) {
+                String[] paths = line.split("\t");
+                Path temp = Path.of(paths[0]);
+                if (paths.length == 2 && Files.isRegularFile(temp)) {
+                    move(temp, Path.of(paths[1]));
+                    System.out.println("Recovered " + paths[1] + " from an interrupted save");
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.delete(COMMIT_RECORD);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static Path tempFile(Path target) {
+        return target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+    }
+
+    private static void writeAndForce(Path file, byte[] content) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * moves a file over another in one step where the file system allows it
+     */
+    static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+        forceDirectory(to.toAbsolutePath().getParent());
+    }
+
+    /**
+     * forces the entries of a folder to disk, so a file just moved into it is still there after a crash.
+     * Windows cannot open a folder this way, there the move is as safe as the file system makes it
+     */
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // folders cannot be opened on this platform
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package src;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A saved game ready to be written: the level it is on, how many chips chap has left, how long the level has
+ * been played for in milliseconds, its replay, its board as JSON and a thumbnail of the board, which may be null.
+ *
+ * @author Jake Domb
+ */
+record SavedGame(String saveName, int level, int chipsLeft, long playTime, String replayJSON, String levelJSON,
+        BufferedImage thumbnail) {
+}
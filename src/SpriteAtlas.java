@@ -0,0 +1,148 @@
+package src;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Every tile sprite of one tile size packed into a single int array of ARGB pixels.
+ *
+ * Sprite i takes up size * size ints starting at i * size * size, stored row by row, so a row of a
+ * sprite is one contiguous run that can be copied into an int frame buffer with System.arraycopy.
+ * Sprites are packed the first time they are asked for and remember whether every pixel is opaque.
+ * Opaque sprites are always copied, only sprites with transparent pixels are blended.
+ * Sprites can be drawn from several threads at once, packing a new one is done under a lock.
+ *
+ * @author lalatheo
+ */
+class SpriteAtlas {
+    private final int size;
+    private final int slot;
+    private final Map<Object, Integer> indices = new ConcurrentHashMap<>();
+
+    // replaced when the atlas grows, a sprite's index is only published after its pixels are written
+    private volatile int[] pixels;
+    private volatile boolean[] opaque;
+    private int count = 0;
+
+    /**
+     * Constructor for an empty atlas
+     *
+     * @param size the width and height of every sprite in it
+     */
+    SpriteAtlas(int size) {
+        this.size = size;
+        this.slot = size * size;
+        this.pixels = new int[slot * 16];
+        this.opaque = new boolean[16];
+    }
+
+    /**
+     * returns where the sprite is in the atlas, packing it the first time
+     *
+     * @param key identifies the sprite, two sprites with equal keys must look the same
+     * @param sprite gives the sprite already scaled to this atlas' size, only asked for the first time
+     */
+    int indexOf(Object key, Supplier<BufferedImage> sprite) {
+        Integer index = indices.get(key);
+        if (index == null) {
+            synchronized (this) {
+                index = indices.get(key);
+                if (index == null) {
+                    index = pack(sprite.get());
+                    indices.put(key, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    private int pack(BufferedImage sprite) {
+        int[] packed = pixels;
+        boolean[] solid = opaque;
+        if (count == solid.length) {
+            packed = Arrays.copyOf(packed, packed.length * 2);
+            solid = Arrays.copyOf(solid, solid.length * 2);
+        }
+        int offset = count * slot;
+        sprite.getRGB(0, 0, size, size, packed, offset, size);
+
+        boolean allOpaque = true;
+        for (int i = offset; i < offset + slot && allOpaque; i++) {
+            allOpaque = packed[i] >>> 24 == 0xFF;
+        }
+        solid[count] = allOpaque;
+        pixels = packed;
+        opaque = solid;
+        return count++;
+    }
+
+    /**
+     * copies a sprite into a frame buffer replacing what was there, transparent pixels included
+     *
+     * @param dst the frame buffer, width x height pixels stored row by row
+     * @param x where the sprite's left edge goes, it is clipped to the frame buffer
+     * @param y where the sprite's top edge goes
+     */
+    void copy(int index, int[] dst, int width, int height, int x, int y) {
+        int left = Math.max(0, -x);
+        int top = Math.max(0, -y);
+        int right = Math.min(size, width - x);
+        int bottom = Math.min(size, height - y);
+        if (left >= right) {
+            return;
+        }
+        int[] packed = pixels;
+        int src = index * slot;
+        for (int row = top; row < bottom; row++) {
+            System.arraycopy(packed, src + row * size + left, dst, (y + row) * width + x + left, right - left);
+        }
+    }
+
+    /**
+     * draws a sprite over a frame buffer, opaque sprites are copied and the rest are blended with what is there
+     *
+     * @param dst the frame buffer, width x height pixels stored row by row
+     * @param x where the sprite's left edge goes, it is clipped to the frame buffer
+     * @param y where the sprite's top edge goes
+     */
+    void draw(int index, int[] dst, int width, int height, int x, int y) {
+        if (opaque[index]) {
+            copy(index, dst, width, height, x, y);
+            return;
+        }
+        int left = Math.max(0, -x);
+        int top = Math.max(0, -y);
+        int right = Math.min(size, width - x);
+        int bottom = Math.min(size, height - y);
+        int[] packed = pixels;
+        int src = index * slot;
+        for (int row = top; row < bottom; row++) {
+            int from = src + row * size;
+            int to = (y + row) * width + x;
+            for (int column = left; column < right; column++) {
+                int argb = packed[from + column];
+                int alpha = argb >>> 24;
+                if (alpha == 0xFF) {
+                    dst[to + column] = argb;
+                } else if (alpha != 0) {
+                    dst[to + column] = blend(argb, alpha, dst[to + column]);
+                }
+            }
+        }
+    }
+
+    /**
+     * a translucent pixel drawn over another, with the result's alpha the combination of both
+     */
+    private static int blend(int argb, int alpha, int under) {
+        int underAlpha = (under >>> 24) * (255 - alpha) / 255;
+        int outAlpha = alpha + underAlpha;
+        int r = (((argb >> 16) & 0xFF) * alpha + ((under >> 16) & 0xFF) * underAlpha) / outAlpha;
+        int g = (((argb >> 8) & 0xFF) * alpha + ((under >> 8) & 0xFF) * underAlpha) / outAlpha;
+        int b = ((argb & 0xFF) * alpha + (under & 0xFF) * underAlpha) / outAlpha;
+        return outAlpha << 24 | r << 16 | g << 8 | b;
+    }
+}
@@ -0,0 +1,88 @@
+package src;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Tile sprites scaled to the tile sizes of the zoom levels, each scaled only once.
+ *
+ * Sizes of 16 pixels and up are scaled straight from the 32 pixel sprite with bicubic filtering.
+ * Smaller sizes come from a mipmap chain, every power of two level is the 2x2 average of the
+ * level above it and sizes in between are filtered down from the next larger level, so far
+ * zoomed out tiles keep their colours instead of picking single pixels.
+ * It is shared by the threads that paint bands of the board, so lookups are synchronized.
+ *
+ * @author lalatheo
+ */
+class SpriteCache {
+    public static final int BASE_SIZE = 32;
+    // below this size sprites are built from mipmaps instead of scaled directly
+    private static final int MIPMAP_BELOW = 16;
+
+    private final Map<Integer, Map<Object, BufferedImage>> sizes = new HashMap<>();
+
+    /**
+     * returns the sprite scaled to size x size pixels, scaling it the first time it is asked for
+     *
+     * @param key identifies the sprite, two sources with equal keys must look the same
+     * @param source gives the sprite at its full 32 pixel size, only asked for the first time
+     */
+    synchronized BufferedImage get(Object key, Supplier<BufferedImage> source, int size) {
+        Map<Object, BufferedImage> scaled = sizes.computeIfAbsent(size, s -> new HashMap<>());
+        BufferedImage sprite = scaled.get(key);
+        if (sprite == null) {
+            sprite = size == BASE_SIZE ? source.get() : scale(key, source, size);
+            scaled.put(key, sprite);
+        }
+        return sprite;
+    }
+
+    private BufferedImage scale(Object key, Supplier<BufferedImage> source, int size) {
+        if (size >= MIPMAP_BELOW) {
+            return resample(get(key, source, BASE_SIZE), size, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        }
+        int mip = Integer.highestOneBit(size);
+        if (mip == size) {
+            return halve(get(key, source, size * 2));
+        }
+        return resample(get(key, source, mip * 2), size, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    }
+
+    private static BufferedImage resample(BufferedImage source, int size, Object interpolation) {
+        BufferedImage result = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = result.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(source, 0, 0, size, size, null);
+        g.dispose();
+        return result;
+    }
+
+    /**
+     * the next mipmap level, each pixel is the average of the 2x2 block it covers
+     */
+    private static BufferedImage halve(BufferedImage source) {
+        int size = Math.max(1, source.getWidth() / 2);
+        BufferedImage result = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int a = 0, r = 0, g = 0, b = 0;
+                for (int dy = 0; dy < 2; dy++) {
+                    for (int dx = 0; dx < 2; dx++) {
+                        int argb = source.getRGB(x * 2 + dx, y * 2 + dy);
+                        a += argb >>> 24;
+                        r += (argb >> 16) & 0xFF;
+                        g += (argb >> 8) & 0xFF;
+                        b += argb & 0xFF;
+                    }
+                }
+                result.setRGB(x, y, (a / 4) << 24 | (r / 4) << 16 | (g / 4) << 8 | (b / 4));
+            }
+        }
+        return result;
+    }
+}